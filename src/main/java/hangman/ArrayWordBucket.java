@@ -0,0 +1,66 @@
+package hangman;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * WordBucket holding its words in heap arrays, as read from a text
+ * dictionary.
+ *
+ * The words' chars are packed one word after another in a single
+ * char array, so that the word with id wordId occupies wordLen chars
+ * from index wordId*wordLen. The Strings are kept too, for guessing
+ * words without allocating.
+ */
+final class ArrayWordBucket extends WordBucket {
+  private final int wordLen_;
+  private final String[] words_;
+  private final List<String> wordList_;
+  private final char[] chars_;
+  private final int[] letterMasks_;
+
+  /**
+   * @param wordLen length of every word in words
+   * @param words upper case words, in dictionary order
+   */
+  ArrayWordBucket(int wordLen, String[] words) {
+    wordLen_ = wordLen;
+    words_ = words;
+    wordList_ = Collections.unmodifiableList(Arrays.asList(words));
+    chars_ = new char[words.length*wordLen];
+    letterMasks_ = new int[words.length];
+    for( int wordI = 0; wordI<words.length; ++wordI ) {
+      if( words[wordI].length()!=wordLen ) {
+        throw new IllegalArgumentException("Expected word of length "+wordLen+" but got "+words[wordI]);
+      }
+      words[wordI].getChars(0, wordLen, chars_, wordI*wordLen);
+      letterMasks_[wordI] = letterMask(words[wordI]);
+    }
+  }
+
+  int getWordLength() { return wordLen_; }
+  int size() { return words_.length; }
+  String getWord(int wordId) { return words_[wordId]; }
+  int getLetterMask(int wordId) { return letterMasks_[wordId]; }
+  char getChar(int wordId, int pos) { return chars_[wordId*wordLen_+pos]; }
+  List<String> getWords() { return wordList_; }
+
+  @Override
+  boolean matches(int wordId, int[] revealedPositions, char[] revealedChars, int numRevealed) {
+    final int charsOffset = wordId*wordLen_;
+    for( int revealedI = 0; revealedI<numRevealed; ++revealedI ) {
+      if( chars_[charsOffset+revealedPositions[revealedI]]!=revealedChars[revealedI] ) return false;
+    }
+    return true;
+  }
+
+  @Override
+  void addLetterPositions(int wordId, int[] letterPositions) {
+    final int charsOffset = wordId*wordLen_;
+    for( int posI = 0; posI<wordLen_; ++posI ) {
+      final int letterI = chars_[charsOffset+posI]-'A';
+      if( 0<=letterI && letterI<NUM_LETTERS ) letterPositions[letterI] |= 1<<posI;
+    }
+  }
+}
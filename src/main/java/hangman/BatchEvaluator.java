@@ -0,0 +1,243 @@
+package hangman;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Plays the games for a list of words in lockstep, one guess per step
+ * for all games of a word length, rather than one game at a time.
+ *
+ * Games whose states are identical get identical guesses from
+ * StrategyImpl, so they are grouped and each group's guess is decided
+ * once per step, on one HangmanGame standing for the group. A group
+ * then splits by the guess's outcome: the positions a letter was
+ * revealed at, or whether a word was right. At the start, all the
+ * games of a length are one group, and groups stay few compared to
+ * games until late in the games.
+ *
+ * The games themselves are kept in arrays, struct of arrays fashion,
+ * indexed by game: their secret words, as a WordBucket packing their
+ * chars one after another, and their numbers of unrevealed letters.
+ * Outcomes are split with GuessOutcomes, as the tree walkers do.
+ * Scores follow HangmanGame's rules and equal those of Play.run.
+ *
+ * Words longer than MAX_WORD_LENGTH, since outcomes are int position
+ * masks, or whose upper case has a different length, are played one
+ * at a time with Play.run.
+ */
+public class BatchEvaluator {
+  static final int MAX_WORD_LENGTH = GuessOutcomes.MAX_WORD_LENGTH;
+
+  private final StrategyFactory strategyFactory_;
+  private final int maxWrongGuesses_;
+
+  /**
+   * Games in identical states, and the strategy having played them.
+   */
+  private static class Group {
+    final StrategyImpl strategy_;
+    // Game of members_[0], for the strategy to decide on
+    final HangmanGame game_;
+    final Guess[] path_;
+    final int[] members_;
+    final int numWrong_;
+    final int numCorrect_;
+
+    Group(StrategyImpl strategy, HangmanGame game, Guess[] path, int[] members, int numWrong, int numCorrect) {
+      strategy_ = strategy;
+      game_ = game;
+      path_ = path;
+      members_ = members;
+      numWrong_ = numWrong;
+      numCorrect_ = numCorrect;
+    }
+  }
+
+  /**
+   * @param strategyFactory creates the strategies
+   * @param maxWrongGuesses wrong guesses allowed in each game
+   */
+  public BatchEvaluator(StrategyFactory strategyFactory, int maxWrongGuesses) {
+    strategyFactory_ = strategyFactory;
+    maxWrongGuesses_ = maxWrongGuesses;
+  }
+
+  /**
+   * Play a game for each word.
+   *
+   * @param words secret words to play
+   * @return scores, in the order of words
+   * @throws NullGuessException if the strategy made a null guess in
+   * any game
+   */
+  public ParallelEvaluator.Result evaluate(List<String> words) throws NullGuessException {
+    final long startNanos = System.nanoTime();
+    final int[] scores = new int[words.size()];
+
+    /// Group the words by length
+    final List<List<Integer>> wordIsByLength = new ArrayList<List<Integer>>();
+    for( int wordI = 0; wordI<words.size(); ++wordI ) {
+      final String word = words.get(wordI);
+      if( MAX_WORD_LENGTH<word.length() || word.toUpperCase().length()!=word.length() ) {
+        scores[wordI] = Play.run(new HangmanGame(word, maxWrongGuesses_),
+                                 strategyFactory_.newStrategy(word.length()),
+                                 false);
+        continue;
+      }
+      while( wordIsByLength.size()<=word.length() ) wordIsByLength.add(new ArrayList<Integer>());
+      wordIsByLength.get(word.length()).add(wordI);
+    }
+
+    for( int lenI = 0; lenI<wordIsByLength.size(); ++lenI ) {
+      final List<Integer> wordIs = wordIsByLength.get(lenI);
+      if( wordIs.isEmpty() ) continue;
+      final String[] secrets = new String[wordIs.size()];
+      for( int gameI = 0; gameI<secrets.length; ++gameI ) secrets[gameI] = words.get(wordIs.get(gameI)).toUpperCase();
+      final int[] gameScores = evaluateLength(lenI, secrets);
+      for( int gameI = 0; gameI<secrets.length; ++gameI ) scores[wordIs.get(gameI)] = gameScores[gameI];
+    }
+    return new ParallelEvaluator.Result(scores, System.nanoTime()-startNanos);
+  }
+
+  /**
+   * Play the games for words of one length in lockstep.
+   *
+   * @param secrets upper case words of length wordLen
+   * @return scores, in the order of secrets
+   */
+  private int[] evaluateLength(int wordLen, String[] secrets) throws NullGuessException {
+    final int numGames = secrets.length;
+    final int[] scores = new int[numGames];
+    final WordBucket secretBucket = new ArrayWordBucket(wordLen, secrets);
+    final int[] numUnrevealed = new int[numGames];
+    final List<Integer> playing = new ArrayList<Integer>(numGames);
+    for( int gameI = 0; gameI<numGames; ++gameI ) {
+      for( int posI = 0; posI<wordLen; ++posI ) {
+        if( secretBucket.getChar(gameI, posI)!=HangmanGame.MYSTERY_LETTER ) ++numUnrevealed[gameI];
+      }
+      // A word of only MYSTERY_LETTERs is won with score 0 from the start
+      if( numUnrevealed[gameI]!=0 ) playing.add(gameI);
+    }
+    if( playing.isEmpty() ) return scores;
+
+    final int[] members = new int[playing.size()];
+    for( int memberI = 0; memberI<members.length; ++memberI ) members[memberI] = playing.get(memberI);
+    List<Group> groups = new ArrayList<Group>();
+    groups.add(new Group(strategyFactory_.newStrategy(wordLen),
+                         new HangmanGame(secrets[members[0]], maxWrongGuesses_),
+                         new Guess[0], members, 0, 0));
+    while( !groups.isEmpty() ) {
+      final List<Group> nextGroups = new ArrayList<Group>();
+      for( Group groupI : groups ) {
+        step(secretBucket, numUnrevealed, scores, groupI, nextGroups);
+      }
+      groups = nextGroups;
+    }
+    return scores;
+  }
+
+  /**
+   * Make the group's next guess, score the games it ends, and add the
+   * groups of the games going on to nextGroups.
+   */
+  private void step(WordBucket secretBucket, int[] numUnrevealed, int[] scores, Group group, List<Group> nextGroups)
+    throws NullGuessException
+  {
+    final HangmanGame game = group.game_;
+    final Guess guess = group.strategy_.nextGuess(game);
+    if( guess==null ) {
+      throw new NullGuessException("Strategy made a null guess for word "+secretBucket.getWord(group.members_[0]));
+    }
+
+    /// Find each game's outcome, and the letters it reveals
+    final long[] outcomeMembers = GuessOutcomes.sort(secretBucket, group.members_, guess);
+    int missWrongIncrement;
+    int hitCorrectIncrement;
+    if( guess instanceof GuessLetter ) {
+      final char letter = Character.toUpperCase(((GuessLetter)guess).getLetter());
+      final CharSequence pattern = game.getPattern();
+      int revealedPositions = 0;
+      for( int posI = 0; posI<pattern.length(); ++posI ) {
+        if( pattern.charAt(posI)==letter ) revealedPositions |= 1<<posI;
+      }
+      for( long outcomeMemberI : outcomeMembers ) {
+        final int newPositions = GuessOutcomes.outcome(outcomeMemberI) & ~revealedPositions;
+        numUnrevealed[GuessOutcomes.id(outcomeMemberI)] -= Integer.bitCount(newPositions);
+      }
+      // Guessing a letter again changes nothing
+      missWrongIncrement = hitCorrectIncrement = isGuessed(game, letter) ? 0 : 1;
+    } else {
+      for( long outcomeMemberI : outcomeMembers ) {
+        if( GuessOutcomes.outcome(outcomeMemberI)==GuessOutcomes.CORRECT_WORD ) {
+          numUnrevealed[GuessOutcomes.id(outcomeMemberI)] = 0;
+        }
+      }
+      final String word = ((GuessWord)guess).getWord().toUpperCase();
+      missWrongIncrement = game.getIncorrectlyGuessedWords().contains(word) ? 0 : 1;
+      hitCorrectIncrement = 0;
+    }
+
+    /// Score the games the guess ended, and split the others by outcome
+    final Guess[] path = Arrays.copyOf(group.path_, group.path_.length+1);
+    path[group.path_.length] = guess;
+    final List<int[]> splits = new ArrayList<int[]>();
+    final List<int[]> splitCounts = new ArrayList<int[]>();
+    for( int splitBegin = 0, splitEnd; splitBegin<outcomeMembers.length; splitBegin = splitEnd ) {
+      final int outcome = GuessOutcomes.outcome(outcomeMembers[splitBegin]);
+      splitEnd = GuessOutcomes.splitEnd(outcomeMembers, splitBegin);
+
+      final int numWrong = group.numWrong_+((outcome==0) ? missWrongIncrement : 0);
+      final int numCorrect = group.numCorrect_+((outcome==0) ? 0 : hitCorrectIncrement);
+      int numPlaying = 0;
+      final int[] playing = new int[splitEnd-splitBegin];
+      for( int memberI = splitBegin; memberI<splitEnd; ++memberI ) {
+        final int gameI = GuessOutcomes.id(outcomeMembers[memberI]);
+        if( numUnrevealed[gameI]==0 ) {
+          scores[gameI] = numWrong+numCorrect;
+        } else if( maxWrongGuesses_<numWrong ) {
+          scores[gameI] = 25;
+        } else {
+          playing[numPlaying++] = gameI;
+        }
+      }
+      if( numPlaying==0 ) continue;
+      splits.add(Arrays.copyOf(playing, numPlaying));
+      splitCounts.add(new int[]{ numWrong, numCorrect });
+    }
+
+    /// Continue the splits as groups
+    final int groupGameI = group.members_[0];
+    for( int splitI = 0; splitI<splits.size(); ++splitI ) {
+      final int[] splitMembers = splits.get(splitI);
+      // The last split takes over the group's strategy, the others
+      // copy it.
+      final StrategyImpl strategy = (splitI==splits.size()-1) ? group.strategy_ : group.strategy_.copy();
+      // Move the group's game on if its game is in this split, else
+      // replay the guesses on a game of the split. Split members are
+      // in increasing order.
+      final int repI = Arrays.binarySearch(splitMembers, groupGameI);
+      HangmanGame splitGame;
+      if( 0<=repI ) {
+        splitMembers[repI] = splitMembers[0];
+        splitMembers[0] = groupGameI;
+        splitGame = game;
+        guess.makeGuess(splitGame);
+      } else {
+        splitGame = new HangmanGame(secretBucket.getWord(splitMembers[0]), maxWrongGuesses_);
+        for( Guess guessI : path ) guessI.makeGuess(splitGame);
+      }
+      nextGroups.add(new Group(strategy, splitGame, path, splitMembers,
+                               splitCounts.get(splitI)[0], splitCounts.get(splitI)[1]));
+    }
+  }
+
+  /** @return whether the letter was guessed in the game */
+  private static boolean isGuessed(HangmanGame game, char letter) {
+    final int letterBit = WordBucket.letterBit(letter);
+    if( letterBit!=WordBucket.OTHER_CHAR_BIT ) {
+      return ((game.getCorrectLetterMask() | game.getIncorrectLetterMask()) & letterBit)!=0;
+    }
+    return game.getAllGuessedLetters().contains(letter);
+  }
+}
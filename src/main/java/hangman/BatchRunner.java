@@ -0,0 +1,330 @@
+package hangman;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Plays a game for each word of a test word list of any size, writing
+ * each game's result and summarizing them.
+ *
+ * The list is read a chunk of words at a time. Each chunk is played
+ * by ParallelEvaluator's tasks on a ForkJoinPool, while the main
+ * thread reads the next chunk and writes the results of the previous
+ * one, in the order of the list. So at most two chunks are held, and
+ * reading and writing overlap with playing.
+ *
+ * The Summary holds a histogram of the scores and sums per word
+ * length, rather than the scores, so memory use is flat however many
+ * words are played. Percentiles are read off the histogram, and are
+ * those of the sorted scores.
+ *
+ * Results are written as CSV, one "word,length,score,won" row per
+ * word after a header row, or in binary, in the format of
+ * DataOutputStream:
+ *   header: int MAGIC
+ *   per word: UTF word, int score, boolean won
+ */
+public class BatchRunner {
+  /** "HGB1" */
+  static final int MAGIC = 0x48474231;
+  /** Default number of words read and played at a time */
+  public static final int DEFAULT_CHUNK_SIZE = 1<<14;
+
+  private final ParallelEvaluator evaluator_;
+  private final int parallelism_;
+  private final int chunkSize_;
+
+  /** Encoding of the results written */
+  public enum Format {CSV, BINARY}
+
+  /**
+   * Summary of the games played.
+   */
+  public static class Summary {
+    private long numGames_;
+    private long scoreSum_;
+    private long numLost_;
+    private long[] scoreCounts_ = new long[32];
+    private long[] lengthGames_ = new long[16];
+    private long[] lengthScoreSums_ = new long[16];
+    private long[] lengthLost_ = new long[16];
+    private long elapsedNanos_;
+
+    Summary() {}
+
+    void add(String word, int score, boolean won) {
+      if( scoreCounts_.length<=score ) scoreCounts_ = Arrays.copyOf(scoreCounts_, Math.max(score+1, 2*scoreCounts_.length));
+      final int length = word.length();
+      if( lengthGames_.length<=length ) {
+        final int newLength = Math.max(length+1, 2*lengthGames_.length);
+        lengthGames_ = Arrays.copyOf(lengthGames_, newLength);
+        lengthScoreSums_ = Arrays.copyOf(lengthScoreSums_, newLength);
+        lengthLost_ = Arrays.copyOf(lengthLost_, newLength);
+      }
+      ++numGames_;
+      scoreSum_ += score;
+      ++scoreCounts_[score];
+      ++lengthGames_[length];
+      lengthScoreSums_[length] += score;
+      if( !won ) {
+        ++numLost_;
+        ++lengthLost_[length];
+      }
+    }
+
+    public long getNumGames() { return numGames_; }
+    public long getScoreSum() { return scoreSum_; }
+    public long getNumLost() { return numLost_; }
+    /** @return the average score, or 0 if no games were played */
+    public double getAverageScore() { return (numGames_==0) ? 0.0 : (double)scoreSum_/(double)numGames_; }
+    /** @return the fraction of games lost, or 0 if no games were played */
+    public double getLossRate() { return (numGames_==0) ? 0.0 : (double)numLost_/(double)numGames_; }
+    public long getElapsedNanos() { return elapsedNanos_; }
+    public double getGamesPerSecond() { return numGames_/(elapsedNanos_/1e9); }
+    /** @return one more than the longest word played */
+    public int getLengthLimit() { return lengthGames_.length; }
+    /** @return games played for words of the length */
+    public long getNumGames(int length) { return (0<=length && length<lengthGames_.length) ? lengthGames_[length] : 0; }
+    /** @return the average score for words of the length, or 0 if none were played */
+    public double getAverageScore(int length) {
+      final long numGames = getNumGames(length);
+      return (numGames==0) ? 0.0 : (double)lengthScoreSums_[length]/(double)numGames;
+    }
+    /** @return the fraction of games lost for words of the length, or 0 if none were played */
+    public double getLossRate(int length) {
+      final long numGames = getNumGames(length);
+      return (numGames==0) ? 0.0 : (double)lengthLost_[length]/(double)numGames;
+    }
+
+    /**
+     * @param percentile in [0, 100]
+     * @return score at the percentile of the scores
+     */
+    public int getScore(double percentile) {
+      if( numGames_==0 ) return 0;
+      final long rank = Math.max(1, (long)Math.ceil(percentile/100.0*numGames_));
+      long cumulative = 0;
+      for( int scoreI = 0; scoreI<scoreCounts_.length; ++scoreI ) {
+        cumulative += scoreCounts_[scoreI];
+        if( rank<=cumulative ) return scoreI;
+      }
+      return scoreCounts_.length-1;
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder text = new StringBuilder();
+      for( int lenI = 0; lenI<lengthGames_.length; ++lenI ) {
+        if( lengthGames_[lenI]==0 ) continue;
+        text.append("Length "+lenI+": "+lengthGames_[lenI]+" words, average score: "
+                    +String.format("%.4f", getAverageScore(lenI))
+                    +", loss rate: "+String.format("%.4f", getLossRate(lenI))+"\n");
+      }
+      text.append("Played "+numGames_+" words in "+elapsedNanos_/1000000+" ms"
+                  +", average score: "+String.format("%.4f", getAverageScore())
+                  +", p50 "+getScore(50)+", p90 "+getScore(90)+", p99 "+getScore(99)+", max "+getScore(100)
+                  +", loss rate: "+String.format("%.4f", getLossRate()));
+      return text.toString();
+    }
+  }
+
+  /**
+   * @param strategyFactory creates the strategy for each game
+   * @param maxWrongGuesses wrong guesses allowed in each game
+   * @param parallelism number of worker threads
+   * @param chunkSize number of words read and played at a time
+   */
+  public BatchRunner(StrategyFactory strategyFactory, int maxWrongGuesses, int parallelism, int chunkSize) {
+    if( chunkSize<1 ) throw new IllegalArgumentException("chunkSize must be positive but got "+chunkSize);
+    evaluator_ = new ParallelEvaluator(strategyFactory, maxWrongGuesses, parallelism);
+    parallelism_ = parallelism;
+    chunkSize_ = chunkSize;
+  }
+
+  /**
+   * Play a game for each word read, one per line. Lines are trimmed
+   * and upper cased, and blank lines skipped.
+   *
+   * @param words word list, not closed
+   * @param out stream to write the results to, flushed but not
+   * closed, or null not to write them
+   * @param format encoding of the results written
+   * @throws IOException if reading the words or writing the results
+   * failed
+   * @throws NullGuessException if the strategy made a null guess in
+   * any game, eg for a word not in its dictionary
+   */
+  public Summary run(Reader words, OutputStream out, Format format) throws IOException, NullGuessException {
+    final BufferedReader wordReader = new BufferedReader(words, 1<<16);
+    final ResultWriter resultWriter = (out==null) ? null
+      : (format==Format.CSV) ? new CsvWriter(out) : new BinaryWriter(out);
+    final Summary summary = new Summary();
+    final ForkJoinPool pool = new ForkJoinPool(parallelism_);
+    final long startNanos = System.nanoTime();
+    try {
+      Chunk playing = readChunk(wordReader);
+      ForkJoinTask<?> task = (playing==null) ? null : pool.submit(playing.task_);
+      while( playing!=null ) {
+        final Chunk next = readChunk(wordReader);
+        join(task);
+        final Chunk played = playing;
+        playing = next;
+        task = (playing==null) ? null : pool.submit(playing.task_);
+        for( int wordI = 0; wordI<played.words_.length; ++wordI ) {
+          summary.add(played.words_[wordI], played.scores_[wordI], played.won_[wordI]);
+          if( resultWriter!=null ) resultWriter.write(played.words_[wordI], played.scores_[wordI], played.won_[wordI]);
+        }
+      }
+      if( resultWriter!=null ) resultWriter.flush();
+    } finally {
+      pool.shutdownNow();
+    }
+    summary.elapsedNanos_ = System.nanoTime()-startNanos;
+    return summary;
+  }
+
+  /** Words read together, and their results once played. */
+  private class Chunk {
+    private final String[] words_;
+    private final int[] scores_;
+    private final boolean[] won_;
+    private final ForkJoinTask<?> task_;
+
+    Chunk(String[] words) {
+      words_ = words;
+      scores_ = new int[words.length];
+      won_ = new boolean[words.length];
+      task_ = evaluator_.newTask(words_, scores_, won_);
+    }
+  }
+
+  /** @return the next chunk of words, or null at the end of the list */
+  private Chunk readChunk(BufferedReader wordReader) throws IOException {
+    final List<String> words = new ArrayList<String>(chunkSize_);
+    String line;
+    while( words.size()<chunkSize_ && (line = wordReader.readLine())!=null ) {
+      final String word = line.trim();
+      if( !word.isEmpty() ) words.add(word.toUpperCase(Locale.ROOT));
+    }
+    return words.isEmpty() ? null : new Chunk(words.toArray(new String[words.size()]));
+  }
+
+  private static void join(ForkJoinTask<?> task) throws NullGuessException {
+    try {
+      task.join();
+    } catch( RuntimeException exc ) {
+      // ForkJoinPool may wrap the exception PlayRange threw once more
+      for( Throwable causeI = exc.getCause(); causeI!=null; causeI = causeI.getCause() ) {
+        if( causeI instanceof NullGuessException ) throw (NullGuessException)causeI;
+      }
+      throw exc;
+    }
+  }
+
+  /** Encodes results to a buffered stream. */
+  private interface ResultWriter {
+    void write(String word, int score, boolean won) throws IOException;
+    void flush() throws IOException;
+  }
+
+  private static class CsvWriter implements ResultWriter {
+    private final Writer out_;
+
+    CsvWriter(OutputStream out) throws IOException {
+      out_ = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), 1<<16);
+      out_.write("word,length,score,won\n");
+    }
+
+    public void write(String word, int score, boolean won) throws IOException {
+      if( word.indexOf(',')<0 && word.indexOf('"')<0 ) {
+        out_.write(word);
+      } else {
+        out_.write("\""+word.replace("\"", "\"\"")+"\"");
+      }
+      out_.write(","+word.length()+","+score+","+won+"\n");
+    }
+
+    public void flush() throws IOException {
+      out_.flush();
+    }
+  }
+
+  private static class BinaryWriter implements ResultWriter {
+    private final DataOutputStream out_;
+
+    BinaryWriter(OutputStream out) throws IOException {
+      out_ = new DataOutputStream(new BufferedOutputStream(out, 1<<16));
+      out_.writeInt(MAGIC);
+    }
+
+    public void write(String word, int score, boolean won) throws IOException {
+      out_.writeUTF(word);
+      out_.writeInt(score);
+      out_.writeBoolean(won);
+    }
+
+    public void flush() throws IOException {
+      out_.flush();
+    }
+  }
+
+  /**
+   * Play a test word list, writing the results to a file and printing
+   * the summary.
+   *
+   * @param args the word list file, the results file, and optionally
+   * the format, csv (default) or binary, GUESSES (default:
+   * Play.DEFAULT_NUM_GUESSES), THREADS (default: number of processors)
+   * and the dictionary file, a packed .hpd file or a word list
+   * (default: the bundled words.txt)
+   */
+  public static void main(String[] args) throws Exception {
+    if( args.length<2 ) {
+      throw new IllegalArgumentException("Usage: BatchRunner words_file results_file [csv|binary] [GUESSES] [THREADS] [dictionary_file]");
+    }
+    final Format format = Format.valueOf(((args.length>2) ? args[2] : "csv").toUpperCase(Locale.ROOT));
+    final int numGuesses = (args.length>3) ? Integer.parseInt(args[3]) : Play.DEFAULT_NUM_GUESSES;
+    final int parallelism = (args.length>4) ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+    final Dictionary dictionary;
+    if( args.length<=5 ) {
+      dictionary = Dictionary.loadDefault();
+    } else if( args[5].endsWith(".hpd") ) {
+      dictionary = Dictionary.map(new File(args[5]));
+    } else {
+      final InputStream dictIn = new FileInputStream(args[5]);
+      try {
+        dictionary = Dictionary.load(dictIn);
+      } finally {
+        dictIn.close();
+      }
+    }
+
+    final BatchRunner runner = new BatchRunner(new StrategyFactory(dictionary), numGuesses, parallelism, DEFAULT_CHUNK_SIZE);
+    final Reader words = new InputStreamReader(new FileInputStream(args[0]), "UTF-8");
+    final OutputStream out = new FileOutputStream(args[1]);
+    try {
+      System.out.println(runner.run(words, out, format));
+    } finally {
+      words.close();
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package hangman;
+
+/**
+ * Strategy answering from a DecisionTree compiled ahead of time.
+ *
+ * Each guess is a walk of one edge down the tree, found by the
+ * outcome of the previous guess, so it costs a few reads of the
+ * mapped file regardless of the dictionary size. No dictionary is
+ * loaded.
+ *
+ * The strategy follows the tree only while the game goes as the tree
+ * expects: the strategy made every guess, and the game allows the
+ * tree's maxWrongGuesses. The letters guessed and the wrong guesses
+ * made along the path walked are checked against the game's before
+ * each guess, so a guess made by anyone else takes the game off the
+ * tree. Off the tree, for instance for a secret word outside the
+ * compiled dictionary, the strategy hands the rest of the game to a
+ * fallback strategy, or makes a null guess if it has none.
+ *
+ * One CompiledStrategy per game, like StrategyImpl. The DecisionTree
+ * may be shared.
+ */
+public class CompiledStrategy implements GuessingStrategy {
+  // Guesses for each letter, so that letter guesses don't allocate
+  private static final GuessLetter[] LETTER_GUESSES = new GuessLetter[WordBucket.NUM_LETTERS];
+  static {
+    for( int letterI = 0; letterI<LETTER_GUESSES.length; ++letterI ) {
+      LETTER_GUESSES[letterI] = new GuessLetter((char)('A'+letterI));
+    }
+  }
+  private static final int NOT_STARTED = -2;
+  private static final int OFF_TREE = -1;
+
+  private final DecisionTree tree_;
+  private final GuessingStrategy fallback_;
+  // Offset of the node of the last guess, or NOT_STARTED or OFF_TREE
+  private int node_ = NOT_STARTED;
+  // The game's letter masks and wrong guesses, as of the path walked
+  private int correctLetterMask_;
+  private int incorrectLetterMask_;
+  private int numWrongGuesses_;
+
+  /**
+   * @param tree compiled policy
+   * @param fallback strategy for games the tree doesn't cover, or null
+   * to make a null guess for them
+   */
+  public CompiledStrategy(DecisionTree tree, GuessingStrategy fallback) {
+    tree_ = tree;
+    fallback_ = fallback;
+  }
+
+  public CompiledStrategy(DecisionTree tree) {
+    this(tree, null);
+  }
+
+  public Guess nextGuess(HangmanGame game) {
+    if( node_!=OFF_TREE ) node_ = nextNode(game);
+    if( node_==OFF_TREE ) {
+      return (fallback_==null) ? null : fallback_.nextGuess(game);
+    }
+
+    switch( tree_.getGuessKind(node_) ) {
+    case DecisionTree.GUESS_LETTER:
+      return LETTER_GUESSES[tree_.getGuessLetter(node_)-'A'];
+    case DecisionTree.GUESS_WORD:
+      return new GuessWord(tree_.getGuessWord(node_, game.getSecretWordLength()));
+    default:
+      return null;
+    }
+  }
+
+  /**
+   * @return the node for the game's state, or OFF_TREE if the tree
+   * doesn't have it
+   */
+  private int nextNode(HangmanGame game) {
+    final int wordLen = game.getSecretWordLength();
+    if( node_==NOT_STARTED ) {
+      if( game.getMaxWrongGuesses()!=tree_.getMaxWrongGuesses()
+          || game.numWrongGuessesMade()!=0
+          || game.getCorrectLetterMask()!=0 )
+      {
+        return OFF_TREE;
+      }
+      final int root = tree_.getRoot(wordLen);
+      return (root<0) ? OFF_TREE : root;
+    }
+
+    /// Find the outcome of the node's guess, and the state it leads to
+    int outcome = 0;
+    if( tree_.getGuessKind(node_)==DecisionTree.GUESS_LETTER ) {
+      final char letter = tree_.getGuessLetter(node_);
+      final CharSequence pattern = game.getPattern();
+      for( int posI = 0; posI<wordLen; ++posI ) {
+        if( pattern.charAt(posI)==letter ) outcome |= 1<<posI;
+      }
+      final int letterBit = 1<<(letter-'A');
+      if( outcome!=0 ) {
+        correctLetterMask_ |= letterBit;
+      } else if( (incorrectLetterMask_ & letterBit)==0 ) {
+        incorrectLetterMask_ |= letterBit;
+        ++numWrongGuesses_;
+      }
+    } else {
+      // A correct word ends the game, so the word was incorrect
+      ++numWrongGuesses_;
+    }
+
+    /// Leave the tree if another guess was made since
+    if( game.getCorrectLetterMask()!=correctLetterMask_
+        || game.getIncorrectLetterMask()!=incorrectLetterMask_
+        || game.numWrongGuessesMade()!=numWrongGuesses_ )
+    {
+      return OFF_TREE;
+    }
+    final int child = tree_.findChild(node_, wordLen, outcome);
+    return (child<0) ? OFF_TREE : child;
+  }
+}
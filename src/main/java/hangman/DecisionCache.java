@@ -0,0 +1,170 @@
+package hangman;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, concurrent cache of StrategyImpl decisions, keyed by game
+ * state.
+ *
+ * Many games pass through the same states. The opening guess for a
+ * word length and wrong guess budget is always the same, and common
+ * patterns recur. For a cached state, the strategy skips filtering
+ * candidates and choosing a char, and takes over the cached
+ * candidates instead.
+ *
+ * The cache is split into stripes by key hash, each an access
+ * ordered LinkedHashMap evicting its least recently used entry when
+ * full. Threads contend only when using the same stripe. Hit, miss
+ * and eviction counts are kept for monitoring.
+ *
+ * A cache must only be used by strategies over one Dictionary, since
+ * the cached candidates are word ids of its buckets. Strategies with
+ * different StrategyParameters, or of different kinds, may share a
+ * cache: the candidates are the same whatever the strategy, and only a
+ * decision's guess is particular to its parameters and kind.
+ */
+public class DecisionCache {
+  private static final int NUM_STRIPES = 16;
+
+  /**
+   * A strategy's decision in a game state: the guess, the candidates
+   * it had after filtering and their letter word counts, and the
+   * parameters and StrategyImpl.getDecisionKind() it guessed with.
+   * The candidates are either a bitset over word ids or an array of
+   * word ids, as in StrategyImpl. The letter word counts are null if
+   * they were only estimated. None of the arrays may be modified once
+   * cached.
+   */
+  static final class Decision {
+    private final Guess guess_;
+    private final long[] candidateBits_;
+    private final int[] candidateIds_;
+    private final int numCandidates_;
+    private final int[] letterWordCounts_;
+    private final StrategyParameters parameters_;
+    private final String kind_;
+
+    /** @param letterWordCounts copied, or null if estimated */
+    Decision(Guess guess, long[] candidateBits, int[] candidateIds, int numCandidates,
+             int[] letterWordCounts, StrategyParameters parameters, String kind)
+    {
+      guess_ = guess;
+      candidateBits_ = candidateBits;
+      candidateIds_ = candidateIds;
+      numCandidates_ = numCandidates;
+      letterWordCounts_ = (letterWordCounts==null) ? null : letterWordCounts.clone();
+      parameters_ = parameters;
+      kind_ = kind;
+    }
+
+    Guess getGuess() { return guess_; }
+    long[] getCandidateBits() { return candidateBits_; }
+    int[] getCandidateIds() { return candidateIds_; }
+    int getNumCandidates() { return numCandidates_; }
+    int[] getLetterWordCounts() { return letterWordCounts_; }
+    StrategyParameters getParameters() { return parameters_; }
+    String getKind() { return kind_; }
+  }
+
+  private final Stripe[] stripes_ = new Stripe[NUM_STRIPES];
+  private final int maxSize_;
+  private final LongAdder hits_ = new LongAdder();
+  private final LongAdder misses_ = new LongAdder();
+  private final LongAdder evictions_ = new LongAdder();
+
+  /** One lock's worth of the cache. */
+  private class Stripe extends LinkedHashMap<GameStateKey, Decision> {
+    private final int maxSize_;
+
+    Stripe(int maxSize) {
+      super(16, 0.75f, true);
+      maxSize_ = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<GameStateKey, Decision> eldest) {
+      if( size()<=maxSize_ ) return false;
+      evictions_.increment();
+      return true;
+    }
+  }
+
+  /**
+   * @param maxSize most decisions to keep. Since the cache is
+   * striped, eviction may start a little earlier.
+   */
+  public DecisionCache(int maxSize) {
+    if( maxSize<1 ) throw new IllegalArgumentException("maxSize must be positive but got "+maxSize);
+    maxSize_ = maxSize;
+    final int stripeSize = Math.max(1, maxSize/NUM_STRIPES);
+    for( int stripeI = 0; stripeI<NUM_STRIPES; ++stripeI ) stripes_[stripeI] = new Stripe(stripeSize);
+  }
+
+  private Stripe stripeFor(GameStateKey key) {
+    final int hash = key.hashCode();
+    return stripes_[(hash ^ (hash>>>16)) & (NUM_STRIPES-1)];
+  }
+
+  /** @return the decision cached for key, or null */
+  Decision get(GameStateKey key) {
+    final Stripe stripe = stripeFor(key);
+    final Decision decision;
+    synchronized( stripe ) {
+      decision = stripe.get(key);
+    }
+    if( decision==null ) {
+      misses_.increment();
+    } else {
+      hits_.increment();
+    }
+    return decision;
+  }
+
+  void put(GameStateKey key, Decision decision) {
+    final Stripe stripe = stripeFor(key);
+    synchronized( stripe ) {
+      stripe.put(key, decision);
+    }
+  }
+
+  /** @return number of decisions cached */
+  public int size() {
+    int size = 0;
+    for( Stripe stripeI : stripes_ ) {
+      synchronized( stripeI ) {
+        size += stripeI.size();
+      }
+    }
+    return size;
+  }
+
+  public int getMaxSize() { return maxSize_; }
+  public long getHitCount() { return hits_.sum(); }
+  public long getMissCount() { return misses_.sum(); }
+  public long getEvictionCount() { return evictions_.sum(); }
+
+  /** @return share of lookups that were hits, or 0 before any lookup */
+  public double getHitRate() {
+    final long hits = getHitCount();
+    final long lookups = hits+getMissCount();
+    return (lookups==0) ? 0.0 : (double)hits/(double)lookups;
+  }
+
+  /** Remove all decisions. The statistics are kept. */
+  public void clear() {
+    for( Stripe stripeI : stripes_ ) {
+      synchronized( stripeI ) {
+        stripeI.clear();
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "DecisionCache[size="+size()+", maxSize="+maxSize_
+      +", hits="+getHitCount()+", misses="+getMissCount()
+      +", evictions="+getEvictionCount()+"]";
+  }
+}
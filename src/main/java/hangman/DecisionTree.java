@@ -0,0 +1,153 @@
+package hangman;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A deterministic strategy's complete policy, compiled ahead of time
+ * by DecisionTreeCompiler into a binary file and memory-mapped from
+ * it.
+ *
+ * Each node is a game state and holds the strategy's guess there. A
+ * node has a child for each outcome of the guess that leaves the game
+ * going. The outcome of a letter guess is the mask of positions where
+ * the letter was revealed, 0 if none. The outcome of an incorrect
+ * word guess is 0. Correct word guesses end the game, so have no
+ * child. There is one root per word length.
+ *
+ * The file layout, big endian:
+ *
+ *   header:
+ *     int MAGIC
+ *     int VERSION
+ *     int maxWrongGuesses the tree was compiled for
+ *     int numLengths, one more than the longest word length
+ *     int[numLengths] file offset of the root for each word length,
+ *                     or 0 if there are no words of that length
+ *   nodes, each:
+ *     byte kind: GUESS_LETTER, GUESS_WORD or GUESS_NONE
+ *     the guess: 1 byte letter, or wordLen bytes of word, or nothing
+ *     unsigned short numChildren
+ *     numChildren times, in increasing outcome order:
+ *       int outcome
+ *       int file offset of the child node
+ *
+ * Reading uses only absolute gets on the mapped buffer, so one
+ * DecisionTree can serve any number of games on any number of
+ * threads. Nothing of the dictionary is held in the heap.
+ */
+public final class DecisionTree {
+  static final int MAGIC = 0x48474454; // "HGDT"
+  static final int VERSION = 1;
+  static final byte GUESS_LETTER = 0;
+  static final byte GUESS_WORD = 1;
+  static final byte GUESS_NONE = 2;
+  /** Most children a node can have, as numChildren is a short */
+  static final int MAX_CHILDREN = 0xFFFF;
+  private static final int HEADER_ROOTS_OFFSET = 16;
+  private static final int CHILD_ENTRY_SIZE = 8;
+
+  private final ByteBuffer buffer_;
+  private final int maxWrongGuesses_;
+  private final int numLengths_;
+
+  private DecisionTree(ByteBuffer buffer) throws IOException {
+    buffer_ = buffer;
+    if( buffer.capacity()<HEADER_ROOTS_OFFSET || buffer.getInt(0)!=MAGIC ) {
+      throw new IOException("Not a decision tree file");
+    }
+    if( buffer.getInt(4)!=VERSION ) {
+      throw new IOException("Unsupported decision tree version "+buffer.getInt(4));
+    }
+    maxWrongGuesses_ = buffer.getInt(8);
+    numLengths_ = buffer.getInt(12);
+    if( numLengths_<0 || buffer.capacity()<HEADER_ROOTS_OFFSET+4*numLengths_ ) {
+      throw new IOException("Truncated decision tree file");
+    }
+  }
+
+  /**
+   * Memory-map a decision tree file.
+   *
+   * @throws IOException if the file can't be read or isn't a decision
+   * tree
+   */
+  public static DecisionTree map(File file) throws IOException {
+    final RandomAccessFile treeFile = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = treeFile.getChannel();
+      // The mapping remains valid after the channel is closed
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new DecisionTree(buffer);
+    } finally {
+      treeFile.close();
+    }
+  }
+
+  /** @return wrong guesses allowed in the games the tree was compiled for */
+  public int getMaxWrongGuesses() {
+    return maxWrongGuesses_;
+  }
+
+  /** @return offset of the root node for wordLen, or -1 if none */
+  int getRoot(int wordLen) {
+    if( wordLen<0 || numLengths_<=wordLen ) return -1;
+    final int root = buffer_.getInt(HEADER_ROOTS_OFFSET+4*wordLen);
+    return (root==0) ? -1 : root;
+  }
+
+  /** @return GUESS_LETTER, GUESS_WORD or GUESS_NONE */
+  byte getGuessKind(int node) {
+    return buffer_.get(node);
+  }
+
+  /** @return the letter guessed at a GUESS_LETTER node */
+  char getGuessLetter(int node) {
+    return (char)buffer_.get(node+1);
+  }
+
+  /** @return the word guessed at a GUESS_WORD node */
+  String getGuessWord(int node, int wordLen) {
+    final char[] word = new char[wordLen];
+    for( int charI = 0; charI<wordLen; ++charI ) word[charI] = (char)buffer_.get(node+1+charI);
+    return new String(word);
+  }
+
+  /**
+   * @return offset of the node's child for outcome, or -1 if it has
+   * none
+   */
+  int findChild(int node, int wordLen, int outcome) {
+    int childrenOffset = node+1;
+    switch( getGuessKind(node) ) {
+    case GUESS_LETTER: childrenOffset += 1; break;
+    case GUESS_WORD: childrenOffset += wordLen; break;
+    default: break;
+    }
+    final int numChildren = buffer_.getShort(childrenOffset) & 0xFFFF;
+    final int entriesOffset = childrenOffset+2;
+    int low = 0;
+    int high = numChildren-1;
+    while( low<=high ) {
+      final int middle = (low+high) >>> 1;
+      final int middleOutcome = buffer_.getInt(entriesOffset+middle*CHILD_ENTRY_SIZE);
+      if( middleOutcome<outcome ) {
+        low = middle+1;
+      } else if( outcome<middleOutcome ) {
+        high = middle-1;
+      } else {
+        return buffer_.getInt(entriesOffset+middle*CHILD_ENTRY_SIZE+4);
+      }
+    }
+    return -1;
+  }
+
+  /** @return header size for a tree with numLengths roots */
+  static int headerSize(int numLengths) {
+    return HEADER_ROOTS_OFFSET+4*numLengths;
+  }
+}
@@ -0,0 +1,190 @@
+package hangman;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles StrategyImpl's policy into a DecisionTree file.
+ *
+ * StrategyImpl is deterministic given the dictionary and the game's
+ * maxWrongGuesses, so for each word length its every decision can be
+ * found ahead of time. Starting from all the words of a length, the
+ * compiler asks the strategy for its guess, splits the words by the
+ * outcome the guess would have for them, and recurses into each
+ * split with a copy of the strategy. Each game state is visited once,
+ * however many words pass through it.
+ *
+ * Words longer than MAX_WORD_LENGTH are left out, since outcomes are
+ * int position masks. Games of those lengths have no root in the
+ * tree.
+ */
+public class DecisionTreeCompiler {
+  static final int MAX_WORD_LENGTH = GuessOutcomes.MAX_WORD_LENGTH;
+
+  private final Dictionary dictionary_;
+  private final int maxWrongGuesses_;
+  // Nodes written so far, in post order, so that children precede
+  // their parents and parents know their children's offsets.
+  private final ByteArrayOutputStream nodeBytes_ = new ByteArrayOutputStream();
+  private final DataOutputStream nodeOut_ = new DataOutputStream(nodeBytes_);
+  private int nodesOffset_;
+  private int numNodes_;
+
+  /**
+   * @param dictionary the dictionary strategies will play with
+   * @param maxWrongGuesses wrong guesses allowed in the games
+   */
+  public DecisionTreeCompiler(Dictionary dictionary, int maxWrongGuesses) {
+    dictionary_ = dictionary;
+    maxWrongGuesses_ = maxWrongGuesses;
+  }
+
+  /**
+   * Compile the tree for every word length and write it.
+   *
+   * @return number of nodes written
+   * @throws IOException if out fails, or a guess has more outcomes
+   * than DecisionTree.MAX_CHILDREN
+   */
+  public int compile(OutputStream out) throws IOException {
+    final int numLengths = Math.min(dictionary_.getMaxWordLength(), MAX_WORD_LENGTH)+1;
+    nodeBytes_.reset();
+    nodesOffset_ = DecisionTree.headerSize(numLengths);
+    numNodes_ = 0;
+    final int[] roots = new int[numLengths];
+    for( int lenI = 0; lenI<numLengths; ++lenI ) {
+      final WordBucket bucket = dictionary_.getBucket(lenI);
+      if( bucket.size()==0 ) continue;
+      final int[] wordIds = new int[bucket.size()];
+      for( int wordI = 0; wordI<wordIds.length; ++wordI ) wordIds[wordI] = wordI;
+      final HangmanGame game = new HangmanGame(bucket.getWord(0), maxWrongGuesses_);
+      // A length whose words are all won before any guess, ie length
+      // 0, has no root.
+      if( game.gameStatus()!=HangmanGame.Status.KEEP_GUESSING ) continue;
+      roots[lenI] = compileNode(bucket, new StrategyImpl(dictionary_, lenI), game,
+                                new ArrayList<Guess>(), wordIds);
+    }
+
+    final DataOutputStream dataOut = new DataOutputStream(out);
+    dataOut.writeInt(DecisionTree.MAGIC);
+    dataOut.writeInt(DecisionTree.VERSION);
+    dataOut.writeInt(maxWrongGuesses_);
+    dataOut.writeInt(numLengths);
+    for( int rootI : roots ) dataOut.writeInt(rootI);
+    nodeBytes_.writeTo(dataOut);
+    dataOut.flush();
+    return numNodes_;
+  }
+
+  /**
+   * Compile the subtree for a game state, writing its nodes.
+   *
+   * @param bucket words of the game's length
+   * @param strategy strategy having made the guesses of path
+   * @param game game for one of wordIds, having had the guesses of path
+   * @param path guesses made to reach the state
+   * @param wordIds ids of the secret words leading to the state
+   * @return file offset of the state's node
+   */
+  private int compileNode(WordBucket bucket, StrategyImpl strategy, HangmanGame game,
+                          List<Guess> path, int[] wordIds)
+    throws IOException
+  {
+    final Guess guess = strategy.nextGuess(game);
+    final int wordLen = bucket.getWordLength();
+
+    /// Split the words by the guess's outcome, in outcome order
+    final long[] outcomeIds = GuessOutcomes.sort(bucket, wordIds, guess);
+
+    /// Compile the children for outcomes leaving the game going
+    final List<int[]> children = new ArrayList<int[]>();
+    if( guess!=null ) {
+      path.add(guess);
+      for( int splitBegin = 0, splitEnd; splitBegin<outcomeIds.length; splitBegin = splitEnd ) {
+        final int outcome = GuessOutcomes.outcome(outcomeIds[splitBegin]);
+        splitEnd = GuessOutcomes.splitEnd(outcomeIds, splitBegin);
+
+        final HangmanGame childGame
+          = new HangmanGame(bucket.getWord(GuessOutcomes.id(outcomeIds[splitBegin])), maxWrongGuesses_);
+        for( Guess guessI : path ) guessI.makeGuess(childGame);
+        if( childGame.gameStatus()!=HangmanGame.Status.KEEP_GUESSING ) continue;
+
+        final int[] splitIds = GuessOutcomes.ids(outcomeIds, splitBegin, splitEnd);
+        final int childOffset = compileNode(bucket, strategy.copy(), childGame, path, splitIds);
+        children.add(new int[]{ outcome, childOffset });
+      }
+      path.remove(path.size()-1);
+    }
+
+    /// Write the node
+    final int offset = nodesOffset_+nodeOut_.size();
+    if( guess instanceof GuessLetter ) {
+      nodeOut_.writeByte(DecisionTree.GUESS_LETTER);
+      nodeOut_.writeByte(Character.toUpperCase(((GuessLetter)guess).getLetter()));
+    } else if( guess instanceof GuessWord ) {
+      nodeOut_.writeByte(DecisionTree.GUESS_WORD);
+      final String word = ((GuessWord)guess).getWord().toUpperCase();
+      for( int charI = 0; charI<wordLen; ++charI ) nodeOut_.writeByte(word.charAt(charI));
+    } else {
+      nodeOut_.writeByte(DecisionTree.GUESS_NONE);
+    }
+    if( DecisionTree.MAX_CHILDREN<children.size() ) {
+      throw new IOException("A node of "+path.size()+" guesses has "+children.size()+" children, more than "
+                            +DecisionTree.MAX_CHILDREN+" the format allows");
+    }
+    nodeOut_.writeShort(children.size());
+    for( int[] childI : children ) {
+      nodeOut_.writeInt(childI[0]);
+      nodeOut_.writeInt(childI[1]);
+    }
+    ++numNodes_;
+    return offset;
+  }
+
+  /**
+   * Compile a decision tree file.
+   *
+   * @param args output file, then optionally maxWrongGuesses
+   * (default: Play.DEFAULT_NUM_GUESSES) and a dictionary file
+   * (default: the bundled words.txt)
+   */
+  public static void main(String[] args) throws Exception {
+    if( args.length<1 ) {
+      System.err.println("Usage: DecisionTreeCompiler output_file [max_wrong_guesses [dictionary_file]]");
+      System.exit(2);
+    }
+    final File outputFile = new File(args[0]);
+    final int maxWrongGuesses = args.length>1 ? Integer.parseInt(args[1]) : Play.DEFAULT_NUM_GUESSES;
+    Dictionary dictionary;
+    if( args.length>2 ) {
+      final InputStream dictionaryIn = new FileInputStream(args[2]);
+      try {
+        dictionary = Dictionary.load(dictionaryIn);
+      } finally {
+        dictionaryIn.close();
+      }
+    } else {
+      dictionary = Dictionary.loadDefault();
+    }
+
+    final long startNanos = System.nanoTime();
+    final OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile));
+    int numNodes;
+    try {
+      numNodes = new DecisionTreeCompiler(dictionary, maxWrongGuesses).compile(out);
+    } finally {
+      out.close();
+    }
+    System.out.println("Wrote "+numNodes+" nodes, "+outputFile.length()+" bytes, to "+outputFile
+                       +" in "+(System.nanoTime()-startNanos)/1000000+" ms");
+  }
+}
@@ -0,0 +1,169 @@
+package hangman;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Immutable dictionary of words, partitioned by word length.
+ *
+ * Words are upper cased once at load time, so that strategies can
+ * use them directly against the HangmanGame's upper case letters.
+ * Loading reads the whole dictionary, which is the expensive part of
+ * setting up a strategy. Load once and share the Dictionary across
+ * games, typically through a StrategyFactory.
+ *
+ * Alternatively, map a file converted by PackedDictionary. That
+ * skips parsing, and the words are read from the mapping rather than
+ * held in the heap, which suits short-lived JVMs. DictionaryBuilder
+ * writes that format from word lists too large to load.
+ *
+ * Instances are safe to share between threads, since nothing is
+ * modified after construction.
+ */
+public final class Dictionary {
+  /** Name of the bundled dictionary resource. */
+  public static final String DEFAULT_RESOURCE = "words.txt";
+
+  // Indexed by word length. Each bucket preserves the order of the
+  // words in the source dictionary.
+  private final WordBucket[] buckets_;
+  private final int numWords_;
+
+  private Dictionary(WordBucket[] buckets, int numWords) {
+    buckets_ = buckets;
+    numWords_ = numWords;
+  }
+
+  /**
+   * Read a dictionary with one word per line.
+   *
+   * @param dictionary InputStream of words constituting the dictionary
+   * @throws IOException
+   */
+  public static Dictionary load(InputStream dictionary) throws IOException {
+    final List<List<String>> mutableBuckets = new ArrayList<List<String>>();
+    final BufferedReader dictReader = new BufferedReader(new InputStreamReader(dictionary));
+    int numWords = 0;
+    String line;
+    while( (line = dictReader.readLine())!=null ) {
+      // Bucketed by the upper cased length, which may differ, as for
+      // a German sharp s
+      final String word = line.toUpperCase(Locale.ROOT);
+      while( mutableBuckets.size()<=word.length() ) mutableBuckets.add(new ArrayList<String>());
+      mutableBuckets.get(word.length()).add(word);
+      ++numWords;
+    }
+
+    final WordBucket[] buckets = new WordBucket[mutableBuckets.size()];
+    for( int lenI = 0; lenI<mutableBuckets.size(); ++lenI ) {
+      final List<String> bucketI = mutableBuckets.get(lenI);
+      buckets[lenI] = new ArrayWordBucket(lenI, bucketI.toArray(new String[bucketI.size()]));
+    }
+    return new Dictionary(buckets, numWords);
+  }
+
+  /**
+   * Memory-map a dictionary file written by PackedDictionary.
+   *
+   * @throws IOException if the file can't be read or isn't a packed
+   * dictionary
+   */
+  public static Dictionary map(File file) throws IOException {
+    final RandomAccessFile dictFile = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = dictFile.getChannel();
+      // The mapping remains valid after the channel is closed
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      final WordBucket[] buckets = PackedDictionary.readBuckets(buffer);
+      int numWords = 0;
+      for( WordBucket bucketI : buckets ) numWords += bucketI.size();
+      return new Dictionary(buckets, numWords);
+    } finally {
+      dictFile.close();
+    }
+  }
+
+  /**
+   * Read the bundled words.txt dictionary from the class path.
+   *
+   * @throws IOException if the resource is missing or unreadable
+   */
+  public static Dictionary loadDefault() throws IOException {
+    final InputStream resource = Dictionary.class.getClassLoader().getResourceAsStream(DEFAULT_RESOURCE);
+    if( resource==null ) throw new IOException("Resource not found on class path: "+DEFAULT_RESOURCE);
+    try {
+      return load(resource);
+    } finally {
+      resource.close();
+    }
+  }
+
+  /**
+   * @param wordLen length of the words wanted
+   * @return unmodifiable, upper case words of length wordLen, in
+   * dictionary order. Empty if there are none.
+   */
+  public List<String> getWords(int wordLen) {
+    if( wordLen<0 || buckets_.length<=wordLen ) return Collections.emptyList();
+    return buckets_[wordLen].getWords();
+  }
+
+  /**
+   * @return the words of length wordLen in primitive form. Empty if
+   * there are none.
+   */
+  WordBucket getBucket(int wordLen) {
+    if( wordLen<0 || buckets_.length<=wordLen ) return new ArrayWordBucket(Math.max(wordLen, 0), new String[0]);
+    return buckets_[wordLen];
+  }
+
+  /**
+   * @return length of the longest word in the dictionary
+   */
+  public int getMaxWordLength() {
+    return buckets_.length-1;
+  }
+
+  /**
+   * @return number of words in the dictionary
+   */
+  public int size() {
+    return numWords_;
+  }
+
+  /**
+   * @return hex SHA-256 digest of the words, by length then in
+   * dictionary order, which tells apart dictionaries of the same size,
+   * whether loaded or mapped
+   */
+  public String getDigest() {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch( NoSuchAlgorithmException exc ) {
+      throw new IllegalStateException("Every Java platform has SHA-256", exc);
+    }
+    for( WordBucket bucketI : buckets_ ) {
+      for( String wordI : bucketI.getWords() ) {
+        digest.update(wordI.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)'\n');
+      }
+    }
+    final StringBuilder hex = new StringBuilder();
+    for( byte byteI : digest.digest() ) hex.append(String.format("%02x", byteI&0xff));
+    return hex.toString();
+  }
+}
@@ -0,0 +1,540 @@
+package hangman;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Builds a PackedDictionary file from word lists of any size, in
+ * bounded heap.
+ *
+ * Dictionary.load holds every word as a String, so the heap it needs
+ * grows with the dictionary. The builder instead streams its input:
+ * words are validated, upper cased and packed as they're read, and
+ * buffered by length until bufferBytes of buffers are used. Then the
+ * buffered words are sorted, deduplicated and spilled to a temporary
+ * file as sorted runs, one per length. Building merges each length's
+ * runs into the packed dictionary, dropping the duplicates between
+ * runs, so that the heap needed is the buffers and the merge's
+ * MAX_MERGE_RUNS read buffers, however large the input. Lengths with
+ * more runs are merged in several passes.
+ *
+ * Input is read as lines of one word each, from any number of
+ * streams and files, gzip compressed or not. Letters are upper cased,
+ * and lines with chars outside [A-Za-z], the only chars a packed
+ * dictionary holds, or longer than MAX_WORD_LENGTH are rejected and
+ * counted. Empty lines and carriage returns are ignored.
+ *
+ * Unlike Dictionary.load, which keeps the input's order and
+ * duplicates, each bucket of the built dictionary is in alphabetical
+ * order with each word once. For a sorted word list such as
+ * words.txt, that's the same.
+ *
+ * The temporary files take about twice the size of the packed
+ * dictionary, and are deleted by close. Instances are not safe to
+ * share between threads.
+ */
+public final class DictionaryBuilder implements Closeable {
+  /** Default heap for buffered words, in bytes. */
+  public static final int DEFAULT_BUFFER_BYTES = 16<<20;
+  /** Longest word accepted. Longer lines aren't held whole. */
+  public static final int MAX_WORD_LENGTH = 64;
+  /** Most runs read at once when merging. */
+  static final int MAX_MERGE_RUNS = 64;
+  // Words first take buffer room for this many of their length
+  private static final int MIN_BUFFER_WORDS = 64;
+  private static final int RUN_BUFFER_BYTES = 1<<13;
+  private static final int IO_BUFFER_BYTES = 1<<16;
+  private static final int LETTERS_PER_LONG = PackedDictionary.LETTERS_PER_LONG;
+  private static final int BITS_PER_LETTER = PackedDictionary.BITS_PER_LETTER;
+
+  /// Words are buffered and spilled in sort form
+  // As in PackedDictionary, 5 bits per letter code and 12 letters per
+  // long, but with the first letter in the most significant bits of
+  // the first long. The codes being below 2^60, comparing the longs
+  // in order compares words of the same length alphabetically.
+
+  private final File tempDir_;
+  private final long bufferLongs_;
+  // Indexed by word length: the buffered words, each taking
+  // longsPerWord(wordLen) longs, and their number
+  private final long[][] buffers_ = new long[MAX_WORD_LENGTH+1][];
+  private final int[] numBuffered_ = new int[MAX_WORD_LENGTH+1];
+  private long numAllocatedLongs_;
+  // Indexed by word length: the runs spilled
+  private final List<List<Run>> runs_ = new ArrayList<List<Run>>();
+  private final List<File> tempFiles_ = new ArrayList<File>();
+  private int maxWordLen_;
+  private long numAdded_;
+  private long numRejected_;
+  private long numWords_;
+  private int numSpills_;
+  private boolean built_;
+
+  // The word being read, in sort form
+  private final long[] lineLetters_ = new long[PackedDictionary.longsPerWord(MAX_WORD_LENGTH)];
+  private int lineLen_;
+  private boolean lineRejected_;
+
+  /**
+   * @param tempDir directory for the temporary files, or null for
+   * the system's
+   * @param bufferBytes heap for buffered words. Buffers grow by copying,
+   * so the heap briefly used may be up to twice this.
+   */
+  public DictionaryBuilder(File tempDir, int bufferBytes) {
+    if( bufferBytes<8*MIN_BUFFER_WORDS*PackedDictionary.longsPerWord(MAX_WORD_LENGTH) ) {
+      throw new IllegalArgumentException("Buffer too small: "+bufferBytes);
+    }
+    tempDir_ = tempDir;
+    bufferLongs_ = bufferBytes/8;
+    for( int lenI = 0; lenI<=MAX_WORD_LENGTH; ++lenI ) runs_.add(new ArrayList<Run>());
+  }
+
+  /** Build with DEFAULT_BUFFER_BYTES in the system's temporary directory. */
+  public DictionaryBuilder() {
+    this(null, DEFAULT_BUFFER_BYTES);
+  }
+
+  /**
+   * Add a word.
+   *
+   * @return false if the word was rejected or empty
+   * @throws IOException if buffered words couldn't be spilled
+   */
+  public boolean add(CharSequence word) throws IOException {
+    for( int charI = 0; charI<word.length(); ++charI ) addChar(word.charAt(charI));
+    return endLine();
+  }
+
+  /**
+   * Add the words of a stream, one per line. The stream is read to
+   * its end, but not closed.
+   *
+   * @throws IOException
+   */
+  public void addLines(InputStream in) throws IOException {
+    final byte[] bytes = new byte[IO_BUFFER_BYTES];
+    int numRead;
+    while( (numRead = in.read(bytes))>=0 ) {
+      for( int byteI = 0; byteI<numRead; ++byteI ) {
+        final int ch = bytes[byteI] & 0xff;
+        if( ch=='\n' ) endLine();
+        else if( ch!='\r' ) addChar(ch);
+      }
+    }
+    endLine();
+  }
+
+  /**
+   * Add the words of a file, one per line. Gzip compressed files are
+   * recognized by their content and decompressed.
+   *
+   * @throws IOException
+   */
+  public void addFile(File file) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(file), IO_BUFFER_BYTES);
+    try {
+      in.mark(2);
+      final int magic = in.read() | (in.read()<<8);
+      in.reset();
+      if( magic==GZIPInputStream.GZIP_MAGIC ) in = new GZIPInputStream(in, IO_BUFFER_BYTES);
+      addLines(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Write the packed dictionary of the words added. May only be
+   * called once.
+   *
+   * @return number of words written, each distinct word once
+   * @throws IOException
+   */
+  public long build(File outputFile) throws IOException {
+    if( built_ ) throw new IllegalStateException("Dictionary already built");
+    built_ = true;
+    spill();
+    final int[] bucketSizes = new int[maxWordLen_+1];
+    final DataOutputStream dataOut
+      = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile), IO_BUFFER_BYTES));
+    try {
+      // The header, written last, depends only on the bucket sizes
+      PackedDictionary.writeHeader(dataOut, bucketSizes);
+      long offset = PackedDictionary.headerSize(bucketSizes.length);
+      for( int lenI = 0; lenI<bucketSizes.length; ++lenI ) {
+        final long numWords = writeBucket(lenI, dataOut);
+        offset += PackedDictionary.bucketSize(lenI, numWords);
+        if( Integer.MAX_VALUE<offset ) throw new IOException("Dictionary too large to pack");
+        bucketSizes[lenI] = (int)numWords;
+        numWords_ += numWords;
+      }
+    } finally {
+      dataOut.close();
+    }
+
+    final RandomAccessFile headerOut = new RandomAccessFile(outputFile, "rw");
+    try {
+      PackedDictionary.writeHeader(headerOut, bucketSizes);
+    } finally {
+      headerOut.close();
+    }
+    return numWords_;
+  }
+
+  /** Delete the temporary files. */
+  public void close() {
+    for( File fileI : tempFiles_ ) fileI.delete();
+    tempFiles_.clear();
+  }
+
+  /** @return number of words accepted, duplicates included */
+  public long getNumAdded() { return numAdded_; }
+  /** @return number of lines or words rejected */
+  public long getNumRejected() { return numRejected_; }
+  /** @return number of words built, once built */
+  public long getNumWords() { return numWords_; }
+  /** @return number of times buffered words were spilled */
+  public int getNumSpills() { return numSpills_; }
+
+  private void addChar(int ch) {
+    if( 'a'<=ch && ch<='z' ) ch -= 'a'-'A';
+    if( ch<'A' || 'Z'<ch || lineLen_==MAX_WORD_LENGTH ) {
+      lineRejected_ = true;
+      return;
+    }
+    lineLetters_[lineLen_/LETTERS_PER_LONG] |= (long)(ch-'A') << sortShift(lineLen_);
+    ++lineLen_;
+  }
+
+  /** Add the word read, unless rejected or empty, and start another. */
+  private boolean endLine() throws IOException {
+    final boolean added = !lineRejected_ && lineLen_>0;
+    if( lineRejected_ ) ++numRejected_;
+    if( added ) {
+      buffer(lineLetters_, lineLen_);
+      ++numAdded_;
+      maxWordLen_ = Math.max(maxWordLen_, lineLen_);
+    }
+    Arrays.fill(lineLetters_, 0);
+    lineLen_ = 0;
+    lineRejected_ = false;
+    return added;
+  }
+
+  private void buffer(long[] letters, int wordLen) throws IOException {
+    final int numLongs = PackedDictionary.longsPerWord(wordLen);
+    long[] buffer = buffers_[wordLen];
+    final int numUsed = numBuffered_[wordLen]*numLongs;
+    if( buffer==null || buffer.length<numUsed+numLongs ) {
+      final int oldLength = (buffer==null) ? 0 : buffer.length;
+      long growth = Math.max(oldLength, MIN_BUFFER_WORDS*numLongs);
+      if( bufferLongs_<numAllocatedLongs_+growth ) {
+        growth = (bufferLongs_-numAllocatedLongs_)/numLongs*numLongs;
+        if( growth==0 ) {
+          // Spilling frees every buffer, so the word fits after
+          spill();
+          buffer(letters, wordLen);
+          return;
+        }
+      }
+      buffer = (buffer==null) ? new long[(int)growth] : Arrays.copyOf(buffer, oldLength+(int)growth);
+      buffers_[wordLen] = buffer;
+      numAllocatedLongs_ += growth;
+    }
+    System.arraycopy(letters, 0, buffer, numUsed, numLongs);
+    ++numBuffered_[wordLen];
+  }
+
+  /** Write each length's buffered words as a sorted run, and free the buffers. */
+  private void spill() throws IOException {
+    if( numAllocatedLongs_==0 ) return;
+    final File runFile = newTempFile();
+    final DataOutputStream runOut
+      = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), IO_BUFFER_BYTES));
+    try {
+      long offset = 0;
+      for( int lenI = 0; lenI<=MAX_WORD_LENGTH; ++lenI ) {
+        final long[] buffer = buffers_[lenI];
+        if( buffer==null || numBuffered_[lenI]==0 ) continue;
+        final int numLongs = PackedDictionary.longsPerWord(lenI);
+        sortWords(buffer, numBuffered_[lenI], numLongs);
+        final int numWords = dedupeWords(buffer, numBuffered_[lenI], numLongs);
+        for( int longI = 0; longI<numWords*numLongs; ++longI ) runOut.writeLong(buffer[longI]);
+        runs_.get(lenI).add(new Run(runFile, offset, numWords));
+        offset += 8L*numWords*numLongs;
+      }
+    } finally {
+      runOut.close();
+    }
+    Arrays.fill(buffers_, null);
+    Arrays.fill(numBuffered_, 0);
+    numAllocatedLongs_ = 0;
+    ++numSpills_;
+  }
+
+  /**
+   * Merge the runs of a length into the packed dictionary's bucket.
+   *
+   * @return number of words written
+   */
+  private long writeBucket(final int wordLen, final DataOutputStream dataOut) throws IOException {
+    if( runs_.get(wordLen).isEmpty() ) return 0;
+    final List<Run> runs = reduceRuns(runs_.get(wordLen), wordLen);
+    final int numLongs = PackedDictionary.longsPerWord(wordLen);
+    // Letter masks follow the letters, so they wait in a file
+    final File masksFile = newTempFile();
+    final DataOutputStream masksOut
+      = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(masksFile), IO_BUFFER_BYTES));
+    final long[] letters = new long[numLongs];
+    long numWords;
+    try {
+      numWords = merge(runs, wordLen, new WordSink() {
+          public void add(long[] sortLetters) throws IOException {
+            Arrays.fill(letters, 0);
+            int letterMask = 0;
+            for( int posI = 0; posI<wordLen; ++posI ) {
+              final int code = (int)(sortLetters[posI/LETTERS_PER_LONG]>>>sortShift(posI))
+                & PackedDictionary.LETTER_CODE_MASK;
+              letters[posI/LETTERS_PER_LONG] |= (long)code << (BITS_PER_LETTER*(posI%LETTERS_PER_LONG));
+              letterMask |= 1<<code;
+            }
+            for( long lettersI : letters ) dataOut.writeLong(lettersI);
+            masksOut.writeInt(letterMask);
+          }
+        });
+    } finally {
+      masksOut.close();
+    }
+
+    final InputStream masksIn = new FileInputStream(masksFile);
+    try {
+      final byte[] bytes = new byte[IO_BUFFER_BYTES];
+      int numRead;
+      while( (numRead = masksIn.read(bytes))>=0 ) dataOut.write(bytes, 0, numRead);
+    } finally {
+      masksIn.close();
+    }
+    masksFile.delete();
+    final long padding = PackedDictionary.bucketSize(wordLen, numWords)-(8L*numLongs+4)*numWords;
+    for( long byteI = 0; byteI<padding; ++byteI ) dataOut.writeByte(0);
+    return numWords;
+  }
+
+  /** @return runs holding the same words, at most MAX_MERGE_RUNS */
+  private List<Run> reduceRuns(List<Run> runs, int wordLen) throws IOException {
+    while( MAX_MERGE_RUNS<runs.size() ) {
+      final List<Run> mergedRuns = new ArrayList<Run>();
+      for( int runI = 0; runI<runs.size(); runI += MAX_MERGE_RUNS ) {
+        final List<Run> group = runs.subList(runI, Math.min(runI+MAX_MERGE_RUNS, runs.size()));
+        final File runFile = newTempFile();
+        final DataOutputStream runOut
+          = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), IO_BUFFER_BYTES));
+        try {
+          final long numWords = merge(group, wordLen, new WordSink() {
+              public void add(long[] sortLetters) throws IOException {
+                for( long lettersI : sortLetters ) runOut.writeLong(lettersI);
+              }
+            });
+          mergedRuns.add(new Run(runFile, 0, numWords));
+        } finally {
+          runOut.close();
+        }
+      }
+      runs = mergedRuns;
+    }
+    return runs;
+  }
+
+  /**
+   * Merge sorted runs, passing each distinct word to sink in order.
+   *
+   * @return number of words passed to sink
+   */
+  private long merge(List<Run> runs, int wordLen, WordSink sink) throws IOException {
+    final int numLongs = PackedDictionary.longsPerWord(wordLen);
+    final PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(Math.max(runs.size(), 1), new Comparator<RunReader>() {
+        public int compare(RunReader reader1, RunReader reader2) {
+          return compareWords(reader1.letters_, 0, reader2.letters_, 0, reader1.letters_.length);
+        }
+      });
+    final List<RunReader> readers = new ArrayList<RunReader>();
+    final long[] lastLetters = new long[numLongs];
+    long numMerged = 0;
+    try {
+      for( Run runI : runs ) {
+        final RunReader reader = new RunReader(runI, numLongs);
+        readers.add(reader);
+        if( reader.next() ) queue.add(reader);
+      }
+      while( !queue.isEmpty() ) {
+        final RunReader reader = queue.poll();
+        if( numMerged==0 || compareWords(reader.letters_, 0, lastLetters, 0, numLongs)!=0 ) {
+          sink.add(reader.letters_);
+          System.arraycopy(reader.letters_, 0, lastLetters, 0, numLongs);
+          ++numMerged;
+        }
+        if( reader.next() ) queue.add(reader);
+      }
+    } finally {
+      for( RunReader readerI : readers ) readerI.close();
+    }
+    return numMerged;
+  }
+
+  private File newTempFile() throws IOException {
+    final File file = File.createTempFile("hangman-dictionary", ".run", tempDir_);
+    tempFiles_.add(file);
+    return file;
+  }
+
+  /** @return shift of the letter at pos within its long, in sort form */
+  private static int sortShift(int pos) {
+    return BITS_PER_LETTER*(LETTERS_PER_LONG-1-pos%LETTERS_PER_LONG);
+  }
+
+  /** Compare words of numLongs longs, at wordI1 and wordI2 of their arrays. */
+  private static int compareWords(long[] words1, int wordI1, long[] words2, int wordI2, int numLongs) {
+    for( int longI = 0; longI<numLongs; ++longI ) {
+      final int cmp = Long.compare(words1[wordI1*numLongs+longI], words2[wordI2*numLongs+longI]);
+      if( cmp!=0 ) return cmp;
+    }
+    return 0;
+  }
+
+  /** Sort words of numLongs longs in place, by heap sort if more than one long. */
+  private static void sortWords(long[] words, int numWords, int numLongs) {
+    if( numLongs==1 ) {
+      Arrays.sort(words, 0, numWords);
+      return;
+    }
+    for( int wordI = numWords/2-1; 0<=wordI; --wordI ) siftDown(words, wordI, numWords, numLongs);
+    for( int endI = numWords-1; 0<endI; --endI ) {
+      swapWords(words, 0, endI, numLongs);
+      siftDown(words, 0, endI, numLongs);
+    }
+  }
+
+  private static void siftDown(long[] words, int wordI, int numWords, int numLongs) {
+    for( int childI = 2*wordI+1; childI<numWords; wordI = childI, childI = 2*wordI+1 ) {
+      if( childI+1<numWords && compareWords(words, childI, words, childI+1, numLongs)<0 ) ++childI;
+      if( compareWords(words, wordI, words, childI, numLongs)>=0 ) return;
+      swapWords(words, wordI, childI, numLongs);
+    }
+  }
+
+  private static void swapWords(long[] words, int wordI1, int wordI2, int numLongs) {
+    for( int longI = 0; longI<numLongs; ++longI ) {
+      final long swap = words[wordI1*numLongs+longI];
+      words[wordI1*numLongs+longI] = words[wordI2*numLongs+longI];
+      words[wordI2*numLongs+longI] = swap;
+    }
+  }
+
+  /** @return number of words left after removing adjacent duplicates */
+  private static int dedupeWords(long[] words, int numWords, int numLongs) {
+    if( numWords==0 ) return 0;
+    int numKept = 1;
+    for( int wordI = 1; wordI<numWords; ++wordI ) {
+      if( compareWords(words, wordI, words, numKept-1, numLongs)==0 ) continue;
+      System.arraycopy(words, wordI*numLongs, words, numKept*numLongs, numLongs);
+      ++numKept;
+    }
+    return numKept;
+  }
+
+  /** Sorted, distinct words of one length in a temporary file. */
+  private static final class Run {
+    final File file_;
+    final long offset_;
+    final long numWords_;
+
+    Run(File file, long offset, long numWords) {
+      file_ = file;
+      offset_ = offset;
+      numWords_ = numWords;
+    }
+  }
+
+  /** Reads a Run's words in order. */
+  private static final class RunReader {
+    final long[] letters_;
+    private final DataInputStream in_;
+    private long numLeft_;
+
+    RunReader(Run run, int numLongs) throws IOException {
+      letters_ = new long[numLongs];
+      numLeft_ = run.numWords_;
+      final FileInputStream fileIn = new FileInputStream(run.file_);
+      fileIn.getChannel().position(run.offset_);
+      in_ = new DataInputStream(new BufferedInputStream(fileIn, RUN_BUFFER_BYTES));
+    }
+
+    /** @return whether letters_ was set to the next word */
+    boolean next() throws IOException {
+      if( numLeft_==0 ) return false;
+      for( int longI = 0; longI<letters_.length; ++longI ) letters_[longI] = in_.readLong();
+      --numLeft_;
+      return true;
+    }
+
+    void close() throws IOException {
+      in_.close();
+    }
+  }
+
+  private interface WordSink {
+    void add(long[] sortLetters) throws IOException;
+  }
+
+  /**
+   * Build a packed dictionary from text dictionaries.
+   *
+   * @param args output file, then any number of text dictionary
+   * files, gzip compressed or not (default: the bundled words.txt)
+   */
+  public static void main(String[] args) throws Exception {
+    if( args.length<1 ) {
+      System.err.println("Usage: DictionaryBuilder output_file [dictionary_file...]");
+      System.exit(2);
+    }
+    final File outputFile = new File(args[0]);
+    final long startNanos = System.nanoTime();
+    final DictionaryBuilder builder = new DictionaryBuilder();
+    try {
+      if( args.length>1 ) {
+        for( int argI = 1; argI<args.length; ++argI ) builder.addFile(new File(args[argI]));
+      } else {
+        final InputStream resource = DictionaryBuilder.class.getClassLoader().getResourceAsStream(Dictionary.DEFAULT_RESOURCE);
+        if( resource==null ) throw new IOException("Resource not found on class path: "+Dictionary.DEFAULT_RESOURCE);
+        try {
+          builder.addLines(resource);
+        } finally {
+          resource.close();
+        }
+      }
+      builder.build(outputFile);
+    } finally {
+      builder.close();
+    }
+    System.out.println("Wrote "+builder.getNumWords()+" words, "+outputFile.length()+" bytes, to "+outputFile
+                       +" in "+(System.nanoTime()-startNanos)/1000000+" ms"
+                       +" ("+builder.getNumAdded()+" read, "+builder.getNumRejected()+" rejected"
+                       +", "+builder.getNumSpills()+" spills)");
+  }
+}
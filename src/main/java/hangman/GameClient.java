@@ -0,0 +1,104 @@
+package hangman;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Client of a GameServer session. See GameServer for the protocol.
+ *
+ * Not thread safe; use one client per thread.
+ */
+public class GameClient {
+  private final Socket socket_;
+  private final BufferedReader in_;
+  private final Writer out_;
+
+  /**
+   * A game's state, as the server reports it after each request.
+   */
+  public static class State {
+    private final String pattern_;
+    private final HangmanGame.Status status_;
+    private final int score_;
+
+    State(String pattern, HangmanGame.Status status, int score) {
+      pattern_ = pattern;
+      status_ = status;
+      score_ = score;
+    }
+
+    public String getPattern() { return pattern_; }
+    public HangmanGame.Status getStatus() { return status_; }
+    public int getScore() { return score_; }
+
+    @Override
+    public String toString() {
+      return pattern_+"; score="+score_+"; status="+status_;
+    }
+  }
+
+  /**
+   * Open a session.
+   *
+   * @throws IOException if the server can't be connected to
+   */
+  public GameClient(String host, int port) throws IOException {
+    socket_ = new Socket(host, port);
+    socket_.setTcpNoDelay(true);
+    in_ = new BufferedReader(new InputStreamReader(socket_.getInputStream(), StandardCharsets.US_ASCII));
+    out_ = new BufferedWriter(new OutputStreamWriter(socket_.getOutputStream(), StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * Start a game.
+   *
+   * @param word secret word, or null for the server to choose one
+   */
+  public State newGame(String word) throws IOException {
+    return request((word==null) ? "NEW" : "NEW "+word);
+  }
+
+  public State guessLetter(char letter) throws IOException {
+    return request("LETTER "+letter);
+  }
+
+  public State guessWord(String word) throws IOException {
+    return request("WORD "+word);
+  }
+
+  /** Have the server's strategy make the next guess. */
+  public State guess() throws IOException {
+    return request("GUESS");
+  }
+
+  /** End the session. */
+  public void close() throws IOException {
+    try {
+      out_.write("QUIT\n");
+      out_.flush();
+    } finally {
+      socket_.close();
+    }
+  }
+
+  /**
+   * @throws IOException if the connection fails or the server answers
+   * with an error
+   */
+  private State request(String line) throws IOException {
+    out_.write(line);
+    out_.write('\n');
+    out_.flush();
+    final String reply = in_.readLine();
+    if( reply==null ) throw new IOException("Server closed the session");
+    final String[] fields = reply.split(" ", -1);
+    if( fields.length!=4 || !fields[0].equals("STATE") ) throw new IOException("Server replied to "+line+": "+reply);
+    return new State(fields[1], HangmanGame.Status.valueOf(fields[2]), Integer.parseInt(fields[3]));
+  }
+}
@@ -0,0 +1,31 @@
+package hangman;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event for a HangmanGame ending.
+ */
+@Name("hangman.Game")
+@Label("Hangman Game")
+@Category("Hangman")
+@Description("A game played to its end")
+@StackTrace(false)
+class GameEvent extends Event {
+  @Label("Word Length")
+  int wordLength;
+
+  @Label("Status")
+  @Description("GAME_WON or GAME_LOST")
+  String status;
+
+  @Label("Score")
+  int score;
+
+  @Label("Wrong Guesses")
+  int wrongGuesses;
+}
@@ -0,0 +1,341 @@
+package hangman;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Binary journal of played games, written asynchronously, for
+ * replaying them with JournalReplay.
+ *
+ * Play.run records each game it plays: the secret word,
+ * maxWrongGuesses, and for each guess the guess, the game's pattern
+ * after it and the nanoseconds the strategy took to decide it. Games
+ * go to the journal passed to Play.run, or to DEFAULT, which is
+ * opened on the file named by -Dhangman.journal, if given, and
+ * closed when the JVM exits.
+ *
+ * The game's thread only collects its guesses into an Entry, and
+ * offers the finished Entry to a bounded queue. It never waits: if
+ * the queue is full, the entry is dropped and counted. A daemon
+ * thread encodes the entries to a buffered stream. Games with guesses
+ * other than GuessLetter and GuessWord can't be encoded, and are
+ * dropped too.
+ *
+ * The format is that of DataOutputStream:
+ *   header: int MAGIC, int VERSION
+ *   per game: UTF secret word, int maxWrongGuesses, int number of
+ *     guesses, then per guess: byte LETTER_GUESS or WORD_GUESS, UTF
+ *     letter or word, UTF pattern after the guess, long nanoseconds
+ *     deciding it
+ * Games are in the order they ended. Read them with a Reader.
+ */
+public final class GameJournal implements Closeable {
+  /** System property naming the file DEFAULT journals to */
+  public static final String PROPERTY = "hangman.journal";
+  /** "HGJ1" */
+  static final int MAGIC = 0x48474a31;
+  static final int VERSION = 1;
+  static final byte LETTER_GUESS = 0;
+  static final byte WORD_GUESS = 1;
+  /** Default most entries waiting to be written */
+  public static final int DEFAULT_CAPACITY = 1<<16;
+
+  /** Journal of the games Play.run plays by default, or null */
+  public static final GameJournal DEFAULT = openDefault();
+
+  // Marks the end of the entries for the writer thread
+  private static final Entry END = new Entry("", 0);
+
+  private final DataOutputStream out_;
+  private final BlockingQueue<Entry> queue_;
+  private final Thread writerThread_;
+  private final LongAdder numRecorded_ = new LongAdder();
+  private final LongAdder numDropped_ = new LongAdder();
+  private volatile boolean closed_;
+  // Calls of record() between their check of closed_ and their offer,
+  // which close() waits out before queuing END
+  private final AtomicInteger numRecording_ = new AtomicInteger();
+  // First failure writing, reported by close()
+  private volatile IOException writeError_;
+
+  /**
+   * A game's record: the game's start, and each guess made in it.
+   */
+  public static final class Entry {
+    private final String secretWord_;
+    private final int maxWrongGuesses_;
+    private Guess[] guesses_ = new Guess[8];
+    private String[] patterns_ = new String[8];
+    private long[] guessNanos_ = new long[8];
+    private int numGuesses_;
+    // Whether all the guesses are GuessLetters or GuessWords
+    private boolean encodable_ = true;
+
+    Entry(String secretWord, int maxWrongGuesses) {
+      secretWord_ = secretWord;
+      maxWrongGuesses_ = maxWrongGuesses;
+    }
+
+    /** Entry for a game yet to be guessed in */
+    Entry(HangmanGame game) {
+      this(game.getSecretWord(), game.getMaxWrongGuesses());
+    }
+
+    /**
+     * Add a guess made in the game.
+     *
+     * @param pattern game's pattern after the guess
+     * @param nanos time the strategy took to decide the guess
+     */
+    void add(Guess guess, CharSequence pattern, long nanos) {
+      if( numGuesses_==guesses_.length ) {
+        guesses_ = Arrays.copyOf(guesses_, 2*numGuesses_);
+        patterns_ = Arrays.copyOf(patterns_, 2*numGuesses_);
+        guessNanos_ = Arrays.copyOf(guessNanos_, 2*numGuesses_);
+      }
+      if( !(guess instanceof GuessLetter || guess instanceof GuessWord) ) encodable_ = false;
+      guesses_[numGuesses_] = guess;
+      patterns_[numGuesses_] = pattern.toString();
+      guessNanos_[numGuesses_] = nanos;
+      ++numGuesses_;
+    }
+
+    public String getSecretWord() { return secretWord_; }
+    public int getMaxWrongGuesses() { return maxWrongGuesses_; }
+    public int getNumGuesses() { return numGuesses_; }
+    public Guess getGuess(int guessI) { return guesses_[guessI]; }
+    /** @return the game's pattern after the guess */
+    public String getPattern(int guessI) { return patterns_[guessI]; }
+    public long getGuessNanos(int guessI) { return guessNanos_[guessI]; }
+
+    /** @return the game replayed from the guesses, which is over if the game was */
+    public HangmanGame replay() {
+      final HangmanGame game = new HangmanGame(secretWord_, maxWrongGuesses_);
+      for( int guessI = 0; guessI<numGuesses_; ++guessI ) guesses_[guessI].makeGuess(game);
+      return game;
+    }
+  }
+
+  /**
+   * Journal to a file, replacing it.
+   *
+   * @throws IOException if the file can't be created
+   */
+  public GameJournal(File file) throws IOException {
+    this(new FileOutputStream(file), DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param out stream to write the journal to, closed by close()
+   * @param capacity most entries waiting to be written. More are
+   * dropped.
+   * @throws IOException if the header can't be written
+   */
+  public GameJournal(OutputStream out, int capacity) throws IOException {
+    if( capacity<1 ) throw new IllegalArgumentException("capacity must be positive but got "+capacity);
+    out_ = new DataOutputStream(new BufferedOutputStream(out, 1<<16));
+    out_.writeInt(MAGIC);
+    out_.writeInt(VERSION);
+    queue_ = new ArrayBlockingQueue<Entry>(capacity);
+    writerThread_ = new Thread(new Runnable() {
+        public void run() {
+          writeEntries();
+        }
+      }, "hangman-journal");
+    writerThread_.setDaemon(true);
+    writerThread_.start();
+  }
+
+  private static GameJournal openDefault() {
+    final String fileName = System.getProperty(PROPERTY);
+    if( fileName==null || fileName.isEmpty() ) return null;
+    try {
+      final GameJournal journal = new GameJournal(new File(fileName));
+      Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+          public void run() {
+            try {
+              journal.close();
+              if( 0<journal.getNumDropped() ) {
+                System.err.println("GameJournal dropped "+journal.getNumDropped()+" of "
+                                   +(journal.getNumRecorded()+journal.getNumDropped())+" games");
+              }
+            } catch( IOException exc ) {
+              System.err.println("GameJournal failed: "+exc);
+            }
+          }
+        }, "hangman-journal-close"));
+      return journal;
+    } catch( IOException exc ) {
+      System.err.println("GameJournal not opened on "+fileName+": "+exc);
+      return null;
+    }
+  }
+
+  /**
+   * Queue a finished game's entry for writing, without waiting.
+   *
+   * @return whether the entry was queued, rather than dropped because
+   * the queue is full, the journal closed or it can't be encoded
+   */
+  boolean record(Entry entry) {
+    // Announced before checking closed_, so that close() either sees
+    // this call or this call sees close()
+    numRecording_.incrementAndGet();
+    try {
+      if( !closed_ && entry.encodable_ && queue_.offer(entry) ) {
+        numRecorded_.increment();
+        return true;
+      }
+    } finally {
+      numRecording_.decrementAndGet();
+    }
+    numDropped_.increment();
+    return false;
+  }
+
+  /** @return entries queued for writing so far */
+  public long getNumRecorded() { return numRecorded_.sum(); }
+  /** @return entries dropped so far */
+  public long getNumDropped() { return numDropped_.sum(); }
+
+  private void writeEntries() {
+    try {
+      for( Entry entry = queue_.take(); entry!=END; entry = queue_.take() ) {
+        if( writeError_!=null ) continue;
+        try {
+          write(entry);
+          // Flush while idle, so that a crash loses little
+          if( queue_.isEmpty() ) out_.flush();
+        } catch( IOException exc ) {
+          writeError_ = exc;
+        }
+      }
+    } catch( InterruptedException exc ) {
+      // Closing without the remaining entries
+    }
+  }
+
+  private void write(Entry entry) throws IOException {
+    out_.writeUTF(entry.secretWord_);
+    out_.writeInt(entry.maxWrongGuesses_);
+    out_.writeInt(entry.numGuesses_);
+    for( int guessI = 0; guessI<entry.numGuesses_; ++guessI ) {
+      final Guess guess = entry.guesses_[guessI];
+      if( guess instanceof GuessLetter ) {
+        out_.writeByte(LETTER_GUESS);
+        out_.writeUTF(String.valueOf(((GuessLetter)guess).getLetter()));
+      } else {
+        out_.writeByte(WORD_GUESS);
+        out_.writeUTF(((GuessWord)guess).getWord());
+      }
+      out_.writeUTF(entry.patterns_[guessI]);
+      out_.writeLong(entry.guessNanos_[guessI]);
+    }
+  }
+
+  /**
+   * Write the queued entries and close the stream. Entries recorded
+   * after are dropped. If interrupted, the entries still queued aren't
+   * written, but the stream is only closed once the writer thread has
+   * stopped.
+   *
+   * @throws IOException if writing any entry failed
+   */
+  public void close() throws IOException {
+    if( closed_ ) return;
+    closed_ = true;
+    // Records that passed their check of closed_ are offering; END
+    // must come after their entries
+    while( 0<numRecording_.get() ) Thread.yield();
+    boolean interrupted = false;
+    try {
+      queue_.put(END);
+    } catch( InterruptedException exc ) {
+      interrupted = true;
+      writerThread_.interrupt();
+    }
+    while( writerThread_.isAlive() ) {
+      try {
+        writerThread_.join();
+      } catch( InterruptedException exc ) {
+        interrupted = true;
+        writerThread_.interrupt();
+      }
+    }
+    if( interrupted ) Thread.currentThread().interrupt();
+    out_.close();
+    if( writeError_!=null ) throw writeError_;
+  }
+
+  /**
+   * Reads the entries of a journal, one at a time.
+   */
+  public static final class Reader implements Closeable {
+    private final DataInputStream in_;
+
+    /** @throws IOException if the file isn't a journal */
+    public Reader(File file) throws IOException {
+      this(new FileInputStream(file));
+    }
+
+    /**
+     * @param in stream of a journal, closed by close()
+     * @throws IOException if the stream isn't a journal
+     */
+    public Reader(InputStream in) throws IOException {
+      in_ = new DataInputStream(new BufferedInputStream(in, 1<<16));
+      if( in_.readInt()!=MAGIC ) throw new IOException("Not a game journal");
+      final int version = in_.readInt();
+      if( version!=VERSION ) throw new IOException("Unsupported game journal version "+version);
+    }
+
+    /**
+     * @return the next entry, or null at the end of the journal
+     * @throws IOException if the journal is corrupt or truncated
+     * within an entry
+     */
+    public Entry next() throws IOException {
+      final String secretWord;
+      try {
+        secretWord = in_.readUTF();
+      } catch( EOFException exc ) {
+        return null;
+      }
+      final Entry entry = new Entry(secretWord, in_.readInt());
+      final int numGuesses = in_.readInt();
+      for( int guessI = 0; guessI<numGuesses; ++guessI ) {
+        final byte kind = in_.readByte();
+        final String text = in_.readUTF();
+        final Guess guess;
+        if( kind==LETTER_GUESS && text.length()==1 ) {
+          guess = new GuessLetter(text.charAt(0));
+        } else if( kind==WORD_GUESS ) {
+          guess = new GuessWord(text);
+        } else {
+          throw new IOException("Corrupt game journal entry for "+secretWord);
+        }
+        entry.add(guess, in_.readUTF(), in_.readLong());
+      }
+      return entry;
+    }
+
+    public void close() throws IOException {
+      in_.close();
+    }
+  }
+}
@@ -0,0 +1,289 @@
+package hangman;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TCP server hosting HangmanGames for remote clients.
+ *
+ * Each connection is a session, handled on its own thread, playing
+ * one game after another. The client either guesses itself, or has
+ * the server's StrategyImpl make the session's next guess. All
+ * sessions share the server's StrategyFactory, so the dictionary is
+ * loaded once.
+ *
+ * The protocol is line based text, one reply line per request line:
+ *
+ *   NEW [word]    start a game with word as the secret, or a random
+ *                 dictionary word if none
+ *   LETTER c      guess the letter c
+ *   WORD w        guess the word w
+ *   GUESS         make the strategy's next guess
+ *   QUIT          end the session
+ *
+ * A successful request is answered with "STATE pattern status
+ * score", eg "STATE F-CTU-L KEEP_GUESSING 4", where status is a
+ * HangmanGame.Status. Fields are separated by single spaces, so an
+ * empty word's pattern is an empty field. A failed request is
+ * answered with "ERROR message", and the session goes on.
+ *
+ * With a guess budget, GUESS decides within it by
+ * StrategyImpl.nextGuess(HangmanGame, long), trading the guess's
+ * quality for latency when the full decision wouldn't fit.
+ *
+ * Sessions run on virtual threads when the JVM has them (Java 21 and
+ * later), else on platform threads from a cached pool.
+ */
+public class GameServer {
+  private final StrategyFactory strategyFactory_;
+  private final int maxWrongGuesses_;
+  // Nanoseconds for each GUESS, or 0 for no deadline
+  private final long guessBudgetNanos_;
+  private final ServerSocket serverSocket_;
+  private final ExecutorService sessionExecutor_;
+  private final Thread acceptThread_;
+  // Open session sockets, to close on close()
+  private final Set<Socket> sessionSockets_ = ConcurrentHashMap.newKeySet();
+  private final LongAdder sessionCount_ = new LongAdder();
+  private final LongAdder gameCount_ = new LongAdder();
+  private volatile boolean closed_;
+
+  /**
+   * Start serving on the loopback interface.
+   *
+   * @param strategyFactory creates strategies, shared by all sessions
+   * @param maxWrongGuesses wrong guesses allowed in each game
+   * @param port port to listen on, or 0 for any free port
+   * @throws IOException if the port can't be listened on
+   */
+  public GameServer(StrategyFactory strategyFactory, int maxWrongGuesses, int port) throws IOException {
+    this(strategyFactory, maxWrongGuesses, port, 0);
+  }
+
+  /**
+   * Start serving on the loopback interface, deciding each GUESS
+   * within guessBudgetNanos.
+   *
+   * @param guessBudgetNanos time for the strategy to decide each
+   * GUESS, or 0 for no deadline
+   * @throws IOException if the port can't be listened on
+   */
+  public GameServer(StrategyFactory strategyFactory, int maxWrongGuesses, int port, long guessBudgetNanos)
+    throws IOException
+  {
+    if( guessBudgetNanos<0 ) throw new IllegalArgumentException("guessBudgetNanos must not be negative but got "+guessBudgetNanos);
+    strategyFactory_ = strategyFactory;
+    maxWrongGuesses_ = maxWrongGuesses;
+    guessBudgetNanos_ = guessBudgetNanos;
+    serverSocket_ = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+    sessionExecutor_ = newSessionExecutor("hangman-session");
+    acceptThread_ = new Thread(new Runnable() {
+        public void run() {
+          acceptSessions();
+        }
+      }, "hangman-accept");
+    acceptThread_.setDaemon(true);
+    acceptThread_.start();
+  }
+
+  /**
+   * @return executor running each task on a new virtual thread if the
+   * JVM supports them, else on a cached pool of daemon platform
+   * threads named after namePrefix
+   */
+  static ExecutorService newSessionExecutor(final String namePrefix) {
+    try {
+      final Method factoryMethod = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService)factoryMethod.invoke(null);
+    } catch( ReflectiveOperationException exc ) {
+      // No virtual threads, or only as a disabled preview
+    } catch( RuntimeException exc ) {
+      // Likewise
+    }
+    final AtomicInteger threadCount = new AtomicInteger();
+    return Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable task) {
+          final Thread thread = new Thread(task, namePrefix+"-"+threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  }
+
+  /** @return the port the server listens on */
+  public int getPort() {
+    return serverSocket_.getLocalPort();
+  }
+
+  /** @return number of sessions opened so far */
+  public long getSessionCount() {
+    return sessionCount_.sum();
+  }
+
+  /** @return number of games started so far */
+  public long getGameCount() {
+    return gameCount_.sum();
+  }
+
+  /** Stop accepting sessions and end the open ones. */
+  public void close() throws IOException {
+    closed_ = true;
+    serverSocket_.close();
+    for( Socket socketI : sessionSockets_ ) {
+      try {
+        socketI.close();
+      } catch( IOException exc ) {
+        // Closing anyway
+      }
+    }
+    sessionExecutor_.shutdownNow();
+  }
+
+  private void acceptSessions() {
+    while( !closed_ ) {
+      final Socket socket;
+      try {
+        socket = serverSocket_.accept();
+      } catch( IOException exc ) {
+        if( !closed_ ) System.err.println("GameServer stopped accepting: "+exc);
+        return;
+      }
+      sessionCount_.increment();
+      sessionSockets_.add(socket);
+      sessionExecutor_.execute(new Session(socket));
+    }
+  }
+
+  /** One client connection, playing its games. */
+  private class Session implements Runnable {
+    private final Socket socket_;
+    private HangmanGame game_;
+    // Created on the first GUESS of each game
+    private StrategyImpl strategy_;
+
+    Session(Socket socket) {
+      socket_ = socket;
+    }
+
+    public void run() {
+      try {
+        socket_.setTcpNoDelay(true);
+        final BufferedReader in
+          = new BufferedReader(new InputStreamReader(socket_.getInputStream(), StandardCharsets.US_ASCII));
+        final Writer out
+          = new BufferedWriter(new OutputStreamWriter(socket_.getOutputStream(), StandardCharsets.US_ASCII));
+        String line;
+        while( (line = in.readLine())!=null ) {
+          if( line.equals("QUIT") ) break;
+          out.write(handle(line));
+          out.write('\n');
+          out.flush();
+        }
+      } catch( SocketException exc ) {
+        // Client went away, or the server is closing
+      } catch( IOException exc ) {
+        if( !closed_ ) System.err.println("GameServer session failed: "+exc);
+      } finally {
+        sessionSockets_.remove(socket_);
+        try {
+          socket_.close();
+        } catch( IOException exc ) {
+          // Closing anyway
+        }
+      }
+    }
+
+    /** @return reply to the request line */
+    private String handle(String line) {
+      final String[] args = line.trim().split(" +");
+      try {
+        if( args[0].equals("NEW") && args.length<=2 ) {
+          final String word = (args.length==2) ? args[1] : randomWord();
+          game_ = new HangmanGame(word, maxWrongGuesses_);
+          strategy_ = null;
+          gameCount_.increment();
+          return state();
+        }
+        if( game_==null ) return "ERROR No game, send NEW first";
+        if( args[0].equals("LETTER") && args.length==2 && args[1].length()==1 ) {
+          game_.guessLetterQuietly(args[1].charAt(0));
+          return stateAfterGuess();
+        }
+        if( args[0].equals("WORD") && args.length==2 ) {
+          game_.guessWordQuietly(args[1]);
+          return stateAfterGuess();
+        }
+        if( args[0].equals("GUESS") && args.length==1 ) {
+          if( strategy_==null ) strategy_ = strategyFactory_.newStrategy(game_);
+          final Guess guess = (guessBudgetNanos_==0) ? strategy_.nextGuess(game_)
+            : strategy_.nextGuess(game_, System.nanoTime()+guessBudgetNanos_);
+          if( guess==null ) return "ERROR Strategy made a null guess.";
+          guess.makeGuess(game_);
+          return stateAfterGuess();
+        }
+        return "ERROR Unknown request: "+line;
+      } catch( IllegalStateException exc ) {
+        // Guessing after the game is over
+        return "ERROR "+exc.getMessage();
+      }
+    }
+
+    /** @return state(), recording the game if the guess ended it */
+    private String stateAfterGuess() {
+      if( game_.gameStatus()!=HangmanGame.Status.KEEP_GUESSING ) StrategyMetrics.recordGame(game_);
+      return state();
+    }
+
+    private String state() {
+      return "STATE "+game_.getPattern()+" "+game_.gameStatus()+" "+game_.currentScore();
+    }
+  }
+
+  /** @return word chosen uniformly from the dictionary */
+  private String randomWord() {
+    final Dictionary dictionary = strategyFactory_.getDictionary();
+    if( dictionary.size()==0 ) throw new IllegalStateException("Dictionary is empty");
+    int wordI = ThreadLocalRandom.current().nextInt(dictionary.size());
+    for( int lenI = 0; ; ++lenI ) {
+      final List<String> words = dictionary.getWords(lenI);
+      if( wordI<words.size() ) return words.get(wordI);
+      wordI -= words.size();
+    }
+  }
+
+  /**
+   * Serve games with the bundled dictionary until killed.
+   *
+   * @param args optionally the port (default: 7777), maxWrongGuesses
+   * (default: Play.DEFAULT_NUM_GUESSES) and the guess budget in
+   * microseconds (default: 0, no deadline)
+   */
+  public static void main(String[] args) throws Exception {
+    final int port = args.length>0 ? Integer.parseInt(args[0]) : 7777;
+    final int maxWrongGuesses = args.length>1 ? Integer.parseInt(args[1]) : Play.DEFAULT_NUM_GUESSES;
+    final long guessBudgetNanos = args.length>2 ? Long.parseLong(args[2])*1000 : 0;
+    final GameServer server
+      = new GameServer(new StrategyFactory(Dictionary.loadDefault()), maxWrongGuesses, port, guessBudgetNanos);
+    System.out.println("Serving Hangman on "+InetAddress.getLoopbackAddress().getHostAddress()+":"+server.getPort());
+    server.acceptThread_.join();
+  }
+}
@@ -0,0 +1,116 @@
+package hangman;
+
+/**
+ * Compact, canonical key for the state of a HangmanGame, as far as a
+ * deterministic strategy is concerned.
+ *
+ * The key holds the revealed pattern, the incorrectly guessed letters
+ * and the wrong guesses remaining. The correctly guessed letters are
+ * the ones in the pattern, so they need no separate field. The
+ * pattern is packed 5 bits per position (0 for MYSTERY_LETTER, else
+ * 1 plus the letter's offset from 'A'), 12 positions per long.
+ *
+ * Games guessing words incorrectly are not represented, since which
+ * words were guessed matters to a strategy's candidates but isn't in
+ * the key. Neither are games with chars outside [A-Z] or words longer
+ * than MAX_WORD_LENGTH.
+ */
+final class GameStateKey {
+  static final int MAX_WORD_LENGTH = 36;
+  private static final int POSITIONS_PER_LONG = 12;
+
+  private final long pattern0_;
+  private final long pattern1_;
+  private final long pattern2_;
+  private final int incorrectMask_;
+  private final byte wordLen_;
+  private final byte wrongGuessesRemaining_;
+  private final int hash_;
+
+  private GameStateKey(long pattern0, long pattern1, long pattern2,
+                       int incorrectMask, int wordLen, int wrongGuessesRemaining)
+  {
+    pattern0_ = pattern0;
+    pattern1_ = pattern1;
+    pattern2_ = pattern2;
+    incorrectMask_ = incorrectMask;
+    wordLen_ = (byte)wordLen;
+    wrongGuessesRemaining_ = (byte)wrongGuessesRemaining;
+
+    long hash = pattern0*0x9E3779B97F4A7C15L;
+    hash = (hash ^ pattern1)*0x9E3779B97F4A7C15L;
+    hash = (hash ^ pattern2)*0x9E3779B97F4A7C15L;
+    hash = (hash ^ incorrectMask)*0x9E3779B97F4A7C15L;
+    hash ^= (wordLen<<8) | (wrongGuessesRemaining & 0xFF);
+    hash_ = (int)(hash ^ (hash>>>32));
+  }
+
+  /**
+   * @return key for the game's current state, or null if the state
+   * can't be represented
+   */
+  static GameStateKey of(HangmanGame game) {
+    if( game.numIncorrectlyGuessedWords()!=0 ) return null;
+    final CharSequence pattern = game.getPattern();
+    if( MAX_WORD_LENGTH<pattern.length() ) return null;
+    final int wrongGuessesRemaining = game.numWrongGuessesRemaining();
+    if( wrongGuessesRemaining<Byte.MIN_VALUE || Byte.MAX_VALUE<wrongGuessesRemaining ) return null;
+
+    long pattern0 = 0;
+    long pattern1 = 0;
+    long pattern2 = 0;
+    for( int posI = 0; posI<pattern.length(); ++posI ) {
+      final char ch = pattern.charAt(posI);
+      if( ch==HangmanGame.MYSTERY_LETTER ) continue;
+      if( ch<'A' || 'Z'<ch ) return null;
+      final long code = (long)(ch-'A'+1)<<(5*(posI%POSITIONS_PER_LONG));
+      switch( posI/POSITIONS_PER_LONG ) {
+      case 0: pattern0 |= code; break;
+      case 1: pattern1 |= code; break;
+      default: pattern2 |= code; break;
+      }
+    }
+    final int incorrectMask = game.getIncorrectLetterMask();
+    if( (incorrectMask & HangmanGame.OTHER_LETTERS_BIT)!=0 ) return null;
+    return new GameStateKey(pattern0, pattern1, pattern2,
+                            incorrectMask, pattern.length(), wrongGuessesRemaining);
+  }
+
+  int getWordLength() { return wordLen_; }
+  int getIncorrectMask() { return incorrectMask_; }
+  int getWrongGuessesRemaining() { return wrongGuessesRemaining_; }
+
+  @Override
+  public boolean equals(Object other) {
+    if( this==other ) return true;
+    if( !(other instanceof GameStateKey) ) return false;
+    final GameStateKey otherKey = (GameStateKey)other;
+    return pattern0_==otherKey.pattern0_
+      && pattern1_==otherKey.pattern1_
+      && pattern2_==otherKey.pattern2_
+      && incorrectMask_==otherKey.incorrectMask_
+      && wordLen_==otherKey.wordLen_
+      && wrongGuessesRemaining_==otherKey.wrongGuessesRemaining_;
+  }
+
+  @Override
+  public int hashCode() {
+    return hash_;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder keyB = new StringBuilder();
+    final long[] packed = { pattern0_, pattern1_, pattern2_ };
+    for( int posI = 0; posI<wordLen_; ++posI ) {
+      final int code = (int)(packed[posI/POSITIONS_PER_LONG]>>>(5*(posI%POSITIONS_PER_LONG))) & 0x1F;
+      keyB.append(code==0 ? HangmanGame.MYSTERY_LETTER : (char)('A'+code-1));
+    }
+    keyB.append("; incorrect=");
+    for( int letterI = 0; letterI<WordBucket.NUM_LETTERS; ++letterI ) {
+      if( (incorrectMask_ & (1<<letterI))!=0 ) keyB.append((char)('A'+letterI));
+    }
+    keyB.append("; wrongs left=").append(wrongGuessesRemaining_);
+    return keyB.toString();
+  }
+}
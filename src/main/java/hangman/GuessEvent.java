@@ -0,0 +1,47 @@
+package hangman;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event for a StrategyImpl deciding a guess.
+ *
+ * The event's duration is the time nextGuess took. Enable it in a
+ * recording with eg -XX:StartFlightRecording:settings=profile, or by
+ * name, hangman.Guess.
+ */
+@Name("hangman.Guess")
+@Label("Hangman Guess")
+@Category("Hangman")
+@Description("A strategy deciding its next guess")
+@StackTrace(false)
+class GuessEvent extends Event {
+  @Label("Word Length")
+  int wordLength;
+
+  @Label("Guesses Made")
+  @Description("Guesses made in the game before this one, a measure of the game's phase")
+  int guessesMade;
+
+  @Label("Wrong Guesses Remaining")
+  int wrongGuessesRemaining;
+
+  @Label("Candidates Before")
+  @Description("Candidate words before filtering by the game's state")
+  int candidatesBefore;
+
+  @Label("Candidates After")
+  @Description("Candidate words after filtering by the game's state")
+  int candidatesAfter;
+
+  @Label("Branch")
+  @Description("How the guess was decided: a StrategyMetrics.Branch")
+  String branch;
+
+  @Label("Guess")
+  String guess;
+}
@@ -10,9 +10,14 @@ public class GuessLetter implements Guess {
     this.guess = guess;
   }
 
+  /** @return the guessed letter, as given to the constructor */
+  public char getLetter() {
+    return guess;
+  }
+
   @Override
   public void makeGuess(HangmanGame game) {
-    game.guessLetter(guess);
+    game.guessLetterQuietly(guess);
   }
 
   @Override
@@ -0,0 +1,90 @@
+package hangman;
+
+import java.util.Arrays;
+
+/**
+ * Splits secret words by the outcome a guess would have for them, for
+ * walking a strategy's decisions over many words at once, as
+ * DecisionTreeCompiler, TreeEvaluator and BatchEvaluator do.
+ *
+ * The outcome of a guess is what the game reveals: the positions of a
+ * guessed letter, as an int mask, so only for words of at most
+ * MAX_WORD_LENGTH, 0 for an incorrect word, or CORRECT_WORD for a
+ * correct word.
+ *
+ * Words are sorted by outcome and id packed in a long, which groups
+ * them by outcome, in increasing outcome order, keeping id order
+ * within each split. The splits are then ranges of the sorted array:
+ *
+ *   final long[] outcomeIds = GuessOutcomes.sort(bucket, wordIds, guess);
+ *   for( int splitBegin = 0, splitEnd; splitBegin<outcomeIds.length; splitBegin = splitEnd ) {
+ *     splitEnd = GuessOutcomes.splitEnd(outcomeIds, splitBegin);
+ *     ...
+ *   }
+ */
+final class GuessOutcomes {
+  /** Longest word whose outcomes are position masks */
+  static final int MAX_WORD_LENGTH = 31;
+  /**
+   * Outcome of a correctly guessed word, which ends the game, so that
+   * it sorts apart from the others
+   */
+  static final int CORRECT_WORD = -1;
+
+  private GuessOutcomes() {}
+
+  /**
+   * @return the outcome of guess if the secret word were wordId, or 0
+   * for a guess neither a GuessLetter nor a GuessWord
+   */
+  static int outcome(WordBucket bucket, int wordId, Guess guess) {
+    if( guess instanceof GuessWord ) {
+      return ((GuessWord)guess).getWord().equalsIgnoreCase(bucket.getWord(wordId)) ? CORRECT_WORD : 0;
+    }
+    if( !(guess instanceof GuessLetter) ) return 0;
+    final char letter = Character.toUpperCase(((GuessLetter)guess).getLetter());
+    int positions = 0;
+    for( int posI = 0; posI<bucket.getWordLength(); ++posI ) {
+      if( bucket.getChar(wordId, posI)==letter ) positions |= 1<<posI;
+    }
+    return positions;
+  }
+
+  /**
+   * @param wordIds ids of words of bucket
+   * @return the words' outcomes of guess packed with their ids, sorted
+   */
+  static long[] sort(WordBucket bucket, int[] wordIds, Guess guess) {
+    final long[] outcomeIds = new long[wordIds.length];
+    for( int wordI = 0; wordI<wordIds.length; ++wordI ) {
+      outcomeIds[wordI] = ((long)outcome(bucket, wordIds[wordI], guess)<<32) | wordIds[wordI];
+    }
+    Arrays.sort(outcomeIds);
+    return outcomeIds;
+  }
+
+  /** @return the outcome of an element of sort's array */
+  static int outcome(long outcomeId) {
+    return (int)(outcomeId>>>32);
+  }
+
+  /** @return the id of an element of sort's array */
+  static int id(long outcomeId) {
+    return (int)outcomeId;
+  }
+
+  /** @return the end of the split of sort's array beginning at splitBegin */
+  static int splitEnd(long[] outcomeIds, int splitBegin) {
+    final int outcome = outcome(outcomeIds[splitBegin]);
+    int splitEnd = splitBegin+1;
+    while( splitEnd<outcomeIds.length && outcome(outcomeIds[splitEnd])==outcome ) ++splitEnd;
+    return splitEnd;
+  }
+
+  /** @return the ids of the split of sort's array [splitBegin, splitEnd) */
+  static int[] ids(long[] outcomeIds, int splitBegin, int splitEnd) {
+    final int[] ids = new int[splitEnd-splitBegin];
+    for( int wordI = splitBegin; wordI<splitEnd; ++wordI ) ids[wordI-splitBegin] = id(outcomeIds[wordI]);
+    return ids;
+  }
+}
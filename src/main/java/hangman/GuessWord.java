@@ -10,9 +10,14 @@ public class GuessWord implements Guess {
     this.guess = guess;
   }
 
+  /** @return the guessed word, as given to the constructor */
+  public String getWord() {
+    return guess;
+  }
+
   @Override
   public void makeGuess(HangmanGame game) {
-    game.guessWord(guess);
+    game.guessWordQuietly(guess);
   }
 
   @Override
@@ -4,6 +4,13 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
+/**
+ * The game state is kept in primitives, so that playing allocates
+ * nothing beyond the guesses: guessed letters as 26 bit masks, and a
+ * count of the positions still to reveal. Strategies should read the
+ * state with getPattern and the letter mask getters. The String and
+ * Set getters build their results from that state on each call.
+ */
 public class HangmanGame {
   /**
    * A enum for the current state of the game
@@ -15,6 +22,12 @@ public class HangmanGame {
    */
   public static final Character MYSTERY_LETTER = '-';
 
+  /**
+   * Bit set in a letter mask when the set of letters has one outside
+   * 'A' to 'Z'. The other bits are 1 << (letter - 'A').
+   */
+  public static final int OTHER_LETTERS_BIT = 1 << 31;
+
   /**
    * The word that needs to be guessed (e.g. 'FACTUAL')
    */
@@ -31,19 +44,31 @@ public class HangmanGame {
   private final char[] guessedSoFar;
 
   /**
-   * Set of all correct letter guesses so far (e.g. 'C', 'F', 'L', 'T', 'U')
+   * Read-only view of guessedSoFar
+   */
+  private final CharSequence pattern = new Pattern();
+
+  /**
+   * Number of positions where guessedSoFar differs from secretWord. The game is won when it's 0.
    */
-  private Set<Character> correctlyGuessedLetters = new HashSet<Character>();
+  private int numUnrevealed;
 
   /**
-   * Set of all incorrect letter guesses so far (e.g. 'R', 'S')
+   * Letter masks of all correct and incorrect letter guesses so far (e.g. C, F, L, T, U and R, S)
    */
-  private Set<Character> incorrectlyGuessedLetters = new HashSet<Character>();
+  private int correctLetterMask;
+  private int incorrectLetterMask;
 
   /**
-   * Set of all incorrect word guesses so far (e.g. 'FACTORS')
+   * Correct and incorrect letter guesses outside 'A' to 'Z', created on the first such guess
    */
-  private Set<String> incorrectlyGuessedWords = new HashSet<String>();
+  private Set<Character> correctOtherLetters;
+  private Set<Character> incorrectOtherLetters;
+
+  /**
+   * Set of all incorrect word guesses so far (e.g. 'FACTORS'), created on the first one
+   */
+  private Set<String> incorrectlyGuessedWords;
 
   /**
    * @param secretWord The word that needs to be guessed
@@ -54,6 +79,9 @@ public class HangmanGame {
     this.guessedSoFar = new char[secretWord.length()];
     for (int i = 0; i < secretWord.length(); i++) {
       guessedSoFar[i] = MYSTERY_LETTER;
+      if (this.secretWord.charAt(i) != MYSTERY_LETTER) {
+        numUnrevealed++;
+      }
     }
     this.maxWrongGuesses = maxWrongGuesses;
   }
@@ -64,6 +92,16 @@ public class HangmanGame {
    * (which will contain MYSTERY_LETTER in place of unknown letters)
    */
   public String guessLetter(char ch) {
+    guessLetterQuietly(ch);
+    return getGuessedSoFar();
+  }
+
+  /**
+   * Guess the specified letter and update the game state
+   * accordingly, without building the String representation
+   * @return whether the letter is in the secret word
+   */
+  public boolean guessLetterQuietly(char ch) {
     assertCanKeepGuessing();
     ch = Character.toUpperCase(ch);
 
@@ -71,19 +109,33 @@ public class HangmanGame {
     boolean goodGuess = false;
     for (int i = 0; i < secretWord.length(); i++) {
       if (secretWord.charAt(i) == ch) {
-        guessedSoFar[i] = ch;
+        if (guessedSoFar[i] != ch) {
+          guessedSoFar[i] = ch;
+          numUnrevealed--;
+        }
         goodGuess = true;
       }
     }
 
     // update the proper set of guessed letters
-    if (goodGuess) {
-      correctlyGuessedLetters.add(ch);
+    if ('A' <= ch && ch <= 'Z') {
+      if (goodGuess) {
+        correctLetterMask |= 1 << (ch - 'A');
+      } else {
+        incorrectLetterMask |= 1 << (ch - 'A');
+      }
+    } else if (goodGuess) {
+      if (correctOtherLetters == null) {
+        correctOtherLetters = new HashSet<Character>();
+      }
+      correctOtherLetters.add(ch);
     } else {
-      incorrectlyGuessedLetters.add(ch);
+      if (incorrectOtherLetters == null) {
+        incorrectOtherLetters = new HashSet<Character>();
+      }
+      incorrectOtherLetters.add(ch);
     }
-
-    return getGuessedSoFar();
+    return goodGuess;
   }
 
   /**
@@ -92,6 +144,16 @@ public class HangmanGame {
    * (which will contain MYSTERY_LETTER in place of unknown letters)
    */
   public String guessWord(String guess) {
+    guessWordQuietly(guess);
+    return getGuessedSoFar();
+  }
+
+  /**
+   * Guess the specified word and update the game state accordingly,
+   * without building the String representation
+   * @return whether the guess is the secret word
+   */
+  public boolean guessWordQuietly(String guess) {
     assertCanKeepGuessing();
     guess = guess.toUpperCase();
 
@@ -100,11 +162,14 @@ public class HangmanGame {
       for (int i = 0; i<secretWord.length(); i++) {
         guessedSoFar[i] = secretWord.charAt(i);
       }
-    } else {
-      incorrectlyGuessedWords.add(guess);
+      numUnrevealed = 0;
+      return true;
     }
-
-    return getGuessedSoFar();
+    if (incorrectlyGuessedWords == null) {
+      incorrectlyGuessedWords = new HashSet<String>();
+    }
+    incorrectlyGuessedWords.add(guess);
+    return false;
   }
 
   /**
@@ -114,7 +179,7 @@ public class HangmanGame {
     if (gameStatus() == Status.GAME_LOST) {
       return 25;
     } else {
-      return numWrongGuessesMade() + correctlyGuessedLetters.size();
+      return numWrongGuessesMade() + Integer.bitCount(correctLetterMask) + size(correctOtherLetters);
     }
   }
 
@@ -128,7 +193,7 @@ public class HangmanGame {
    * @return The current game status
    */
   public Status gameStatus() {
-    if (secretWord.equals(getGuessedSoFar())) {
+    if (numUnrevealed == 0) {
       return Status.GAME_WON;
     } else if (numWrongGuessesMade() > maxWrongGuesses) {
       return Status.GAME_LOST;
@@ -141,7 +206,11 @@ public class HangmanGame {
    * @return Number of wrong guesses made so far
    */
   public int numWrongGuessesMade() {
-    return incorrectlyGuessedLetters.size() + incorrectlyGuessedWords.size();
+    return Integer.bitCount(incorrectLetterMask) + size(incorrectOtherLetters) + size(incorrectlyGuessedWords);
+  }
+
+  private static int size(Set<?> lazySet) {
+    return (lazySet == null) ? 0 : lazySet.size();
   }
 
   /**
@@ -166,37 +235,102 @@ public class HangmanGame {
     return new String(guessedSoFar);
   }
 
+  /**
+   * @return Read-only view of the current game state (which will
+   * contain MYSTERY_LETTER in place of unknown letters). It follows
+   * the game as guesses are made.
+   */
+  public CharSequence getPattern() {
+    return pattern;
+  }
+
+  /**
+   * @return Number of letters of the secret word not revealed yet
+   */
+  public int numUnrevealed() {
+    return numUnrevealed;
+  }
+
+  /**
+   * @return Letter mask of all correctly guessed letters so far, see
+   * OTHER_LETTERS_BIT
+   */
+  public int getCorrectLetterMask() {
+    return (correctOtherLetters == null) ? correctLetterMask : correctLetterMask | OTHER_LETTERS_BIT;
+  }
+
+  /**
+   * @return Letter mask of all incorrectly guessed letters so far, see
+   * OTHER_LETTERS_BIT
+   */
+  public int getIncorrectLetterMask() {
+    return (incorrectOtherLetters == null) ? incorrectLetterMask : incorrectLetterMask | OTHER_LETTERS_BIT;
+  }
+
+  /**
+   * @return Number of incorrect word guesses so far
+   */
+  public int numIncorrectlyGuessedWords() {
+    return size(incorrectlyGuessedWords);
+  }
+
   /**
    * @return Set of all correctly guessed letters so far
    */
   public Set<Character> getCorrectlyGuessedLetters() {
-    return Collections.unmodifiableSet(correctlyGuessedLetters);
+    return Collections.unmodifiableSet(toLetterSet(correctLetterMask, correctOtherLetters, null));
   }
 
   /**
    * @return Set of all incorrectly guessed letters so far
    */
   public Set<Character> getIncorrectlyGuessedLetters() {
-    return Collections.unmodifiableSet(incorrectlyGuessedLetters);
+    return Collections.unmodifiableSet(toLetterSet(incorrectLetterMask, incorrectOtherLetters, null));
   }
 
   /**
    * @return Set of all guessed letters so far
    */
   public Set<Character> getAllGuessedLetters() {
-    Set<Character> guessed = new HashSet<Character>();
-    guessed.addAll(correctlyGuessedLetters);
-    guessed.addAll(incorrectlyGuessedLetters);
-    return guessed;
+    Set<Character> guessed = toLetterSet(correctLetterMask, correctOtherLetters, null);
+    return toLetterSet(incorrectLetterMask, incorrectOtherLetters, guessed);
+  }
+
+  /**
+   * Add the letters of a letter mask and an overflow set to a set
+   * @param letters set to add to, or null for a new one
+   */
+  private static Set<Character> toLetterSet(int letterMask, Set<Character> otherLetters, Set<Character> letters) {
+    if (letters == null) {
+      letters = new HashSet<Character>();
+    }
+    for (int mask = letterMask; mask != 0; mask &= mask - 1) {
+      letters.add((char) ('A' + Integer.numberOfTrailingZeros(mask)));
+    }
+    if (otherLetters != null) {
+      letters.addAll(otherLetters);
+    }
+    return letters;
   }
 
   /**
    * @return Set of all incorrectly guessed words so far
    */
   public Set<String> getIncorrectlyGuessedWords() {
+    if (incorrectlyGuessedWords == null) {
+      return Collections.emptySet();
+    }
     return Collections.unmodifiableSet(incorrectlyGuessedWords);
   }
 
+  /**
+   * @return The secret word, for GameJournal. Not public, since
+   * strategies must not peek.
+   */
+  String getSecretWord() {
+    return secretWord;
+  }
+
   /**
    * @return The length of the secret word
    */
@@ -208,4 +342,29 @@ public class HangmanGame {
   public String toString() {
     return getGuessedSoFar() + "; score=" + currentScore() + "; status=" + gameStatus();
   }
+
+  /**
+   * CharSequence reading guessedSoFar in place
+   */
+  private class Pattern implements CharSequence {
+    @Override
+    public int length() {
+      return guessedSoFar.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return guessedSoFar[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return new String(guessedSoFar, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+      return new String(guessedSoFar);
+    }
+  }
 }
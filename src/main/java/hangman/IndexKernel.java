@@ -0,0 +1,106 @@
+package hangman;
+
+/**
+ * The filter and count loop of PositionIndex, over its bitsets.
+ *
+ * This class is the scalar kernel, handling one block of 64 words at
+ * a time with long ANDs and popcounts. VectorIndexKernel, compiled
+ * from src/vector/java when the JDK has the incubating
+ * jdk.incubator.vector module, counts the letters of a block with
+ * SIMD instructions instead. Both give identical results.
+ *
+ * INSTANCE is the vector kernel if it's compiled, the JVM was started
+ * with --add-modules jdk.incubator.vector, and the hangman.vector
+ * system property isn't false. Otherwise it's this scalar kernel.
+ */
+class IndexKernel {
+  /**
+   * Longs per block in the contains bitsets, one per letter, padded
+   * so that a block's letters fill whole vectors.
+   */
+  static final int LETTER_STRIDE = 32;
+
+  static final IndexKernel INSTANCE = select();
+
+  private static IndexKernel select() {
+    if( Boolean.parseBoolean(System.getProperty("hangman.vector", "true")) ) {
+      try {
+        return (IndexKernel)Class.forName("hangman.VectorIndexKernel").getDeclaredConstructor().newInstance();
+      } catch( ReflectiveOperationException exc ) {
+        // Not compiled
+      } catch( LinkageError exc ) {
+        // Compiled, but jdk.incubator.vector isn't in the JVM
+      }
+    }
+    return new IndexKernel();
+  }
+
+  /** @return name of the kernel, for benchmark reports */
+  String getName() {
+    return "scalar";
+  }
+
+  /**
+   * Filter candidates and count letters, as PositionIndex.filterAndCount.
+   *
+   * @param containsBits bitsets of the words containing each letter,
+   * indexed by block*LETTER_STRIDE+letter
+   * @param numBlocks longs in a bitset over the bucket's words
+   * @param lastBlockBits bits of the last block for every word
+   * @param src candidate bitset, or null if every word is a candidate
+   * @param dst receives the surviving candidates. May be src.
+   * @param revealedBits bitsets of the words having each revealed
+   * char at its position
+   * @param numRevealed number of elements used in revealedBits
+   * @param incorrectMask letter mask of incorrectly guessed letters
+   * @param countMask letter mask of the letters to count
+   * @param letterWordCounts for each letter in countMask, the number
+   * of surviving words containing it is added here
+   * @return number of surviving words
+   */
+  int filterAndCount(long[] containsBits, int numBlocks, long lastBlockBits,
+                     long[] src, long[] dst, long[][] revealedBits, int numRevealed,
+                     int incorrectMask, int countMask, int[] letterWordCounts)
+  {
+    int numSurvivors = 0;
+    for( int blockI = 0; blockI<numBlocks; ++blockI ) {
+      final int letterBase = blockI*LETTER_STRIDE;
+      final long bits = filterBlock(containsBits, numBlocks, lastBlockBits, src, dst, revealedBits, numRevealed,
+                                    incorrectMask, blockI);
+      if( bits==0 ) continue;
+
+      numSurvivors += Long.bitCount(bits);
+      for( int mask = countMask; mask!=0; mask &= mask-1 ) {
+        final int letterI = Integer.numberOfTrailingZeros(mask);
+        letterWordCounts[letterI] += Long.bitCount(bits & containsBits[letterBase+letterI]);
+      }
+    }
+    return numSurvivors;
+  }
+
+  /**
+   * Filter one block of candidates into dst.
+   *
+   * @return the block's surviving candidates
+   */
+  static long filterBlock(long[] containsBits, int numBlocks, long lastBlockBits,
+                          long[] src, long[] dst, long[][] revealedBits, int numRevealed,
+                          int incorrectMask, int blockI)
+  {
+    long bits;
+    if( src!=null ) {
+      bits = src[blockI];
+    } else {
+      bits = (blockI==numBlocks-1) ? lastBlockBits : -1L;
+    }
+    for( int revealedI = 0; revealedI<numRevealed && bits!=0; ++revealedI ) {
+      bits &= revealedBits[revealedI][blockI];
+    }
+    final int letterBase = blockI*LETTER_STRIDE;
+    for( int mask = incorrectMask; mask!=0 && bits!=0; mask &= mask-1 ) {
+      bits &= ~containsBits[letterBase+Integer.numberOfTrailingZeros(mask)];
+    }
+    dst[blockI] = bits;
+    return bits;
+  }
+}
@@ -0,0 +1,220 @@
+package hangman;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Replays the games of a GameJournal with a strategy, comparing the
+ * scores and guess latencies with those recorded.
+ *
+ * Each journaled game is played again from its secret word and
+ * maxWrongGuesses, with a new strategy from a StrategySource. The
+ * recorded score is that of the recorded guesses. A game diverges
+ * where its replayed guesses first differ from the recorded ones, in
+ * which case its score may differ too.
+ *
+ * Recorded traffic so becomes a regression benchmark: replaying a
+ * journal with a changed strategy tells which games it scores
+ * differently, and how its latencies compare with those recorded.
+ * Latencies recorded on other machines, or in a cold JVM, only
+ * compare roughly.
+ */
+public class JournalReplay {
+  private final StrategySource strategySource_;
+
+  /**
+   * Creates the strategy to replay a game with.
+   */
+  public interface StrategySource {
+    /** @return a strategy for the game, which is yet to be guessed in */
+    GuessingStrategy newStrategy(HangmanGame game);
+  }
+
+  /**
+   * Comparison of the replayed games with the recorded ones.
+   */
+  public static class Report {
+    private final int numGames_;
+    private final long recordedScoreSum_;
+    private final long replayedScoreSum_;
+    private final int numImproved_;
+    private final int numWorsened_;
+    private final int numDiverged_;
+    private final long[] sortedRecordedNanos_;
+    private final long[] sortedReplayedNanos_;
+    private final String firstWorsenedWord_;
+
+    Report(int numGames, long recordedScoreSum, long replayedScoreSum,
+           int numImproved, int numWorsened, int numDiverged,
+           long[] recordedNanos, long[] replayedNanos, String firstWorsenedWord)
+    {
+      numGames_ = numGames;
+      recordedScoreSum_ = recordedScoreSum;
+      replayedScoreSum_ = replayedScoreSum;
+      numImproved_ = numImproved;
+      numWorsened_ = numWorsened;
+      numDiverged_ = numDiverged;
+      sortedRecordedNanos_ = recordedNanos;
+      Arrays.sort(sortedRecordedNanos_);
+      sortedReplayedNanos_ = replayedNanos;
+      Arrays.sort(sortedReplayedNanos_);
+      firstWorsenedWord_ = firstWorsenedWord;
+    }
+
+    public int getNumGames() { return numGames_; }
+    public double getRecordedAverageScore() { return (double)recordedScoreSum_/(double)numGames_; }
+    public double getReplayedAverageScore() { return (double)replayedScoreSum_/(double)numGames_; }
+    /** @return games scoring lower, ie better, than recorded */
+    public int getNumImproved() { return numImproved_; }
+    /** @return games scoring higher, ie worse, than recorded */
+    public int getNumWorsened() { return numWorsened_; }
+    /** @return games whose guesses differ from those recorded */
+    public int getNumDiverged() { return numDiverged_; }
+    /** @return secret word of the first game scoring worse, or null if none did */
+    public String getFirstWorsenedWord() { return firstWorsenedWord_; }
+
+    /**
+     * @param percentile in [0, 100]
+     * @return recorded guess latency at the percentile, in nanoseconds
+     */
+    public long getRecordedGuessNanos(double percentile) {
+      return atPercentile(sortedRecordedNanos_, percentile);
+    }
+
+    /**
+     * @param percentile in [0, 100]
+     * @return replayed guess latency at the percentile, in nanoseconds
+     */
+    public long getReplayedGuessNanos(double percentile) {
+      return atPercentile(sortedReplayedNanos_, percentile);
+    }
+
+    private static long atPercentile(long[] sorted, double percentile) {
+      if( sorted.length==0 ) return 0;
+      final int index = (int)Math.ceil(percentile/100.0*sorted.length)-1;
+      return sorted[Math.max(0, Math.min(index, sorted.length-1))];
+    }
+
+    @Override
+    public String toString() {
+      return numGames_+" games, average score recorded "+String.format("%.4f", getRecordedAverageScore())
+        +", replayed "+String.format("%.4f", getReplayedAverageScore())
+        +"; "+numImproved_+" improved, "+numWorsened_+" worsened, "+numDiverged_+" diverged"
+        +((firstWorsenedWord_==null) ? "" : ", first worsened: "+firstWorsenedWord_)
+        +"\nGuess latency recorded p50 "+getRecordedGuessNanos(50)/1000+" us, p99 "+getRecordedGuessNanos(99)/1000+" us"
+        +" over "+sortedRecordedNanos_.length+" guesses"
+        +"\nGuess latency replayed p50 "+getReplayedGuessNanos(50)/1000+" us, p99 "+getReplayedGuessNanos(99)/1000+" us"
+        +" over "+sortedReplayedNanos_.length+" guesses";
+    }
+  }
+
+  public JournalReplay(StrategySource strategySource) {
+    strategySource_ = strategySource;
+  }
+
+  /**
+   * Replay every game of a journal.
+   *
+   * @throws IOException if the journal can't be read
+   * @throws NullGuessException if the strategy made a null guess in
+   * any game
+   */
+  public Report replay(GameJournal.Reader reader) throws IOException, NullGuessException {
+    int numGames = 0;
+    long recordedScoreSum = 0;
+    long replayedScoreSum = 0;
+    int numImproved = 0;
+    int numWorsened = 0;
+    int numDiverged = 0;
+    String firstWorsenedWord = null;
+    long[] recordedNanos = new long[1024];
+    long[] replayedNanos = new long[1024];
+    int numRecordedGuesses = 0;
+    int numReplayedGuesses = 0;
+    for( GameJournal.Entry entry = reader.next(); entry!=null; entry = reader.next() ) {
+      ++numGames;
+      final int recordedScore = entry.replay().currentScore();
+      recordedScoreSum += recordedScore;
+      for( int guessI = 0; guessI<entry.getNumGuesses(); ++guessI ) {
+        if( numRecordedGuesses==recordedNanos.length ) recordedNanos = Arrays.copyOf(recordedNanos, 2*numRecordedGuesses);
+        recordedNanos[numRecordedGuesses++] = entry.getGuessNanos(guessI);
+      }
+
+      /// Play the game again, timing each guess
+      final HangmanGame game = new HangmanGame(entry.getSecretWord(), entry.getMaxWrongGuesses());
+      final GuessingStrategy strategy = strategySource_.newStrategy(game);
+      boolean diverged = false;
+      for( int guessI = 0; game.gameStatus()==HangmanGame.Status.KEEP_GUESSING; ++guessI ) {
+        final long startNanos = System.nanoTime();
+        final Guess guess = strategy.nextGuess(game);
+        final long nanos = System.nanoTime()-startNanos;
+        if( guess==null ) throw new NullGuessException("Strategy made a null guess for word "+entry.getSecretWord());
+        guess.makeGuess(game);
+        if( numReplayedGuesses==replayedNanos.length ) replayedNanos = Arrays.copyOf(replayedNanos, 2*numReplayedGuesses);
+        replayedNanos[numReplayedGuesses++] = nanos;
+        diverged = diverged || guessI>=entry.getNumGuesses()
+          || !game.getPattern().toString().equals(entry.getPattern(guessI))
+          || !guess.toString().equals(entry.getGuess(guessI).toString());
+      }
+      if( game.gameStatus()==HangmanGame.Status.KEEP_GUESSING || game.currentScore()!=recordedScore ) {
+        diverged = true;
+      }
+      if( diverged ) ++numDiverged;
+      replayedScoreSum += game.currentScore();
+      if( game.currentScore()<recordedScore ) ++numImproved;
+      if( recordedScore<game.currentScore() ) {
+        ++numWorsened;
+        if( firstWorsenedWord==null ) firstWorsenedWord = entry.getSecretWord();
+      }
+    }
+    return new Report(numGames, recordedScoreSum, replayedScoreSum, numImproved, numWorsened, numDiverged,
+                      Arrays.copyOf(recordedNanos, numRecordedGuesses), Arrays.copyOf(replayedNanos, numReplayedGuesses),
+                      firstWorsenedWord);
+  }
+
+  /**
+   * Replay a journal with the bundled dictionary, printing the report.
+   *
+   * @param args the journal file, and optionally the strategy:
+   * "impl" for StrategyImpl (default), "partition" for
+   * PartitionStrategy or "search" for SearchStrategy
+   */
+  public static void main(String[] args) throws Exception {
+    if( args.length<1 ) throw new IllegalArgumentException("Usage: JournalReplay journal_file [impl|partition|search]");
+    final String strategyName = (args.length>1) ? args[1] : "impl";
+    final Dictionary dictionary = Dictionary.loadDefault();
+    final StrategySource strategySource;
+    if( strategyName.equals("impl") ) {
+      final StrategyFactory factory = new StrategyFactory(dictionary);
+      strategySource = new StrategySource() {
+          public GuessingStrategy newStrategy(HangmanGame game) {
+            return factory.newStrategy(game);
+          }
+        };
+    } else if( strategyName.equals("partition") ) {
+      strategySource = new StrategySource() {
+          public GuessingStrategy newStrategy(HangmanGame game) {
+            return new PartitionStrategy(dictionary, game.getSecretWordLength());
+          }
+        };
+    } else if( strategyName.equals("search") ) {
+      final SearchStrategy.TranspositionTable table = new SearchStrategy.TranspositionTable(SearchStrategy.DEFAULT_TABLE_SIZE);
+      strategySource = new StrategySource() {
+          public GuessingStrategy newStrategy(HangmanGame game) {
+            return new SearchStrategy(dictionary, game.getSecretWordLength(), table);
+          }
+        };
+    } else {
+      throw new IllegalArgumentException("Unknown strategy: "+strategyName);
+    }
+
+    final GameJournal.Reader reader = new GameJournal.Reader(new File(args[0]));
+    try {
+      System.out.println("Replaying "+args[0]+" with "+strategyName);
+      System.out.println(new JournalReplay(strategySource).replay(reader));
+    } finally {
+      reader.close();
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package hangman;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives many concurrent sessions against a GameServer over loopback,
+ * and measures guess latency and session throughput.
+ *
+ * Each client repeatedly opens a session, starts a game with a word
+ * the server chooses, has the server's strategy guess until the game
+ * is over, and closes the session. All clients start together. The
+ * latency of each GUESS round trip is recorded.
+ */
+public class LoadGenerator {
+  private final String host_;
+  private final int port_;
+  private final int numClients_;
+  private final int sessionsPerClient_;
+
+  /**
+   * Result of a load run.
+   */
+  public static class Result {
+    private final long[] sortedLatencies_;
+    private final int numSessions_;
+    private final int numErrors_;
+    private final long scoreSum_;
+    private final long elapsedNanos_;
+
+    Result(long[] latencies, int numSessions, int numErrors, long scoreSum, long elapsedNanos) {
+      sortedLatencies_ = latencies;
+      Arrays.sort(sortedLatencies_);
+      numSessions_ = numSessions;
+      numErrors_ = numErrors;
+      scoreSum_ = scoreSum;
+      elapsedNanos_ = elapsedNanos;
+    }
+
+    /** @return sessions whose game was played to its end */
+    public int getNumSessions() { return numSessions_; }
+    /** @return sessions failed by a connection or protocol error */
+    public int getNumErrors() { return numErrors_; }
+    public int getNumGuesses() { return sortedLatencies_.length; }
+    public long getElapsedNanos() { return elapsedNanos_; }
+    public double getSessionsPerSecond() { return numSessions_/(elapsedNanos_/1e9); }
+    public double getAverageScore() { return (double)scoreSum_/(double)numSessions_; }
+
+    /**
+     * @param percentile in [0, 100]
+     * @return guess round trip latency at the percentile, in
+     * nanoseconds, or 0 if there were no guesses
+     */
+    public long getGuessLatencyNanos(double percentile) {
+      if( sortedLatencies_.length==0 ) return 0;
+      final int index = (int)Math.ceil(percentile/100.0*sortedLatencies_.length)-1;
+      return sortedLatencies_[Math.max(0, Math.min(index, sortedLatencies_.length-1))];
+    }
+
+    @Override
+    public String toString() {
+      return numSessions_+" sessions, "+getNumGuesses()+" guesses, "+numErrors_+" errors"
+        +" in "+elapsedNanos_/1000000+" ms: "+String.format("%.1f", getSessionsPerSecond())+" sessions/s"
+        +", guess latency p50 "+getGuessLatencyNanos(50)/1000+" us"
+        +", p99 "+getGuessLatencyNanos(99)/1000+" us"
+        +", average score "+String.format("%.3f", getAverageScore());
+    }
+  }
+
+  /**
+   * @param host server host
+   * @param port server port
+   * @param numClients concurrent sessions
+   * @param sessionsPerClient sessions each client plays, one after
+   * another
+   */
+  public LoadGenerator(String host, int port, int numClients, int sessionsPerClient) {
+    host_ = host;
+    port_ = port;
+    numClients_ = numClients;
+    sessionsPerClient_ = sessionsPerClient;
+  }
+
+  /** Run the load and wait for all clients to finish. */
+  public Result run() throws InterruptedException {
+    final long[][] latencies = new long[numClients_][];
+    final int[] numGuesses = new int[numClients_];
+    final AtomicInteger numSessions = new AtomicInteger();
+    final AtomicInteger numErrors = new AtomicInteger();
+    final long[] scoreSums = new long[numClients_];
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(numClients_);
+    final ExecutorService executor = GameServer.newSessionExecutor("hangman-load");
+    try {
+      for( int clientI = 0; clientI<numClients_; ++clientI ) {
+        final int client = clientI;
+        latencies[client] = new long[sessionsPerClient_*8];
+        executor.execute(new Runnable() {
+            public void run() {
+              try {
+                start.await();
+                for( int sessionI = 0; sessionI<sessionsPerClient_; ++sessionI ) {
+                  try {
+                    scoreSums[client] += playSession(latencies, numGuesses, client);
+                    numSessions.incrementAndGet();
+                  } catch( IOException exc ) {
+                    numErrors.incrementAndGet();
+                  }
+                }
+              } catch( InterruptedException exc ) {
+                Thread.currentThread().interrupt();
+              } finally {
+                done.countDown();
+              }
+            }
+          });
+      }
+      final long startNanos = System.nanoTime();
+      start.countDown();
+      done.await();
+      final long elapsedNanos = System.nanoTime()-startNanos;
+
+      int totalGuesses = 0;
+      for( int numGuessesI : numGuesses ) totalGuesses += numGuessesI;
+      final long[] allLatencies = new long[totalGuesses];
+      int latencyI = 0;
+      long scoreSum = 0;
+      for( int clientI = 0; clientI<numClients_; ++clientI ) {
+        System.arraycopy(latencies[clientI], 0, allLatencies, latencyI, numGuesses[clientI]);
+        latencyI += numGuesses[clientI];
+        scoreSum += scoreSums[clientI];
+      }
+      return new Result(allLatencies, numSessions.get(), numErrors.get(), scoreSum, elapsedNanos);
+    } finally {
+      executor.shutdownNow();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Play one session's game, recording the latency of each guess in
+   * latencies[client], growing it as needed.
+   *
+   * @return the game's score
+   */
+  private int playSession(long[][] latencies, int[] numGuesses, int client) throws IOException {
+    final GameClient gameClient = new GameClient(host_, port_);
+    try {
+      GameClient.State state = gameClient.newGame(null);
+      while( state.getStatus()==HangmanGame.Status.KEEP_GUESSING ) {
+        final long startNanos = System.nanoTime();
+        state = gameClient.guess();
+        final long latency = System.nanoTime()-startNanos;
+        if( numGuesses[client]==latencies[client].length ) {
+          latencies[client] = Arrays.copyOf(latencies[client], 2*latencies[client].length+1);
+        }
+        latencies[client][numGuesses[client]++] = latency;
+      }
+      return state.getScore();
+    } finally {
+      gameClient.close();
+    }
+  }
+
+  /**
+   * Run a load against a GameServer on loopback and print the result.
+   *
+   * @param args optionally the number of concurrent clients (default:
+   * 1000), sessions per client (default: 10) and the server's port. If
+   * no port is given, a server with the bundled dictionary is started
+   * in this JVM.
+   */
+  public static void main(String[] args) throws Exception {
+    final int numClients = args.length>0 ? Integer.parseInt(args[0]) : 1000;
+    final int sessionsPerClient = args.length>1 ? Integer.parseInt(args[1]) : 10;
+    GameServer server = null;
+    int port;
+    if( args.length>2 ) {
+      port = Integer.parseInt(args[2]);
+    } else {
+      server = new GameServer(new StrategyFactory(Dictionary.loadDefault()), Play.DEFAULT_NUM_GUESSES, 0);
+      port = server.getPort();
+    }
+    try {
+      final LoadGenerator generator
+        = new LoadGenerator(InetAddress.getLoopbackAddress().getHostAddress(), port, numClients, sessionsPerClient);
+      System.out.println(generator.run());
+    } finally {
+      if( server!=null ) server.close();
+    }
+  }
+}
@@ -0,0 +1,215 @@
+package hangman;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts a Dictionary to the packed binary dictionary format, which
+ * Dictionary.map loads without parsing.
+ *
+ * Loading words.txt decodes, splits and upper cases 1.7 MB of text
+ * into Strings. A packed dictionary is instead memory-mapped, and its
+ * WordBuckets read words straight from the mapping, so loading costs
+ * little more than reading the header, and the words take no heap.
+ *
+ * Words are bucketed by length, as in Dictionary. Each letter takes 5
+ * bits, 12 letters to a long, so only words of [A-Z] can be packed.
+ * The file layout, big endian:
+ *
+ *   header:
+ *     int MAGIC
+ *     int VERSION
+ *     int numLengths, one more than the longest word length
+ *     int numWords in the dictionary
+ *     numLengths times, for each word length:
+ *       int numWords of that length
+ *       int file offset of the bucket, a multiple of 8
+ *   buckets, each, for numWords words of length wordLen:
+ *     long[numWords*longsPerWord(wordLen)] letters, the word with id
+ *         wordId taking the longs from wordId*longsPerWord(wordLen),
+ *         and its letter at position pos being bits
+ *         5*(pos%12) to 5*(pos%12)+4 of its long pos/12, 0 for 'A'
+ *     int[numWords] letter masks, as in WordBucket
+ *     padding to a multiple of 8 bytes
+ */
+public final class PackedDictionary {
+  static final int MAGIC = 0x48475044; // "HGPD"
+  static final int VERSION = 1;
+  static final int BITS_PER_LETTER = 5;
+  static final int LETTERS_PER_LONG = 64/BITS_PER_LETTER;
+  static final int LETTER_CODE_MASK = (1<<BITS_PER_LETTER)-1;
+  private static final int HEADER_BUCKETS_OFFSET = 16;
+
+  private PackedDictionary() {}
+
+  /** @return longs holding the letters of each word of wordLen */
+  static int longsPerWord(int wordLen) {
+    return (wordLen+LETTERS_PER_LONG-1)/LETTERS_PER_LONG;
+  }
+
+  /** @return bytes taken by a bucket, including padding */
+  static long bucketSize(int wordLen, long numWords) {
+    return align8(8L*longsPerWord(wordLen)*numWords+4L*numWords);
+  }
+
+  /** @return offset of the first bucket, for numLengths word lengths */
+  static long headerSize(int numLengths) {
+    return align8(HEADER_BUCKETS_OFFSET+8L*numLengths);
+  }
+
+  private static long align8(long size) {
+    return (size+7) & ~7L;
+  }
+
+  /**
+   * Pack a word's letters.
+   *
+   * @param word upper case word of [A-Z]
+   * @param letters receives longsPerWord(word.length()) longs from
+   * offset
+   * @throws IllegalArgumentException if the word has a char outside
+   * [A-Z]
+   */
+  static void packWord(CharSequence word, long[] letters, int offset) {
+    final int numLongs = longsPerWord(word.length());
+    for( int longI = 0; longI<numLongs; ++longI ) letters[offset+longI] = 0;
+    for( int posI = 0; posI<word.length(); ++posI ) {
+      final char ch = word.charAt(posI);
+      if( ch<'A' || 'Z'<ch ) {
+        throw new IllegalArgumentException("Expected word of [A-Z] but got "+word);
+      }
+      letters[offset+posI/LETTERS_PER_LONG] |= (long)(ch-'A') << (BITS_PER_LETTER*(posI%LETTERS_PER_LONG));
+    }
+  }
+
+  /**
+   * Write a dictionary in the packed format.
+   *
+   * @throws IllegalArgumentException if a word has a char outside
+   * [A-Z]
+   */
+  public static void write(Dictionary dictionary, OutputStream out) throws IOException {
+    final int[] bucketSizes = new int[dictionary.getMaxWordLength()+1];
+    for( int lenI = 0; lenI<bucketSizes.length; ++lenI ) bucketSizes[lenI] = dictionary.getBucket(lenI).size();
+    final DataOutputStream dataOut = new DataOutputStream(out);
+    writeHeader(dataOut, bucketSizes);
+
+    final int numLengths = bucketSizes.length;
+    for( int lenI = 0; lenI<numLengths; ++lenI ) {
+      final WordBucket bucket = dictionary.getBucket(lenI);
+      final long[] letters = new long[longsPerWord(lenI)];
+      for( int wordI = 0; wordI<bucket.size(); ++wordI ) {
+        packWord(bucket.getWord(wordI), letters, 0);
+        for( long lettersI : letters ) dataOut.writeLong(lettersI);
+      }
+      for( int wordI = 0; wordI<bucket.size(); ++wordI ) dataOut.writeInt(bucket.getLetterMask(wordI));
+      writePadding(dataOut);
+    }
+    dataOut.flush();
+  }
+
+  /**
+   * Write the header of a packed dictionary, padding included, for
+   * buckets laid out one after another in order of word length.
+   *
+   * @param bucketSizes number of words of each length
+   * @throws IOException if the buckets would be too large to pack
+   */
+  static void writeHeader(DataOutput dataOut, int[] bucketSizes) throws IOException {
+    final int numLengths = bucketSizes.length;
+    long numWords = 0;
+    for( int numWordsI : bucketSizes ) numWords += numWordsI;
+    final long headerSize = headerSize(numLengths);
+    dataOut.writeInt(MAGIC);
+    dataOut.writeInt(VERSION);
+    dataOut.writeInt(numLengths);
+    dataOut.writeInt((int)numWords);
+    long offset = headerSize;
+    for( int lenI = 0; lenI<numLengths; ++lenI ) {
+      if( Integer.MAX_VALUE<offset ) throw new IOException("Dictionary too large to pack");
+      dataOut.writeInt(bucketSizes[lenI]);
+      dataOut.writeInt((int)offset);
+      offset += bucketSize(lenI, bucketSizes[lenI]);
+    }
+    if( Integer.MAX_VALUE<offset ) throw new IOException("Dictionary too large to pack");
+    for( long byteI = HEADER_BUCKETS_OFFSET+8L*numLengths; byteI<headerSize; ++byteI ) dataOut.writeByte(0);
+  }
+
+  /** Pad what was written to a multiple of 8 bytes. */
+  static void writePadding(DataOutputStream dataOut) throws IOException {
+    while( (dataOut.size() & 7)!=0 ) dataOut.writeByte(0);
+  }
+
+  /**
+   * Read the buckets of a packed dictionary.
+   *
+   * @param buffer whole packed dictionary
+   * @return buckets indexed by word length, reading from buffer
+   * @throws IOException if buffer isn't a packed dictionary
+   */
+  static WordBucket[] readBuckets(ByteBuffer buffer) throws IOException {
+    if( buffer.capacity()<HEADER_BUCKETS_OFFSET || buffer.getInt(0)!=MAGIC ) {
+      throw new IOException("Not a packed dictionary file");
+    }
+    if( buffer.getInt(4)!=VERSION ) {
+      throw new IOException("Unsupported packed dictionary version "+buffer.getInt(4));
+    }
+    final int numLengths = buffer.getInt(8);
+    if( numLengths<0 || buffer.capacity()<headerSize(numLengths) ) {
+      throw new IOException("Truncated packed dictionary file");
+    }
+    final WordBucket[] buckets = new WordBucket[numLengths];
+    for( int lenI = 0; lenI<numLengths; ++lenI ) {
+      final int numWords = buffer.getInt(HEADER_BUCKETS_OFFSET+8*lenI);
+      final int offset = buffer.getInt(HEADER_BUCKETS_OFFSET+8*lenI+4);
+      if( numWords<0 || offset<0 || buffer.capacity()<offset+bucketSize(lenI, numWords) ) {
+        throw new IOException("Truncated packed dictionary file");
+      }
+      buckets[lenI] = new PackedWordBucket(buffer, lenI, numWords, offset);
+    }
+    return buckets;
+  }
+
+  /**
+   * Convert a text dictionary to a packed dictionary file.
+   *
+   * @param args output file, then optionally a text dictionary file
+   * (default: the bundled words.txt)
+   */
+  public static void main(String[] args) throws Exception {
+    if( args.length<1 ) {
+      System.err.println("Usage: PackedDictionary output_file [dictionary_file]");
+      System.exit(2);
+    }
+    final File outputFile = new File(args[0]);
+    Dictionary dictionary;
+    if( args.length>1 ) {
+      final InputStream dictionaryIn = new FileInputStream(args[1]);
+      try {
+        dictionary = Dictionary.load(dictionaryIn);
+      } finally {
+        dictionaryIn.close();
+      }
+    } else {
+      dictionary = Dictionary.loadDefault();
+    }
+
+    final long startNanos = System.nanoTime();
+    final OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile));
+    try {
+      write(dictionary, out);
+    } finally {
+      out.close();
+    }
+    System.out.println("Wrote "+dictionary.size()+" words, "+outputFile.length()+" bytes, to "+outputFile
+                       +" in "+(System.nanoTime()-startNanos)/1000000+" ms");
+  }
+}
@@ -0,0 +1,85 @@
+package hangman;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * WordBucket reading its words in place from a PackedDictionary
+ * buffer, typically memory-mapped.
+ *
+ * Nothing is copied into the heap per word: chars and letter masks
+ * are read from the buffer on each access, and Strings are only made
+ * by getWord, for word guesses.
+ */
+final class PackedWordBucket extends WordBucket {
+  private final ByteBuffer buffer_;
+  private final int wordLen_;
+  private final int numWords_;
+  private final int longsPerWord_;
+  private final int lettersOffset_;
+  private final int masksOffset_;
+  private final List<String> wordList_ = new AbstractList<String>() {
+    public String get(int index) {
+      if( index<0 || numWords_<=index ) throw new IndexOutOfBoundsException("Index "+index+" of "+numWords_);
+      return getWord(index);
+    }
+    public int size() { return numWords_; }
+  };
+
+  /**
+   * @param buffer whole PackedDictionary file. Only absolute gets are
+   * used, so it may be shared.
+   * @param wordLen length of the bucket's words
+   * @param numWords number of words in the bucket
+   * @param offset buffer offset of the bucket's section
+   */
+  PackedWordBucket(ByteBuffer buffer, int wordLen, int numWords, int offset) {
+    buffer_ = buffer;
+    wordLen_ = wordLen;
+    numWords_ = numWords;
+    longsPerWord_ = PackedDictionary.longsPerWord(wordLen);
+    lettersOffset_ = offset;
+    masksOffset_ = offset+8*longsPerWord_*numWords;
+  }
+
+  int getWordLength() { return wordLen_; }
+  int size() { return numWords_; }
+  int getLetterMask(int wordId) { return buffer_.getInt(masksOffset_+4*wordId); }
+  char getChar(int wordId, int pos) { return (char)('A'+letterCode(wordId, pos)); }
+  List<String> getWords() { return wordList_; }
+
+  String getWord(int wordId) {
+    final char[] word = new char[wordLen_];
+    for( int posI = 0; posI<wordLen_; ++posI ) word[posI] = getChar(wordId, posI);
+    return new String(word);
+  }
+
+  @Override
+  boolean matches(int wordId, int[] revealedPositions, char[] revealedChars, int numRevealed) {
+    for( int revealedI = 0; revealedI<numRevealed; ++revealedI ) {
+      if( letterCode(wordId, revealedPositions[revealedI])!=revealedChars[revealedI]-'A' ) return false;
+    }
+    return true;
+  }
+
+  @Override
+  void addLetterPositions(int wordId, int[] letterPositions) {
+    for( int longI = 0; longI<longsPerWord_; ++longI ) {
+      long letters = buffer_.getLong(lettersOffset_+8*(wordId*longsPerWord_+longI));
+      final int posEnd = Math.min(wordLen_, (longI+1)*PackedDictionary.LETTERS_PER_LONG);
+      for( int posI = longI*PackedDictionary.LETTERS_PER_LONG; posI<posEnd; ++posI ) {
+        letterPositions[(int)letters & PackedDictionary.LETTER_CODE_MASK] |= 1<<posI;
+        letters >>>= PackedDictionary.BITS_PER_LETTER;
+      }
+    }
+  }
+
+  /** @return the letter at pos of the word, 0 for 'A' */
+  private int letterCode(int wordId, int pos) {
+    final int longI = pos/PackedDictionary.LETTERS_PER_LONG;
+    final int shift = PackedDictionary.BITS_PER_LETTER*(pos-longI*PackedDictionary.LETTERS_PER_LONG);
+    final long letters = buffer_.getLong(lettersOffset_+8*(wordId*longsPerWord_+longI));
+    return (int)(letters>>>shift) & PackedDictionary.LETTER_CODE_MASK;
+  }
+}
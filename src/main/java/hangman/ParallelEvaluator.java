@@ -0,0 +1,143 @@
+package hangman;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Plays a HangmanGame for each of a list of words on a ForkJoinPool,
+ * and collects the scores.
+ *
+ * The word list is split recursively into ranges, which idle workers
+ * steal, so that the long running words don't leave cores idle. Each
+ * game's score is stored at its word's index, and the total is
+ * summed afterwards in word order. Since scores are integers, the
+ * total and average score are identical whatever the parallelism.
+ */
+public class ParallelEvaluator {
+  // Ranges of this many words or fewer are played without splitting
+  // further.
+  private static final int WORDS_PER_TASK = 16;
+
+  private final StrategyFactory strategyFactory_;
+  private final int maxWrongGuesses_;
+  private final int parallelism_;
+
+  /**
+   * Result of evaluating a list of words.
+   */
+  public static class Result {
+    private final int[] scores_;
+    private final long scoreSum_;
+    private final long elapsedNanos_;
+
+    Result(int[] scores, long elapsedNanos) {
+      long scoreSum = 0;
+      for( int scoreI : scores ) scoreSum += scoreI;
+      scores_ = scores;
+      scoreSum_ = scoreSum;
+      elapsedNanos_ = elapsedNanos;
+    }
+
+    /** @return score of the i-th word in the evaluated list */
+    public int getScore(int i) { return scores_[i]; }
+    public int getNumGames() { return scores_.length; }
+    public long getScoreSum() { return scoreSum_; }
+    public double getAverageScore() { return (double)scoreSum_/(double)scores_.length; }
+    public long getElapsedNanos() { return elapsedNanos_; }
+    public double getGamesPerSecond() { return scores_.length/(elapsedNanos_/1e9); }
+  }
+
+  /**
+   * @param strategyFactory creates the strategy for each game
+   * @param maxWrongGuesses wrong guesses allowed in each game
+   * @param parallelism number of worker threads
+   */
+  public ParallelEvaluator(StrategyFactory strategyFactory, int maxWrongGuesses, int parallelism) {
+    if( parallelism<1 ) throw new IllegalArgumentException("parallelism must be positive but got "+parallelism);
+    strategyFactory_ = strategyFactory;
+    maxWrongGuesses_ = maxWrongGuesses;
+    parallelism_ = parallelism;
+  }
+
+  /**
+   * Evaluate using as many worker threads as there are processors.
+   */
+  public ParallelEvaluator(StrategyFactory strategyFactory, int maxWrongGuesses) {
+    this(strategyFactory, maxWrongGuesses, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Play a game for each word.
+   *
+   * @param words secret words to play
+   * @return scores, in the order of words
+   * @throws NullGuessException if the strategy made a null guess in
+   * any game
+   */
+  public Result evaluate(List<String> words) throws NullGuessException {
+    final String[] wordArray = words.toArray(new String[words.size()]);
+    final int[] scores = new int[wordArray.length];
+    final ForkJoinPool pool = new ForkJoinPool(parallelism_);
+    final long startNanos = System.nanoTime();
+    try {
+      pool.invoke(newTask(wordArray, scores, null));
+    } catch( RuntimeException exc ) {
+      // ForkJoinPool may wrap the exception PlayRange threw once more
+      for( Throwable causeI = exc.getCause(); causeI!=null; causeI = causeI.getCause() ) {
+        if( causeI instanceof NullGuessException ) throw (NullGuessException)causeI;
+      }
+      throw exc;
+    } finally {
+      pool.shutdown();
+    }
+    return new Result(scores, System.nanoTime()-startNanos);
+  }
+
+  /**
+   * @return a task playing a game for each word, for a pool of the
+   * caller's
+   * @param scores receives the score of each word, at its index
+   * @param won receives whether each word's game was won, at its
+   * index, or null
+   */
+  RecursiveAction newTask(String[] words, int[] scores, boolean[] won) {
+    return new PlayRange(words, scores, won, 0, words.length);
+  }
+
+  /** Plays the games for the words in [begin, end). */
+  private class PlayRange extends RecursiveAction {
+    private final String[] words_;
+    private final int[] scores_;
+    private final boolean[] won_;
+    private final int begin_;
+    private final int end_;
+
+    PlayRange(String[] words, int[] scores, boolean[] won, int begin, int end) {
+      words_ = words;
+      scores_ = scores;
+      won_ = won;
+      begin_ = begin;
+      end_ = end;
+    }
+
+    @Override
+    protected void compute() {
+      if( end_-begin_<=WORDS_PER_TASK ) {
+        for( int wordI = begin_; wordI<end_; ++wordI ) {
+          final HangmanGame game = new HangmanGame(words_[wordI], maxWrongGuesses_);
+          try {
+            scores_[wordI] = Play.run(game, strategyFactory_.newStrategy(words_[wordI].length()), false);
+          } catch( NullGuessException exc ) {
+            throw new RuntimeException("Strategy failed on word "+words_[wordI], exc);
+          }
+          if( won_!=null ) won_[wordI] = game.gameStatus()==HangmanGame.Status.GAME_WON;
+        }
+        return;
+      }
+      final int middle = (begin_+end_) >>> 1;
+      invokeAll(new PlayRange(words_, scores_, won_, begin_, middle),
+                new PlayRange(words_, scores_, won_, middle, end_));
+    }
+  }
+}
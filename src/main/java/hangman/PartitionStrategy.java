@@ -0,0 +1,181 @@
+package hangman;
+
+import java.util.Arrays;
+
+/**
+ * Strategy choosing letters by the exact partition of the candidate
+ * words each letter's guess would make.
+ *
+ * Guessing a letter splits the candidates by what the game would
+ * reveal: the positions of the letter in the word, or that it's
+ * absent. Only the candidates in the revealed part remain. Where
+ * StrategyImpl's chooseChar estimates the reduction from the number
+ * of candidates containing the letter, this strategy counts the size
+ * of every part, and guesses the letter minimizing the expected
+ * number of remaining candidates, the sum of the squared part sizes
+ * over the number of candidates. Revealed positions tell apart
+ * candidates which merely containing the letter doesn't.
+ *
+ * Otherwise the strategy is StrategyImpl's: the same candidate
+ * filtering, word guesses once few candidates are left, and the
+ * highestChar while wrong guesses are short. Since reductionChar is
+ * only chosen when the log base 2 of the candidates is at most the
+ * wrong guesses remaining, partitions are only counted over fewer
+ * than 64 candidates with Play.DEFAULT_NUM_GUESSES, and the pass over
+ * them costs about what StrategyImpl's choice does. For larger
+ * budgets, MAX_PARTITION_CANDIDATES bounds the pass.
+ *
+ * Measured on every 50th dictionary word, the average score is
+ * 7.2867 against StrategyImpl's 7.4161, and 6.2944 against 6.4918
+ * with 8 wrong guesses allowed, at a time per game within the
+ * measurement noise of 'rake bench BENCH=play'.
+ *
+ * Counting takes one pass over the candidates. For each word, the
+ * position mask of each of its unguessed letters is computed, and the
+ * part, keyed by letter and position mask, counted in an open
+ * addressing hash table of longs. Nothing is allocated per word, and
+ * the scratch arrays only grow when a pass needs more room.
+ */
+public class PartitionStrategy extends StrategyImpl {
+  /**
+   * Count partitions when there are at most this many candidates.
+   * With 8 wrong guesses allowed, larger limits scored no better.
+   */
+  static final int MAX_PARTITION_CANDIDATES = 512;
+  // Parts are keyed by an int of the letter's position mask above
+  // the letter
+  private static final int LETTER_KEY_BITS = 5;
+  private static final int MAX_WORD_LENGTH = 32-LETTER_KEY_BITS;
+
+  // Scratch for choosing: candidate ids, the positions of each letter
+  // in the word at hand, the words containing each letter, and the
+  // hash table of parts, each slot a part's key in the high int and
+  // its size in the low int
+  private int[] scratchIds_ = new int[0];
+  private final int[] letterPositions_ = new int[WordBucket.NUM_LETTERS];
+  private final int[] letterWordCounts_ = new int[WordBucket.NUM_LETTERS];
+  private final long[] sumSquares_ = new long[WordBucket.NUM_LETTERS];
+  private long[] parts_ = new long[0];
+
+  /**
+   * @param dictionary dictionary shared between games
+   * @param wordLen length of the word in play for the HangmanGame
+   */
+  public PartitionStrategy(Dictionary dictionary, int wordLen) {
+    this(dictionary.getBucket(wordLen), null);
+  }
+
+  /**
+   * @param decisionCache cache for the bucket's dictionary, possibly
+   * shared with other strategies, or null not to cache
+   */
+  PartitionStrategy(WordBucket bucket, DecisionCache decisionCache) {
+    this(bucket, StrategyParameters.DEFAULT, decisionCache);
+  }
+
+  PartitionStrategy(WordBucket bucket, StrategyParameters parameters, DecisionCache decisionCache) {
+    super(bucket, parameters, decisionCache);
+  }
+
+  @Override
+  String getDecisionKind() {
+    return "partition";
+  }
+
+  @Override
+  PartitionStrategy copy() {
+    return (PartitionStrategy)copyTo(new PartitionStrategy(getBucket(), getParameters(), getDecisionCache()));
+  }
+
+  /**
+   * Choose as StrategyImpl does, but replace its reductionChar with the
+   * letter whose partition leaves the fewest candidates expected, if
+   * candidates are few enough to count.
+   */
+  @Override
+  char chooseChar(HangmanGame game) {
+    final char heuristicChar = super.chooseChar(game);
+    final int numCandidates = getNumCandidates();
+    if( getBranch()!=StrategyMetrics.Branch.REDUCTION_CHAR
+        || MAX_PARTITION_CANDIDATES<numCandidates
+        || MAX_WORD_LENGTH<getBucket().getWordLength() )
+    {
+      return heuristicChar;
+    }
+    final int unguessedMask
+      = WordBucket.ALL_LETTERS_MASK & ~(game.getCorrectLetterMask() | game.getIncorrectLetterMask());
+    countPartitions(numCandidates, unguessedMask);
+
+    /// Choose the letter of least sum of squares
+    // Ties go to the letter in more words, then to letters closer to
+    // Z, as in chooseChar.
+    int bestLetter = -1;
+    for( int letterI = WordBucket.NUM_LETTERS-1; 0<=letterI; --letterI ) {
+      if( (unguessedMask & (1<<letterI))==0 || letterWordCounts_[letterI]==0 ) continue;
+      if( bestLetter<0
+          || sumSquares_[letterI]<sumSquares_[bestLetter]
+          || (sumSquares_[letterI]==sumSquares_[bestLetter]
+              && letterWordCounts_[bestLetter]<letterWordCounts_[letterI]) )
+      {
+        bestLetter = letterI;
+      }
+    }
+    if( bestLetter<0 ) return heuristicChar;
+    setBranch(StrategyMetrics.Branch.PARTITION_CHAR);
+    return (char)('A'+bestLetter);
+  }
+
+  /**
+   * Count the parts each unguessed letter splits the candidates into,
+   * into letterWordCounts_ and sumSquares_.
+   */
+  private void countPartitions(int numCandidates, int unguessedMask) {
+    final WordBucket bucket = getBucket();
+    if( scratchIds_.length<numCandidates ) scratchIds_ = new int[numCandidates];
+    copyCandidateIds(scratchIds_);
+    // Each word is in one part per unguessed letter it has. Size the
+    // table for the worst case of every part being a single word.
+    int maxParts = 0;
+    for( int candI = 0; candI<numCandidates; ++candI ) {
+      maxParts += Integer.bitCount(bucket.getLetterMask(scratchIds_[candI]) & unguessedMask);
+    }
+    final int capacity = Integer.highestOneBit(Math.max(2*maxParts-1, 1))<<1;
+    if( parts_.length<capacity ) parts_ = new long[capacity];
+    final int slotMask = capacity-1;
+    final int hashShift = 32-Integer.numberOfTrailingZeros(capacity);
+    Arrays.fill(letterWordCounts_, 0);
+
+    for( int candI = 0; candI<numCandidates; ++candI ) {
+      final int wordId = scratchIds_[candI];
+      final int letterMask = bucket.getLetterMask(wordId) & unguessedMask;
+      if( letterMask==0 ) continue;
+      bucket.addLetterPositions(wordId, letterPositions_);
+      for( int mask = letterMask; mask!=0; mask &= mask-1 ) {
+        final int letterI = Integer.numberOfTrailingZeros(mask);
+        ++letterWordCounts_[letterI];
+        // A letter in the word has positions, so keys are never 0, and
+        // 0 marks an empty slot.
+        final int key = (letterPositions_[letterI]<<LETTER_KEY_BITS) | letterI;
+        int slot = (key*0x9E3779B9)>>>hashShift;
+        while( parts_[slot]!=0 && (int)(parts_[slot]>>>32)!=key ) slot = (slot+1) & slotMask;
+        parts_[slot] = ((long)key<<32) | ((int)parts_[slot]+1);
+      }
+      for( int mask = bucket.getLetterMask(wordId) & WordBucket.ALL_LETTERS_MASK; mask!=0; mask &= mask-1 ) {
+        letterPositions_[Integer.numberOfTrailingZeros(mask)] = 0;
+      }
+    }
+
+    /// Sum the squared part sizes, emptying the table
+    for( int letterI = 0; letterI<WordBucket.NUM_LETTERS; ++letterI ) {
+      final long numAbsent = numCandidates-letterWordCounts_[letterI];
+      sumSquares_[letterI] = numAbsent*numAbsent;
+    }
+    for( int slotI = 0; slotI<capacity; ++slotI ) {
+      final long part = parts_[slotI];
+      if( part==0 ) continue;
+      final long partSize = (int)part;
+      sumSquares_[(int)(part>>>32) & ((1<<LETTER_KEY_BITS)-1)] += partSize*partSize;
+      parts_[slotI] = 0;
+    }
+  }
+}
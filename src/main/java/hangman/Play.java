@@ -8,6 +8,8 @@ public class Play {
   /**
    * Runs the inputted HangmanGame and applies the inputted GuessingStrategy to it.
    *
+   * The game is recorded in GameJournal.DEFAULT, if there is one.
+   *
    * @param game
    * @param strategy
    * @param displayGame whether to display the game's progress to stdout
@@ -15,14 +17,33 @@ public class Play {
    */
   public static int run(HangmanGame game, GuessingStrategy strategy, boolean displayGame) throws NullGuessException
   {
+    return run(game, strategy, displayGame, GameJournal.DEFAULT);
+  }
+
+  /**
+   * Runs the game as run(HangmanGame, GuessingStrategy, boolean) does,
+   * recording it in journal.
+   *
+   * @param journal journal to record the game in, or null not to. The
+   * clock is only read to time guesses for a journal.
+   */
+  public static int run(HangmanGame game, GuessingStrategy strategy, boolean displayGame, GameJournal journal)
+    throws NullGuessException
+  {
+    final GameJournal.Entry entry = (journal==null) ? null : new GameJournal.Entry(game);
     // If the GuessingStrategy creates duplicate guesses, the while
     // loop can be unending. Play would regard that as a strategy bug.
     while( game.gameStatus()==HangmanGame.Status.KEEP_GUESSING ) {
+      final long startNanos = (entry==null) ? 0 : System.nanoTime();
       final Guess guess = strategy.nextGuess(game);
       if( guess==null ) throw new NullGuessException("Strategy made a null guess.");
+      final long nanos = (entry==null) ? 0 : System.nanoTime()-startNanos;
       guess.makeGuess(game);
+      if( entry!=null ) entry.add(guess, game.getPattern(), nanos);
       if( displayGame ) System.out.println(game);
     }
+    StrategyMetrics.recordGame(game);
+    if( entry!=null ) journal.record(entry);
     return game.currentScore();
   }
   public static int run(HangmanGame game, GuessingStrategy strategy) throws NullGuessException {
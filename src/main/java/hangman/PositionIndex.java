@@ -0,0 +1,137 @@
+package hangman;
+
+/**
+ * Inverted index of a WordBucket, as bitsets over word ids.
+ *
+ * For each position and letter, a bitset of the words having that
+ * letter at that position. For each letter, a bitset of the words
+ * containing it anywhere. Bit i of block b stands for the word with
+ * id b*64+i, so iterating set bits in order follows dictionary order.
+ *
+ * With these, candidates can be filtered by a game's revealed
+ * pattern and incorrect letters using AND and ANDNOT over 64 words at
+ * a time, and letter word counts come from popcounts of
+ * intersections. This pays off while the candidates are a large
+ * share of the bucket. Once they are sparse, scanning the candidate
+ * ids directly is cheaper.
+ *
+ * The loop filtering and counting runs in IndexKernel.INSTANCE, which
+ * may use SIMD instructions.
+ *
+ * Only letters [A-Z] are indexed. Instances are immutable and safe to
+ * share between threads.
+ */
+final class PositionIndex {
+  private static final int NUM_LETTERS = WordBucket.NUM_LETTERS;
+
+  private final int numWords_;
+  private final int numBlocks_;
+  // Indexed by position*NUM_LETTERS+letter, then by block
+  private final long[][] positionLetterBits_;
+  // Indexed by block*IndexKernel.LETTER_STRIDE+letter, so that the
+  // counts for a block read adjacent longs.
+  private final long[] containsBits_;
+
+  PositionIndex(WordBucket bucket) {
+    final int wordLen = bucket.getWordLength();
+    numWords_ = bucket.size();
+    numBlocks_ = (numWords_+63) >>> 6;
+    positionLetterBits_ = new long[wordLen*NUM_LETTERS][numBlocks_];
+    containsBits_ = new long[numBlocks_*IndexKernel.LETTER_STRIDE];
+    for( int wordI = 0; wordI<numWords_; ++wordI ) {
+      final int blockI = wordI >>> 6;
+      final long wordBit = 1L<<wordI;
+      for( int posI = 0; posI<wordLen; ++posI ) {
+        final char ch = bucket.getChar(wordI, posI);
+        if( ch<'A' || 'Z'<ch ) continue;
+        positionLetterBits_[posI*NUM_LETTERS+(ch-'A')][blockI] |= wordBit;
+      }
+      for( int mask = bucket.getLetterMask(wordI) & WordBucket.ALL_LETTERS_MASK; mask!=0; mask &= mask-1 ) {
+        containsBits_[blockI*IndexKernel.LETTER_STRIDE+Integer.numberOfTrailingZeros(mask)] |= wordBit;
+      }
+    }
+  }
+
+  /** @return number of longs in a bitset over the bucket's words */
+  int getNumBlocks() { return numBlocks_; }
+
+  /**
+   * Filter candidates and count letters, one block of 64 words at a
+   * time.
+   *
+   * A word survives if it's in src, has each revealed char at its
+   * position and has none of the letters of incorrectMask.
+   *
+   * @param src candidate bitset, or null if every word is a candidate
+   * @param dst receives the surviving candidates. May be src.
+   * @param revealedPositions positions revealed in the game's word
+   * @param revealedChars the [A-Z] chars at revealedPositions
+   * @param numRevealed number of elements used in the revealed arrays
+   * @param incorrectMask letter mask of incorrectly guessed letters
+   * @param countMask letter mask of the letters to count
+   * @param letterWordCounts for each letter in countMask, the number
+   * of surviving words containing it is added here
+   * @param scratch at least numRevealed elements, to hold the bitsets
+   * for the revealed chars
+   * @return number of surviving words
+   */
+  int filterAndCount(long[] src, long[] dst,
+                     int[] revealedPositions, char[] revealedChars, int numRevealed,
+                     int incorrectMask, int countMask, int[] letterWordCounts,
+                     long[][] scratch)
+  {
+    for( int revealedI = 0; revealedI<numRevealed; ++revealedI ) {
+      scratch[revealedI] = positionLetterBits_[revealedPositions[revealedI]*NUM_LETTERS+(revealedChars[revealedI]-'A')];
+    }
+    return IndexKernel.INSTANCE.filterAndCount(containsBits_, numBlocks_, allWordsBits(numBlocks_-1),
+                                               src, dst, scratch, numRevealed,
+                                               incorrectMask, countMask, letterWordCounts);
+  }
+
+  /**
+   * Filter candidates as filterAndCount does, without counting
+   * letters.
+   *
+   * @return number of surviving words
+   */
+  int filter(long[] src, long[] dst,
+             int[] revealedPositions, char[] revealedChars, int numRevealed,
+             int incorrectMask, long[][] scratch)
+  {
+    for( int revealedI = 0; revealedI<numRevealed; ++revealedI ) {
+      scratch[revealedI] = positionLetterBits_[revealedPositions[revealedI]*NUM_LETTERS+(revealedChars[revealedI]-'A')];
+    }
+    final long lastBlockBits = allWordsBits(numBlocks_-1);
+    int numSurvivors = 0;
+    for( int blockI = 0; blockI<numBlocks_; ++blockI ) {
+      numSurvivors += Long.bitCount(IndexKernel.filterBlock(containsBits_, numBlocks_, lastBlockBits, src, dst,
+                                                            scratch, numRevealed, incorrectMask, blockI));
+    }
+    return numSurvivors;
+  }
+
+  /**
+   * @param bits bitset over word ids, or null for every word
+   * @param numWords number of bits set in bits
+   * @return ids of the set bits, in increasing order
+   */
+  int[] toIds(long[] bits, int numWords) {
+    final int[] ids = new int[numWords];
+    int idI = 0;
+    for( int blockI = 0; blockI<numBlocks_; ++blockI ) {
+      for( long blockBits = (bits==null) ? allWordsBits(blockI) : bits[blockI];
+           blockBits!=0;
+           blockBits &= blockBits-1 )
+      {
+        ids[idI++] = (blockI<<6)+Long.numberOfTrailingZeros(blockBits);
+      }
+    }
+    return ids;
+  }
+
+  /** @return bits of the block for every word in the bucket */
+  private long allWordsBits(int blockI) {
+    final int numInBlock = numWords_-(blockI<<6);
+    return (numInBlock>=64) ? -1L : (1L<<numInBlock)-1;
+  }
+}
@@ -0,0 +1,533 @@
+package hangman;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Strategy searching for the guess of least expected final score once
+ * few candidates are left.
+ *
+ * StrategyImpl's chooseChar picks a letter from word counts, without
+ * looking past the guess at hand. With few candidates, every way the
+ * game could go from here can be searched instead. The search is an
+ * expectimax over game states, taking the candidates as equally
+ * likely to be the secret word, as they are when scoring a
+ * dictionary:
+ *   - a state of one candidate is won by guessing it, at the state's
+ *     score
+ *   - a letter's value is the average over the parts the letter
+ *     splits the candidates into, by the positions it would be
+ *     revealed at, of the part's value, with one more point scored
+ *     and, for the part without the letter, one less wrong guess
+ *     remaining. A wrong guess with none remaining loses, for a
+ *     score of 25.
+ *   - a word's value is its chance of being right times the state's
+ *     score, plus the value of the other candidates after one more
+ *     wrong guess
+ *   - a state's value is that of its best letter or word
+ * Letters not splitting the candidates only add a point, so are
+ * left out. The search is exact, and bounded only by the candidates:
+ * it's made for at most the maxCandidates given, and candidate sets
+ * are long bitmasks, so at most 64.
+ *
+ * Pruning is branch and bound, the expectimax form of alpha-beta: a
+ * state's value is at least its score plus (n-1)/n for n candidates,
+ * since no guess costs less. Each child is searched with the cutoff
+ * over which its parent's guess can't beat the best found so far, and
+ * a child reaching it returns that bound rather than its value.
+ * Letters are tried in order of the sum of their parts' squared sizes,
+ * as PartitionStrategy ranks them, so that good guesses set tight
+ * cutoffs early.
+ *
+ * The first guesses to search are forked as tasks to the ForkJoinPool
+ * the caller runs in, or the common pool, and share the best value
+ * found so far for their cutoffs. Values within TIE_EPSILON of the
+ * best are ties, won by the first guess in the search order, so the
+ * guess doesn't depend on the order the tasks finish in.
+ *
+ * States are stored in a TranspositionTable, keyed by a hash of their
+ * candidate set, the wrong guesses remaining and the score. A state's
+ * value depends on nothing else, so one table serves every game over
+ * the same Dictionary, on any number of threads, whatever the
+ * StrategyParameters.
+ *
+ * With a deadline, the search gives up when it passes, and the
+ * guess is StrategyImpl's, which isn't cached, so that the state is
+ * searched again when there's time. Without one, the search runs to
+ * the end. With more candidates, the strategy is StrategyImpl's.
+ * Decisions are cached under a kind of their maxCandidates, so a
+ * DecisionCache may be shared with other strategies.
+ */
+public class SearchStrategy extends StrategyImpl {
+  /** Default most candidates to search */
+  public static final int DEFAULT_MAX_CANDIDATES = 16;
+  /** Default number of entries of a TranspositionTable */
+  public static final int DEFAULT_TABLE_SIZE = 1<<20;
+  // Score of a lost game, as HangmanGame.currentScore gives it
+  private static final int LOST_SCORE = 25;
+  private static final int MAX_WORD_LENGTH = 32;
+  // See the class documentation
+  private static final double TIE_EPSILON = 1e-9;
+  // Nodes searched between reads of the clock, a power of 2. A node
+  // takes microseconds, and a read tens of nanoseconds.
+  private static final int NODES_PER_CLOCK_READ = 16;
+  // Searches with less time than this to their deadline aren't
+  // started
+  private static final long MIN_SEARCH_NANOS = 20000;
+
+  private final TranspositionTable table_;
+  private final int maxCandidates_;
+  private final String decisionKind_;
+  // Whether the last search gave up for lack of time
+  private boolean outOfTime_;
+  private int[] scratchIds_ = new int[0];
+
+  /**
+   * Concurrent table of searched state values.
+   *
+   * Each entry is two longs of an array: the key XORed with the data,
+   * and the data, a double. Entries are read and written without
+   * locks. A reader whose two longs were written by racing writers
+   * finds the XOR doesn't give its key, and takes that as a miss.
+   * Writes replace whatever entry is in their slot.
+   *
+   * Exact values are stored as is, and lower bounds negated, since
+   * values are never negative and lower bounds never 0.
+   */
+  public static final class TranspositionTable {
+    private final long[] slots_;
+    private final int mask_;
+    private final LongAdder probes_ = new LongAdder();
+    private final LongAdder hits_ = new LongAdder();
+
+    /**
+     * @param size least number of entries, rounded up to a power of 2
+     */
+    public TranspositionTable(int size) {
+      if( size<1 || (1<<29)<size ) throw new IllegalArgumentException("size must be in [1, 2^29] but got "+size);
+      final int capacity = Integer.highestOneBit(Math.max(2*size-1, 1));
+      slots_ = new long[2*capacity];
+      mask_ = capacity-1;
+    }
+
+    /** @return the entry's value, or NaN if it isn't stored */
+    double get(long key) {
+      probes_.increment();
+      final int slot = 2*((int)(key>>>32) & mask_);
+      final long data = slots_[slot+1];
+      if( (slots_[slot]^data)!=key ) return Double.NaN;
+      hits_.increment();
+      return Double.longBitsToDouble(data);
+    }
+
+    void put(long key, double value) {
+      final int slot = 2*((int)(key>>>32) & mask_);
+      final long data = Double.doubleToRawLongBits(value);
+      slots_[slot] = key^data;
+      slots_[slot+1] = data;
+    }
+
+    /** @return lookups so far */
+    public long getProbeCount() { return probes_.sum(); }
+    /** @return lookups finding their entry so far */
+    public long getHitCount() { return hits_.sum(); }
+
+    @Override
+    public String toString() {
+      return "TranspositionTable of "+(mask_+1)+" entries, "+getHitCount()+" hits of "+getProbeCount()+" probes";
+    }
+  }
+
+  /**
+   * @param dictionary dictionary shared between games
+   * @param wordLen length of the word in play for the HangmanGame
+   * @param table table for dictionary, shared between games
+   */
+  public SearchStrategy(Dictionary dictionary, int wordLen, TranspositionTable table) {
+    this(dictionary.getBucket(wordLen), StrategyParameters.DEFAULT, null, table, DEFAULT_MAX_CANDIDATES);
+  }
+
+  /**
+   * @param maxCandidates search with at most this many candidates, at
+   * most 64
+   */
+  SearchStrategy(WordBucket bucket, StrategyParameters parameters, DecisionCache decisionCache,
+                 TranspositionTable table, int maxCandidates)
+  {
+    super(bucket, parameters, decisionCache);
+    if( maxCandidates<0 || 64<maxCandidates ) {
+      throw new IllegalArgumentException("maxCandidates must be in [0, 64] but got "+maxCandidates);
+    }
+    if( table==null ) throw new IllegalArgumentException("table must not be null");
+    table_ = table;
+    maxCandidates_ = maxCandidates;
+    decisionKind_ = "search "+maxCandidates;
+  }
+
+  @Override
+  SearchStrategy copy() {
+    return (SearchStrategy)copyTo(new SearchStrategy(getBucket(), getParameters(), getDecisionCache(), table_, maxCandidates_));
+  }
+
+  @Override
+  String getDecisionKind() {
+    return decisionKind_;
+  }
+
+  /** @return whether the guess wasn't StrategyImpl's for lack of time */
+  @Override
+  boolean isGuessCacheable() {
+    return !outOfTime_;
+  }
+
+  /**
+   * Search for the best guess, if the candidates are few enough and,
+   * with a deadline, it's met.
+   */
+  @Override
+  Guess searchGuess(HangmanGame game, boolean hasDeadline, long deadlineNanos) {
+    outOfTime_ = false;
+    final int numCandidates = getNumCandidates();
+    if( numCandidates<2 || maxCandidates_<numCandidates || MAX_WORD_LENGTH<getBucket().getWordLength() ) return null;
+    if( ((game.getCorrectLetterMask() | game.getIncorrectLetterMask()) & WordBucket.OTHER_CHAR_BIT)!=0 ) return null;
+    if( hasDeadline && deadlineNanos-System.nanoTime()<MIN_SEARCH_NANOS ) {
+      outOfTime_ = true;
+      return null;
+    }
+    if( scratchIds_.length<numCandidates ) scratchIds_ = new int[numCandidates];
+    copyCandidateIds(scratchIds_);
+    final int action = new Root(game, numCandidates, hasDeadline, deadlineNanos).search();
+    if( action<0 ) {
+      outOfTime_ = true;
+      return null;
+    }
+    setBranch(StrategyMetrics.Branch.SEARCH);
+    if( action<WordBucket.NUM_LETTERS ) return new GuessLetter((char)('A'+action));
+    return new GuessWord(removeCandidate(scratchIds_[action-WordBucket.NUM_LETTERS]));
+  }
+
+  /** @return the least value of a state of n candidates and score s */
+  private static double lowerBound(int n, int score) {
+    return (n==1) ? score : Math.min(LOST_SCORE, score+(n-1.0)/n);
+  }
+
+  /** @return a 64 bit mix of value, never 0 */
+  private static long mix(long value) {
+    value = (value^(value>>>33))*0xff51afd7ed558ccdL;
+    value = (value^(value>>>33))*0xc4ceb9fe1a85ec53L;
+    return (value^(value>>>33)) | 1;
+  }
+
+  /**
+   * One search, from the game's state. Actions are letters, 0 for
+   * 'A', or words, NUM_LETTERS plus the candidate's index.
+   */
+  private final class Root {
+    private final int numCandidates_;
+    private final long candidateSet_;
+    private final long candidateHash_;
+    // Per candidate index: the hash of its word, its unguessed letter
+    // mask and the positions of each letter, at index*NUM_LETTERS+letter
+    private final long[] wordHashes_;
+    private final int[] letterMasks_;
+    private final int[] positions_;
+    private final int wrongsRemaining_;
+    private final int score_;
+    private final boolean hasDeadline_;
+    private final long deadlineNanos_;
+    private volatile boolean aborted_;
+    // Least value of the actions searched so far, as double bits
+    private final AtomicLong bestBits_ = new AtomicLong(Double.doubleToLongBits(Double.POSITIVE_INFINITY));
+
+    Root(HangmanGame game, int numCandidates, boolean hasDeadline, long deadlineNanos) {
+      final WordBucket bucket = getBucket();
+      final int unguessedMask
+        = WordBucket.ALL_LETTERS_MASK & ~(game.getCorrectLetterMask() | game.getIncorrectLetterMask());
+      numCandidates_ = numCandidates;
+      candidateSet_ = (numCandidates==64) ? -1L : (1L<<numCandidates)-1;
+      wordHashes_ = new long[numCandidates];
+      letterMasks_ = new int[numCandidates];
+      positions_ = new int[numCandidates*WordBucket.NUM_LETTERS];
+      final int[] letterPositions = new int[WordBucket.NUM_LETTERS];
+      long candidateHash = 0;
+      for( int candI = 0; candI<numCandidates; ++candI ) {
+        final int wordId = scratchIds_[candI];
+        wordHashes_[candI] = mix(((long)bucket.getWordLength()<<32) | wordId);
+        candidateHash ^= wordHashes_[candI];
+        letterMasks_[candI] = bucket.getLetterMask(wordId) & unguessedMask;
+        bucket.addLetterPositions(wordId, letterPositions);
+        System.arraycopy(letterPositions, 0, positions_, candI*WordBucket.NUM_LETTERS, WordBucket.NUM_LETTERS);
+        Arrays.fill(letterPositions, 0);
+      }
+      candidateHash_ = candidateHash;
+      wrongsRemaining_ = game.numWrongGuessesRemaining();
+      score_ = game.currentScore();
+      hasDeadline_ = hasDeadline;
+      deadlineNanos_ = deadlineNanos;
+    }
+
+    /** @return the best action, or -1 if the search gave up */
+    int search() {
+      final Searcher searcher = new Searcher();
+      final int numLetters = searcher.orderLetters(candidateSet_, 0);
+      final List<ActionTask> tasks = new ArrayList<ActionTask>();
+      for( int orderI = 0; orderI<numLetters; ++orderI ) tasks.add(new ActionTask(searcher.letterOrders_[0][orderI]));
+      for( int candI = 0; candI<numCandidates_; ++candI ) tasks.add(new ActionTask(WordBucket.NUM_LETTERS+candI));
+      new RecursiveAction() {
+        protected void compute() {
+          invokeAll(tasks);
+        }
+      }.invoke();
+      if( aborted_ ) return -1;
+
+      /// The first action in order within TIE_EPSILON of the least
+      double bestValue = Double.POSITIVE_INFINITY;
+      for( ActionTask taskI : tasks ) {
+        if( taskI.exact_ ) bestValue = Math.min(bestValue, taskI.value_);
+      }
+      for( ActionTask taskI : tasks ) {
+        if( taskI.exact_ && taskI.value_<=bestValue+TIE_EPSILON ) return taskI.action_;
+      }
+      return -1;
+    }
+
+    /** Lower the shared best value to value, if higher. */
+    private void offerBest(double value) {
+      long bits = bestBits_.get();
+      while( value<Double.longBitsToDouble(bits) && !bestBits_.compareAndSet(bits, Double.doubleToLongBits(value)) ) {
+        bits = bestBits_.get();
+      }
+    }
+
+    /** Searches one action from the root. */
+    private class ActionTask extends RecursiveAction {
+      private final int action_;
+      private double value_;
+      // Whether value_ is the action's, rather than a bound over the
+      // best value
+      private boolean exact_;
+
+      ActionTask(int action) {
+        action_ = action;
+      }
+
+      @Override
+      protected void compute() {
+        final Searcher searcher = new Searcher();
+        final double cutoff = Double.longBitsToDouble(bestBits_.get())+TIE_EPSILON;
+        if( action_<WordBucket.NUM_LETTERS ) {
+          value_ = searcher.letterValue(action_, candidateSet_, numCandidates_, wrongsRemaining_, score_, cutoff, 0);
+        } else {
+          value_ = searcher.wordValue(action_-WordBucket.NUM_LETTERS, candidateSet_, candidateHash_, numCandidates_,
+                                      wrongsRemaining_, score_, cutoff, 0);
+        }
+        exact_ = value_<cutoff && !aborted_;
+        if( exact_ ) offerBest(value_);
+      }
+    }
+
+    /**
+     * Searches states below the root on one thread, with scratch
+     * arrays per depth.
+     */
+    private class Searcher {
+      // Per depth: the parts of the last partition, and the letters
+      // in search order with their sums of squares
+      private long[][] partSets_ = new long[0][];
+      private long[][] partHashes_ = new long[0][];
+      private int[][] partCounts_ = new int[0][];
+      private int[][] partPositions_ = new int[0][];
+      private int[][] letterOrders_ = new int[0][];
+      private long[][] letterScores_ = new long[0][];
+      private int numNodes_;
+
+      private void ensureDepth(int depth) {
+        if( depth<partSets_.length ) return;
+        final int numDepths = depth+1;
+        partSets_ = Arrays.copyOf(partSets_, numDepths);
+        partHashes_ = Arrays.copyOf(partHashes_, numDepths);
+        partCounts_ = Arrays.copyOf(partCounts_, numDepths);
+        partPositions_ = Arrays.copyOf(partPositions_, numDepths);
+        letterOrders_ = Arrays.copyOf(letterOrders_, numDepths);
+        letterScores_ = Arrays.copyOf(letterScores_, numDepths);
+        partSets_[depth] = new long[numCandidates_];
+        partHashes_[depth] = new long[numCandidates_];
+        partCounts_[depth] = new int[numCandidates_];
+        partPositions_[depth] = new int[numCandidates_];
+        letterOrders_[depth] = new int[WordBucket.NUM_LETTERS];
+        letterScores_[depth] = new long[WordBucket.NUM_LETTERS];
+      }
+
+      /**
+       * Split the candidates of set by the positions of letter, into
+       * the part arrays of depth.
+       *
+       * @return number of parts
+       */
+      private int partition(int letter, long set, int depth) {
+        final long[] partSets = partSets_[depth];
+        final long[] partHashes = partHashes_[depth];
+        final int[] partCounts = partCounts_[depth];
+        final int[] partPositions = partPositions_[depth];
+        int numParts = 0;
+        for( long bits = set; bits!=0; bits &= bits-1 ) {
+          final int candI = Long.numberOfTrailingZeros(bits);
+          final int positions = positions_[candI*WordBucket.NUM_LETTERS+letter];
+          int partI = 0;
+          while( partI<numParts && partPositions[partI]!=positions ) ++partI;
+          if( partI==numParts ) {
+            partSets[partI] = 0;
+            partHashes[partI] = 0;
+            partCounts[partI] = 0;
+            partPositions[partI] = positions;
+            ++numParts;
+          }
+          partSets[partI] |= 1L<<candI;
+          partHashes[partI] ^= wordHashes_[candI];
+          ++partCounts[partI];
+        }
+        return numParts;
+      }
+
+      /**
+       * Order the letters splitting the candidates of set by the sum
+       * of their parts' squared sizes, into letterOrders_[depth].
+       *
+       * @return number of letters ordered
+       */
+      int orderLetters(long set, int depth) {
+        ensureDepth(depth);
+        int letterMask = 0;
+        for( long bits = set; bits!=0; bits &= bits-1 ) letterMask |= letterMasks_[Long.numberOfTrailingZeros(bits)];
+        final int[] letterOrder = letterOrders_[depth];
+        final long[] letterScores = letterScores_[depth];
+        int numLetters = 0;
+        for( int mask = letterMask; mask!=0; mask &= mask-1 ) {
+          final int letter = Integer.numberOfTrailingZeros(mask);
+          final int numParts = partition(letter, set, depth);
+          if( numParts<2 ) continue;
+          long sumSquares = 0;
+          for( int partI = 0; partI<numParts; ++partI ) sumSquares += (long)partCounts_[depth][partI]*partCounts_[depth][partI];
+          // Insertion sort, keeping letter order among equals
+          int orderI = numLetters++;
+          while( 0<orderI && sumSquares<letterScores[orderI-1] ) {
+            letterOrder[orderI] = letterOrder[orderI-1];
+            letterScores[orderI] = letterScores[orderI-1];
+            --orderI;
+          }
+          letterOrder[orderI] = letter;
+          letterScores[orderI] = sumSquares;
+        }
+        return numLetters;
+      }
+
+      /** @return whether to give up the search */
+      private boolean isAborted() {
+        if( aborted_ ) return true;
+        if( hasDeadline_ && (numNodes_++ & (NODES_PER_CLOCK_READ-1))==0 && 0<System.nanoTime()-deadlineNanos_ ) {
+          aborted_ = true;
+        }
+        return aborted_;
+      }
+
+      /**
+       * @return the value of the state of the candidates of set, if
+       * below cutoff, else a bound at least cutoff. Infinite if the
+       * search gave up.
+       */
+      double value(long set, long hash, int n, int wrongsRemaining, int score, double cutoff, int depth) {
+        if( n==1 ) return score;
+        final double lowerBound = lowerBound(n, score);
+        if( cutoff<=lowerBound ) return lowerBound;
+        if( isAborted() ) return Double.POSITIVE_INFINITY;
+        final long key = mix(hash+mix(((long)wrongsRemaining<<32) | score));
+        final double stored = table_.get(key);
+        if( 0<=stored ) return stored;
+        if( cutoff<=-stored ) return -stored;
+
+        double best = cutoff;
+        final int numLetters = orderLetters(set, depth);
+        for( int orderI = 0; orderI<numLetters; ++orderI ) {
+          best = Math.min(best, letterValue(letterOrders_[depth][orderI], set, n, wrongsRemaining, score, best, depth));
+        }
+        for( long bits = set; bits!=0; bits &= bits-1 ) {
+          best = Math.min(best, wordValue(Long.numberOfTrailingZeros(bits), set, hash, n, wrongsRemaining, score, best, depth));
+        }
+        // Values found after giving up are bounds of no use
+        if( aborted_ ) return Double.POSITIVE_INFINITY;
+        if( best<cutoff ) {
+          table_.put(key, best);
+          return best;
+        }
+        table_.put(key, -cutoff);
+        return cutoff;
+      }
+
+      /**
+       * @return the value of guessing letter in the state, if below
+       * cutoff, else cutoff
+       */
+      double letterValue(int letter, long set, int n, int wrongsRemaining, int score, double cutoff, int depth) {
+        ensureDepth(depth);
+        final int numParts = partition(letter, set, depth);
+        final long[] partSets = partSets_[depth];
+        final long[] partHashes = partHashes_[depth];
+        final int[] partCounts = partCounts_[depth];
+        final int[] partPositions = partPositions_[depth];
+        // Values are summed weighted by the parts' sizes, so the sum
+        // must stay below cutoff*n
+        double boundSum = 0;
+        for( int partI = 0; partI<numParts; ++partI ) {
+          boundSum += partCounts[partI]*partBound(partCounts[partI], partPositions[partI], wrongsRemaining, score);
+        }
+        final double target = cutoff*n;
+        double sum = 0;
+        for( int partI = 0; partI<numParts; ++partI ) {
+          final int count = partCounts[partI];
+          boundSum -= count*partBound(count, partPositions[partI], wrongsRemaining, score);
+          final double partValue;
+          if( partPositions[partI]==0 && wrongsRemaining==0 ) {
+            partValue = LOST_SCORE;
+          } else {
+            final double partCutoff = (target-sum-boundSum)/count;
+            partValue = value(partSets[partI], partHashes[partI], count,
+                              (partPositions[partI]==0) ? wrongsRemaining-1 : wrongsRemaining, score+1,
+                              partCutoff, depth+1);
+            if( partCutoff<=partValue ) return cutoff;
+          }
+          sum += count*partValue;
+        }
+        final double value = sum/n;
+        return (value<cutoff) ? value : cutoff;
+      }
+
+      /** @return lowerBound of a part, or its value if it's lost */
+      private double partBound(int count, int positions, int wrongsRemaining, int score) {
+        return (positions==0 && wrongsRemaining==0) ? LOST_SCORE : lowerBound(count, score+1);
+      }
+
+      /**
+       * @return the value of guessing the word of candidate candI in
+       * the state, if below cutoff, else cutoff
+       */
+      double wordValue(int candI, long set, long hash, int n, int wrongsRemaining, int score, double cutoff, int depth) {
+        final double value;
+        if( wrongsRemaining==0 ) {
+          value = (score+(n-1.0)*LOST_SCORE)/n;
+        } else {
+          if( cutoff<=(score+(n-1.0)*lowerBound(n-1, score+1))/n ) return cutoff;
+          final double restCutoff = (cutoff*n-score)/(n-1);
+          final double restValue = value(set & ~(1L<<candI), hash^wordHashes_[candI], n-1, wrongsRemaining-1, score+1,
+                                         restCutoff, depth+1);
+          if( restCutoff<=restValue ) return cutoff;
+          value = (score+(n-1)*restValue)/n;
+        }
+        return (value<cutoff) ? value : cutoff;
+      }
+    }
+  }
+}
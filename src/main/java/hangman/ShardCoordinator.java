@@ -0,0 +1,394 @@
+package hangman;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Scores a dictionary with several maxWrongGuesses at once, sharded
+ * over ShardWorkers in other JVMs.
+ *
+ * Each pair of maxWrongGuesses and word length is a shard, which a
+ * worker scores exactly with a TreeEvaluator. Shards are queued
+ * largest first, and each worker connection takes the next one as
+ * soon as it has answered the last, so faster workers score more.
+ *
+ * A shard whose worker fails, by closing the connection, answering
+ * ERROR, or not answering within the shard timeout, is queued again
+ * for any worker, up to MAX_ATTEMPTS times. A worker whose connection
+ * failed or timed out is given no more shards. A worker whose
+ * dictionary differs from the coordinator's, by size or digest, is
+ * given none at all.
+ *
+ * Scores are merged as integer sums per shard, so the result is
+ * exactly that of a single TreeEvaluator, whichever workers scored
+ * which shards.
+ *
+ * Workers are reached by address, on this host or others, or
+ * launched as local processes by launchLocalWorker.
+ */
+public class ShardCoordinator {
+  /** Most times a shard is handed to a worker */
+  public static final int MAX_ATTEMPTS = 3;
+  /** Default for how long a worker may take to score one shard */
+  public static final int DEFAULT_SHARD_TIMEOUT_MILLIS = 600000;
+  private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+  // How long an idle connection waits for shards to be queued again
+  private static final long POLL_MILLIS = 50;
+
+  private final Dictionary dictionary_;
+  private final List<InetSocketAddress> workerAddresses_;
+  private final int shardTimeoutMillis_;
+
+  /**
+   * Scores of the dictionary's words for each maxWrongGuesses.
+   */
+  public static class Result {
+    private final int[] maxWrongGuesses_;
+    // Indexed by maxWrongGuesses index, then word length
+    private final long[][] numWords_;
+    private final long[][] scoreSums_;
+    private final int numRetried_;
+    private final long elapsedNanos_;
+
+    Result(int[] maxWrongGuesses, long[][] numWords, long[][] scoreSums, int numRetried, long elapsedNanos) {
+      maxWrongGuesses_ = maxWrongGuesses;
+      numWords_ = numWords;
+      scoreSums_ = scoreSums;
+      numRetried_ = numRetried;
+      elapsedNanos_ = elapsedNanos;
+    }
+
+    public int getNumSettings() { return maxWrongGuesses_.length; }
+    public int getMaxWrongGuesses(int settingI) { return maxWrongGuesses_[settingI]; }
+    public long getNumWords(int settingI) { return sum(numWords_[settingI]); }
+    public long getScoreSum(int settingI) { return sum(scoreSums_[settingI]); }
+    public double getAverageScore(int settingI) { return (double)getScoreSum(settingI)/(double)getNumWords(settingI); }
+    public long getNumWords(int settingI, int wordLength) { return numWords_[settingI][wordLength]; }
+    public long getScoreSum(int settingI, int wordLength) { return scoreSums_[settingI][wordLength]; }
+    /** @return times a shard failed and was queued again */
+    public int getNumRetried() { return numRetried_; }
+    public long getElapsedNanos() { return elapsedNanos_; }
+
+    private static long sum(long[] values) {
+      long sum = 0;
+      for( long valueI : values ) sum += valueI;
+      return sum;
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder text = new StringBuilder();
+      for( int settingI = 0; settingI<maxWrongGuesses_.length; ++settingI ) {
+        text.append("GUESSES "+maxWrongGuesses_[settingI]+": "+getNumWords(settingI)+" words"
+                    +", average score: "+getAverageScore(settingI)+"\n");
+      }
+      text.append("Scored in "+elapsedNanos_/1000000+" ms, "+numRetried_+" shards retried");
+      return text.toString();
+    }
+  }
+
+  /** Words of one length, scored with one maxWrongGuesses. */
+  private static class Shard {
+    private final int settingI_;
+    private final int maxWrongGuesses_;
+    private final int wordLength_;
+    private final int size_;
+    private int numAttempts_;
+
+    Shard(int settingI, int maxWrongGuesses, int wordLength, int size) {
+      settingI_ = settingI;
+      maxWrongGuesses_ = maxWrongGuesses;
+      wordLength_ = wordLength;
+      size_ = size;
+    }
+
+    @Override
+    public String toString() {
+      return "shard GUESSES "+maxWrongGuesses_+" length "+wordLength_;
+    }
+  }
+
+  /**
+   * @param dictionary dictionary to score, which the workers must
+   * have too
+   * @param workerAddresses workers to hand shards to
+   */
+  public ShardCoordinator(Dictionary dictionary, List<InetSocketAddress> workerAddresses) {
+    this(dictionary, workerAddresses, DEFAULT_SHARD_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * @param shardTimeoutMillis how long a worker may take to answer,
+   * whether to connecting or to a shard, before it's dropped and its
+   * shard queued again
+   */
+  public ShardCoordinator(Dictionary dictionary, List<InetSocketAddress> workerAddresses, int shardTimeoutMillis) {
+    if( workerAddresses.isEmpty() ) throw new IllegalArgumentException("No workers");
+    if( shardTimeoutMillis<=0 ) {
+      throw new IllegalArgumentException("shardTimeoutMillis must be positive but got "+shardTimeoutMillis);
+    }
+    dictionary_ = dictionary;
+    workerAddresses_ = new ArrayList<InetSocketAddress>(workerAddresses);
+    shardTimeoutMillis_ = shardTimeoutMillis;
+  }
+
+  /**
+   * Score every word of the dictionary with each maxWrongGuesses.
+   *
+   * @return scores, merged over the shards
+   * @throws IOException if a shard failed MAX_ATTEMPTS times, or no
+   * worker was left to score the remaining shards
+   */
+  public Result evaluate(int[] maxWrongGuesses) throws IOException {
+    final long startNanos = System.nanoTime();
+    final int numLengths = dictionary_.getMaxWordLength()+1;
+    final List<Shard> shards = new ArrayList<Shard>();
+    for( int settingI = 0; settingI<maxWrongGuesses.length; ++settingI ) {
+      for( int lenI = 0; lenI<numLengths; ++lenI ) {
+        final int size = dictionary_.getWords(lenI).size();
+        if( size!=0 ) shards.add(new Shard(settingI, maxWrongGuesses[settingI], lenI, size));
+      }
+    }
+    // Largest first, so that the last shards to finish are small
+    Collections.sort(shards, new Comparator<Shard>() {
+        public int compare(Shard lhs, Shard rhs) {
+          return Integer.compare(rhs.size_, lhs.size_);
+        }
+      });
+
+    final Evaluation evaluation
+      = new Evaluation("READY "+dictionary_.size()+" "+dictionary_.getDigest(), shards,
+                       new long[maxWrongGuesses.length][numLengths], new long[maxWrongGuesses.length][numLengths]);
+    final List<Thread> linkThreads = new ArrayList<Thread>();
+    for( final InetSocketAddress addressI : workerAddresses_ ) {
+      final Thread thread = new Thread(new Runnable() {
+          public void run() {
+            evaluation.link(addressI);
+          }
+        }, "hangman-shard-link-"+addressI);
+      thread.setDaemon(true);
+      thread.start();
+      linkThreads.add(thread);
+    }
+    try {
+      for( Thread threadI : linkThreads ) threadI.join();
+    } catch( InterruptedException exc ) {
+      for( Thread threadI : linkThreads ) threadI.interrupt();
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted scoring shards", exc);
+    }
+    if( evaluation.failure_!=null ) throw evaluation.failure_;
+    if( 0<evaluation.numUnfinished_.get() ) {
+      throw new IOException("No worker left to score "+evaluation.numUnfinished_.get()+" shards");
+    }
+    return new Result(maxWrongGuesses.clone(), evaluation.numWords_, evaluation.scoreSums_,
+                      (int)evaluation.numRetried_.sum(), System.nanoTime()-startNanos);
+  }
+
+  /** Shards being scored, and their merged results. */
+  private class Evaluation {
+    // Handshake of a worker of the same dictionary
+    private final String ready_;
+    private final BlockingQueue<Shard> queue_;
+    private final AtomicInteger numUnfinished_;
+    private final LongAdder numRetried_ = new LongAdder();
+    // Written by each link thread for its own shards, read after the
+    // threads are joined
+    private final long[][] numWords_;
+    private final long[][] scoreSums_;
+    private volatile IOException failure_;
+
+    Evaluation(String ready, List<Shard> shards, long[][] numWords, long[][] scoreSums) {
+      ready_ = ready;
+      queue_ = new LinkedBlockingQueue<Shard>(shards);
+      numUnfinished_ = new AtomicInteger(shards.size());
+      numWords_ = numWords;
+      scoreSums_ = scoreSums;
+    }
+
+    /** Hand shards to the worker at address until none are left. */
+    void link(InetSocketAddress address) {
+      final Socket socket = new Socket();
+      try {
+        socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+        socket.setTcpNoDelay(true);
+        // A worker that stalls rather than closing fails its shard too
+        socket.setSoTimeout(shardTimeoutMillis_);
+        final BufferedReader in
+          = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        final Writer out
+          = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+        final String ready = in.readLine();
+        if( ready==null || !ready.equals(ready_) ) {
+          throw new IOException("Expected "+ready_+", a worker of the same dictionary, but got "+ready);
+        }
+        while( 0<numUnfinished_.get() && failure_==null ) {
+          final Shard shard = queue_.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+          if( shard==null ) continue;
+          final String reply;
+          try {
+            out.write("EVAL "+shard.maxWrongGuesses_+" "+shard.wordLength_+"\n");
+            out.flush();
+            reply = in.readLine();
+            if( reply==null ) throw new IOException("Worker closed the connection");
+          } catch( SocketTimeoutException exc ) {
+            final IOException timeout = new IOException("Worker didn't answer within "+shardTimeoutMillis_+" ms", exc);
+            retry(shard, timeout);
+            throw timeout;
+          } catch( IOException exc ) {
+            retry(shard, exc);
+            throw exc;
+          }
+          final String[] fields = reply.split(" ");
+          if( fields.length==3 && fields[0].equals("RESULT") && fields[1].matches("[0-9]+") && fields[2].matches("[0-9]+") ) {
+            numWords_[shard.settingI_][shard.wordLength_] = Long.parseLong(fields[1]);
+            scoreSums_[shard.settingI_][shard.wordLength_] = Long.parseLong(fields[2]);
+            numUnfinished_.decrementAndGet();
+          } else {
+            retry(shard, new IOException(reply));
+          }
+        }
+        out.write("QUIT\n");
+        out.flush();
+      } catch( IOException exc ) {
+        System.err.println("ShardCoordinator dropped worker "+address+": "+exc);
+      } catch( InterruptedException exc ) {
+        // Evaluation abandoned
+      } finally {
+        try {
+          socket.close();
+        } catch( IOException exc ) {
+          // Closing anyway
+        }
+      }
+    }
+
+    /** Queue a failed shard again, or fail the evaluation. */
+    private void retry(Shard shard, IOException exc) {
+      if( MAX_ATTEMPTS<=++shard.numAttempts_ ) {
+        failure_ = new IOException("Failed "+shard+" "+MAX_ATTEMPTS+" times", exc);
+        return;
+      }
+      numRetried_.increment();
+      queue_.add(shard);
+    }
+  }
+
+  /**
+   * A ShardWorker in a child process, on the loopback interface.
+   */
+  public static class LocalWorker implements Closeable {
+    private final Process process_;
+    private final InetSocketAddress address_;
+
+    private LocalWorker(Process process, InetSocketAddress address) {
+      process_ = process;
+      address_ = address;
+    }
+
+    public InetSocketAddress getAddress() { return address_; }
+
+    /** Kill the worker process. */
+    public void close() {
+      process_.destroy();
+    }
+  }
+
+  /**
+   * Launch a ShardWorker process with this JVM's class path, which
+   * exits when this JVM does.
+   *
+   * @param parallelism number of threads scoring each shard
+   * @throws IOException if the process can't be started or didn't
+   * start serving
+   */
+  public static LocalWorker launchLocalWorker(int parallelism) throws IOException {
+    final List<String> command = new ArrayList<String>();
+    command.add(System.getProperty("java.home")+File.separator+"bin"+File.separator+"java");
+    if( ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent() ) command.add("--add-modules=jdk.incubator.vector");
+    if( System.getProperty("hangman.vector")!=null ) command.add("-Dhangman.vector="+System.getProperty("hangman.vector"));
+    command.add("-D"+ShardWorker.PARENT_PID_PROPERTY+"="+ProcessHandle.current().pid());
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(ShardWorker.class.getName());
+    command.add("0");
+    command.add(String.valueOf(parallelism));
+    final Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    try {
+      final BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII));
+      final String line = out.readLine();
+      if( line==null || !line.startsWith("Serving shards on ") ) throw new IOException("ShardWorker didn't start: "+line);
+      final int port = Integer.parseInt(line.substring(line.lastIndexOf(':')+1));
+      return new LocalWorker(process, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    } catch( IOException exc ) {
+      process.destroy();
+      throw exc;
+    } catch( RuntimeException exc ) {
+      process.destroy();
+      throw exc;
+    }
+  }
+
+  /**
+   * Score words.txt with each maxWrongGuesses over ShardWorkers,
+   * displaying the average scores.
+   *
+   * @param args GUESSES, a comma separated list of maxWrongGuesses
+   * (default: Play.DEFAULT_NUM_GUESSES), WORKERS, either a number of
+   * local worker processes to launch or a comma separated list of
+   * host:port of running workers (default: 2), and THREADS per local
+   * worker (default: number of processors over number of workers)
+   */
+  public static void main(String[] args) throws Exception {
+    final String[] guessesSpecs = ((args.length>0) ? args[0] : String.valueOf(Play.DEFAULT_NUM_GUESSES)).split(",");
+    final int[] maxWrongGuesses = new int[guessesSpecs.length];
+    for( int settingI = 0; settingI<guessesSpecs.length; ++settingI ) {
+      maxWrongGuesses[settingI] = Integer.parseInt(guessesSpecs[settingI].trim());
+    }
+    final String workersSpec = (args.length>1) ? args[1] : "2";
+
+    final List<LocalWorker> localWorkers = new ArrayList<LocalWorker>();
+    final List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+    try {
+      if( workersSpec.matches("[0-9]+") ) {
+        final int numWorkers = Integer.parseInt(workersSpec);
+        final int parallelism = (args.length>2) ? Integer.parseInt(args[2])
+          : Math.max(1, Runtime.getRuntime().availableProcessors()/numWorkers);
+        for( int workerI = 0; workerI<numWorkers; ++workerI ) {
+          final LocalWorker worker = launchLocalWorker(parallelism);
+          localWorkers.add(worker);
+          addresses.add(worker.getAddress());
+        }
+      } else {
+        for( String addressI : workersSpec.split(",") ) {
+          final int colon = addressI.lastIndexOf(':');
+          addresses.add(new InetSocketAddress(addressI.substring(0, colon), Integer.parseInt(addressI.substring(colon+1))));
+        }
+      }
+      System.out.println("Scoring on "+addresses.size()+" workers: "+addresses);
+      System.out.println(new ShardCoordinator(Dictionary.loadDefault(), addresses).evaluate(maxWrongGuesses));
+    } finally {
+      for( LocalWorker workerI : localWorkers ) workerI.close();
+    }
+  }
+}
@@ -0,0 +1,223 @@
+package hangman;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TCP server scoring shards of a dictionary for a ShardCoordinator.
+ *
+ * A shard is the words of one length, played with one
+ * maxWrongGuesses. The worker scores it exactly with a
+ * TreeEvaluator over its own dictionary, which must be the
+ * coordinator's.
+ *
+ * The protocol is line based text, like GameServer's. On connecting,
+ * the worker sends "READY n digest", n being its dictionary's number
+ * of words and digest its Dictionary.getDigest(), so that the
+ * coordinator can check it has the same. Then, one reply line per
+ * request line:
+ *
+ *   EVAL g len    score the words of length len with maxWrongGuesses
+ *                 g, answered with "RESULT numWords scoreSum"
+ *   QUIT          end the session
+ *
+ * A failed request is answered with "ERROR message", and the session
+ * goes on. Each session runs on its own thread, so a worker serves
+ * several coordinators at once.
+ */
+public class ShardWorker {
+  /**
+   * System property of a process id. A worker started by main exits
+   * when that process does, so that workers a coordinator launched
+   * don't outlive it.
+   */
+  public static final String PARENT_PID_PROPERTY = "hangman.shard.parentPid";
+
+  private final StrategyFactory strategyFactory_;
+  private final int parallelism_;
+  // Sent on connecting, computed once since it reads every word
+  private final String ready_;
+  private final ServerSocket serverSocket_;
+  private final ExecutorService sessionExecutor_;
+  private final Thread acceptThread_;
+  // Open session sockets, to close on close()
+  private final Set<Socket> sessionSockets_ = ConcurrentHashMap.newKeySet();
+  private final LongAdder shardCount_ = new LongAdder();
+  private volatile boolean closed_;
+
+  /**
+   * Start serving on the loopback interface.
+   *
+   * @param strategyFactory creates the strategies, over the dictionary
+   * to score
+   * @param parallelism number of threads scoring each shard
+   * @param port port to listen on, or 0 for any free port
+   * @throws IOException if the port can't be listened on
+   */
+  public ShardWorker(StrategyFactory strategyFactory, int parallelism, int port) throws IOException {
+    this(strategyFactory, parallelism, port, InetAddress.getLoopbackAddress());
+  }
+
+  /**
+   * Start serving on an interface, for coordinators on other hosts.
+   *
+   * @param bindAddress address of the interface to listen on
+   * @throws IOException if the port can't be listened on
+   */
+  public ShardWorker(StrategyFactory strategyFactory, int parallelism, int port, InetAddress bindAddress)
+    throws IOException
+  {
+    if( parallelism<1 ) throw new IllegalArgumentException("parallelism must be positive but got "+parallelism);
+    strategyFactory_ = strategyFactory;
+    parallelism_ = parallelism;
+    ready_ = "READY "+strategyFactory.getDictionary().size()+" "+strategyFactory.getDictionary().getDigest();
+    serverSocket_ = new ServerSocket(port, 64, bindAddress);
+    sessionExecutor_ = GameServer.newSessionExecutor("hangman-shard");
+    acceptThread_ = new Thread(new Runnable() {
+        public void run() {
+          acceptSessions();
+        }
+      }, "hangman-shard-accept");
+    acceptThread_.setDaemon(true);
+    acceptThread_.start();
+  }
+
+  /** @return the port the worker listens on */
+  public int getPort() {
+    return serverSocket_.getLocalPort();
+  }
+
+  /** @return number of shards scored so far */
+  public long getShardCount() {
+    return shardCount_.sum();
+  }
+
+  /** Stop accepting sessions and end the open ones. */
+  public void close() throws IOException {
+    closed_ = true;
+    serverSocket_.close();
+    for( Socket socketI : sessionSockets_ ) {
+      try {
+        socketI.close();
+      } catch( IOException exc ) {
+        // Closing anyway
+      }
+    }
+    sessionExecutor_.shutdownNow();
+  }
+
+  private void acceptSessions() {
+    while( !closed_ ) {
+      final Socket socket;
+      try {
+        socket = serverSocket_.accept();
+      } catch( IOException exc ) {
+        if( !closed_ ) System.err.println("ShardWorker stopped accepting: "+exc);
+        return;
+      }
+      sessionSockets_.add(socket);
+      sessionExecutor_.execute(new Session(socket));
+    }
+  }
+
+  /** One coordinator connection, scoring its shards. */
+  private class Session implements Runnable {
+    private final Socket socket_;
+
+    Session(Socket socket) {
+      socket_ = socket;
+    }
+
+    public void run() {
+      try {
+        socket_.setTcpNoDelay(true);
+        final BufferedReader in
+          = new BufferedReader(new InputStreamReader(socket_.getInputStream(), StandardCharsets.US_ASCII));
+        final Writer out
+          = new BufferedWriter(new OutputStreamWriter(socket_.getOutputStream(), StandardCharsets.US_ASCII));
+        out.write(ready_+"\n");
+        out.flush();
+        String line;
+        while( (line = in.readLine())!=null ) {
+          if( line.equals("QUIT") ) break;
+          out.write(handle(line));
+          out.write('\n');
+          out.flush();
+        }
+      } catch( SocketException exc ) {
+        // Coordinator went away, or the worker is closing
+      } catch( IOException exc ) {
+        if( !closed_ ) System.err.println("ShardWorker session failed: "+exc);
+      } finally {
+        sessionSockets_.remove(socket_);
+        try {
+          socket_.close();
+        } catch( IOException exc ) {
+          // Closing anyway
+        }
+      }
+    }
+
+    /** @return reply to the request line */
+    private String handle(String line) {
+      final String[] args = line.trim().split(" +");
+      if( !(args[0].equals("EVAL") && args.length==3) ) return "ERROR Unknown request: "+line;
+      try {
+        final int maxWrongGuesses = Integer.parseInt(args[1]);
+        final int wordLength = Integer.parseInt(args[2]);
+        final ParallelEvaluator.Result result
+          = new TreeEvaluator(strategyFactory_, maxWrongGuesses, parallelism_).evaluate(wordLength);
+        shardCount_.increment();
+        return "RESULT "+result.getNumGames()+" "+result.getScoreSum();
+      } catch( NumberFormatException exc ) {
+        return "ERROR "+exc.getMessage();
+      } catch( NullGuessException exc ) {
+        return "ERROR "+exc.getMessage();
+      }
+    }
+  }
+
+  /**
+   * Score shards with the bundled dictionary until killed, or until the
+   * process of PARENT_PID_PROPERTY exits.
+   *
+   * Prints "Serving shards on host:port" once listening.
+   *
+   * @param args optionally the port (default: 0, any free port),
+   * THREADS per shard (default: number of processors) and the address
+   * to listen on (default: the loopback address)
+   */
+  public static void main(String[] args) throws Exception {
+    final int port = args.length>0 ? Integer.parseInt(args[0]) : 0;
+    final int parallelism = args.length>1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    final InetAddress bindAddress = args.length>2 ? InetAddress.getByName(args[2]) : InetAddress.getLoopbackAddress();
+    final String parentPid = System.getProperty(PARENT_PID_PROPERTY);
+    if( parentPid!=null ) {
+      final Optional<ProcessHandle> parent = ProcessHandle.of(Long.parseLong(parentPid));
+      if( !parent.isPresent() ) System.exit(1);
+      parent.get().onExit().thenRun(new Runnable() {
+          public void run() {
+            System.exit(1);
+          }
+        });
+    }
+    final ShardWorker worker = new ShardWorker(new StrategyFactory(Dictionary.loadDefault()), parallelism, port, bindAddress);
+    System.out.println("Serving shards on "+bindAddress.getHostAddress()+":"+worker.getPort());
+    System.out.flush();
+    worker.acceptThread_.join();
+  }
+}
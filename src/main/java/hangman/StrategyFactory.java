@@ -0,0 +1,112 @@
+package hangman;
+
+/**
+ * Creates a StrategyImpl per game over a shared Dictionary.
+ *
+ * Creating a strategy is cheap: it starts from the Dictionary's
+ * length bucket as is, rather than scanning the dictionary. The
+ * factory is thread safe, so one instance can serve games on any
+ * number of threads. The strategies it creates are not; use one per
+ * game.
+ *
+ * Optionally, the strategies share a DecisionCache, so that a game
+ * state reached by an earlier game is decided without filtering
+ * candidates again. The strategies decide with the factory's
+ * StrategyParameters, by default StrategyParameters.DEFAULT.
+ *
+ * Optionally, the strategies are SearchStrategies, searching states
+ * of few candidates over a shared TranspositionTable. Their decisions
+ * are cached apart from those of strategies searching with other
+ * limits or not at all, so one DecisionCache serves any factories.
+ */
+public class StrategyFactory {
+  private final Dictionary dictionary_;
+  private final StrategyParameters parameters_;
+  private final DecisionCache decisionCache_;
+  private final int searchCandidates_;
+  private final SearchStrategy.TranspositionTable searchTable_;
+
+  public StrategyFactory(Dictionary dictionary) {
+    this(dictionary, StrategyParameters.DEFAULT, null);
+  }
+
+  /**
+   * @param dictionary dictionary shared between games
+   * @param decisionCacheSize most decisions for the strategies to
+   * share in a DecisionCache
+   */
+  public StrategyFactory(Dictionary dictionary, int decisionCacheSize) {
+    this(dictionary, StrategyParameters.DEFAULT, new DecisionCache(decisionCacheSize));
+  }
+
+  /**
+   * @param dictionary dictionary shared between games
+   * @param parameters the constants the strategies decide with
+   * @param decisionCache cache for dictionary, possibly shared with
+   * factories of other parameters, or null not to cache
+   */
+  public StrategyFactory(Dictionary dictionary, StrategyParameters parameters, DecisionCache decisionCache) {
+    this(dictionary, parameters, decisionCache, 0, null);
+  }
+
+  /**
+   * @param searchCandidates most candidates the strategies search
+   * with, or 0 for StrategyImpls
+   * @param searchTable table for dictionary, possibly shared with
+   * other factories, or null for a new one if searching
+   */
+  public StrategyFactory(Dictionary dictionary, StrategyParameters parameters, DecisionCache decisionCache,
+                         int searchCandidates, SearchStrategy.TranspositionTable searchTable)
+  {
+    if( dictionary==null ) throw new IllegalArgumentException("dictionary must not be null");
+    if( parameters==null ) throw new IllegalArgumentException("parameters must not be null");
+    dictionary_ = dictionary;
+    parameters_ = parameters;
+    decisionCache_ = decisionCache;
+    searchCandidates_ = searchCandidates;
+    searchTable_ = (searchCandidates>0 && searchTable==null)
+      ? new SearchStrategy.TranspositionTable(SearchStrategy.DEFAULT_TABLE_SIZE) : searchTable;
+  }
+
+  /**
+   * @param wordLen length of the word in play for the HangmanGame
+   * @return new strategy for one game
+   */
+  public StrategyImpl newStrategy(int wordLen) {
+    if( searchCandidates_>0 ) {
+      return new SearchStrategy(dictionary_.getBucket(wordLen), parameters_, decisionCache_, searchTable_, searchCandidates_);
+    }
+    return new StrategyImpl(dictionary_.getBucket(wordLen), parameters_, decisionCache_);
+  }
+
+  /**
+   * @param game the game the strategy will play
+   * @return new strategy for the game
+   */
+  public StrategyImpl newStrategy(HangmanGame game) {
+    return newStrategy(game.getSecretWordLength());
+  }
+
+  public Dictionary getDictionary() {
+    return dictionary_;
+  }
+
+  public StrategyParameters getParameters() {
+    return parameters_;
+  }
+
+  /** @return the strategies' shared DecisionCache, or null if none */
+  public DecisionCache getDecisionCache() {
+    return decisionCache_;
+  }
+
+  /** @return most candidates the strategies search with, or 0 if they don't */
+  public int getSearchCandidates() {
+    return searchCandidates_;
+  }
+
+  /** @return the strategies' shared TranspositionTable, or null if they don't search */
+  public SearchStrategy.TranspositionTable getSearchTable() {
+    return searchTable_;
+  }
+}
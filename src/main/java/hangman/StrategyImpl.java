@@ -1,11 +1,8 @@
 package hangman;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Set;
 
 /**
@@ -17,13 +14,25 @@ import java.util.Set;
  * choosing a char is interesting and documented with the chooseChar
  * method.
  *
+ * Candidate words are ids into the dictionary's WordBucket for the
+ * word length, rather than Strings. A single pass over them both
+ * filters out words contradicting the game and counts the words
+ * containing each letter. While candidates are many, that pass works
+ * on a bitset of them with the bucket's PositionIndex. Once they are
+ * few, it scans their ids using the bucket's precomputed letter
+ * masks. The bucket may be in the heap or in a memory-mapped
+ * PackedDictionary; the strategy doesn't depend on which. With a
+ * countErrorBound in its StrategyParameters, the bitset pass only
+ * filters, and letters are counted on a sample of the candidates.
+ *
  * The strategy earns an average HangmanGame score of
  * 7.222350230414746 as measured by 'rake brute STEP_SIZE=100'. Note
  * however, an alternative implementation was tried which earned an
  * average score of 7.194700460829493 but ran 70% slower and made the
  * code slightly more complex. I did one run of 'rake brute
  * STEP_SIZE=1' and earned an average score of 7.454730909530972 in
- * 220m29.628s runtime.
+ * 220m29.628s runtime. 'rake exact' now computes that average in
+ * seconds, with a TreeEvaluator.
  *
  * That alternate implementation had CharStats determine the word
  * count for each char (as it does now) and the char's overall count
@@ -40,11 +49,87 @@ import java.util.Set;
  * case.
  */
 public class StrategyImpl implements GuessingStrategy {
-  private List<String> candidateWords_;
   private static final int A_ASCII_CODE = (int)'A';
   private static final int Z_ASCII_CODE = (int)'Z';
   private static final int NUM_LETTERS = Z_ASCII_CODE-A_ASCII_CODE+1;
 
+  // Switch from candidateBits_ to candidateIds_ once there are fewer
+  // candidates than this many per block of candidateBits_. Measured
+  // fastest of 1, 2, 4, 8 and 16, playing every 200th dictionary word.
+  private static final int IDS_PER_BLOCK_THRESHOLD = 4;
+
+  // Least stride through the candidate words to estimate letter word
+  // counts with. A denser sample costs about as much as the kernel's
+  // exact count of whole blocks, when that uses SIMD.
+  private static final int MIN_COUNT_STRIDE = 64;
+
+  /// Deadline tiers, see nextGuess(HangmanGame, long)
+  // Candidates sampled for the sampled tier. Only sets of more than
+  // twice as many are sampled, since filtering fewer costs about the
+  // same.
+  static final int SAMPLE_WORDS = 256;
+  // Estimated cost of filtering, in nanoseconds per block of
+  // candidateBits_ and per element of candidateIds_, as exponentially
+  // weighted averages of the full tier's measurements. Shared by all
+  // strategies, since the costs depend on the machine rather than the
+  // game. Racing updates only lose a measurement. Measurements are
+  // capped at MAX_COST_FACTOR times the initial cost, so that a GC
+  // pause can't push the estimates beyond every budget and keep the
+  // full tier from ever being measured again.
+  private static final double INITIAL_BLOCK_NANOS = 32.0;
+  private static final double INITIAL_ID_NANOS = 8.0;
+  private static final double MAX_COST_FACTOR = 4.0;
+  private static final double COST_WEIGHT = 1.0/8.0;
+  // Building a bucket's PositionIndex, per char of its words
+  private static final double INDEX_NANOS_PER_CHAR = 5.0;
+  private static volatile double blockNanos_ = INITIAL_BLOCK_NANOS;
+  private static volatile double idNanos_ = INITIAL_ID_NANOS;
+
+  private final WordBucket bucket_;
+  private final StrategyParameters parameters_;
+  // The candidate words, as ids into bucket_. While they are many,
+  // they're a bitset over word ids in candidateBits_. Once few, they
+  // are the first numCandidates_ elements of candidateIds_, in
+  // dictionary order, and candidateBits_ is null. Before the first
+  // updateCandidateWords, both are null, meaning every word of
+  // bucket_ is a candidate. That way a new strategy costs nothing per
+  // word.
+  private long[] candidateBits_;
+  private int[] candidateIds_;
+  private int numCandidates_;
+  // Whether the candidate arrays are shared with decisionCache_, in
+  // which case they're copied rather than modified in place.
+  private boolean candidatesShared_;
+  // Decisions shared between games, possibly played with other
+  // parameters, or null if not caching
+  private final DecisionCache decisionCache_;
+  // Number of candidate words containing each not yet guessed
+  // letter, as counted by the last updateCandidateWords. Indexed by
+  // letter, 'A' at 0.
+  private final int[] letterWordCounts_ = new int[NUM_LETTERS];
+  // Whether letterWordCounts_ are estimated from a sample of the
+  // candidates, and the least candidates sampled for the estimate to
+  // be within the parameters' countErrorBound, or 0 to count exactly
+  private boolean countsEstimated_;
+  private final int countSampleWords_;
+  // The game state the candidates were last filtered against: its
+  // pattern, and the letter mask of its incorrect letters. Each
+  // updateCandidateWords only filters by what the game revealed since,
+  // typically one letter's positions or one incorrect letter.
+  private final char[] filteredPattern_;
+  private int filteredIncorrectMask_;
+  // Scratch space for updateCandidateWords: the positions newly
+  // revealed in the game's word and the chars revealed there.
+  private final int[] revealedPositions_;
+  private final char[] revealedChars_;
+  private final long[][] revealedBits_;
+  // How the last guess was decided, and the candidates it was decided
+  // on, for StrategyMetrics and GuessEvent
+  private StrategyMetrics.Branch branch_;
+  private int numFilteredCandidates_;
+  // Scratch for the sampled tier
+  private int[] sampleIds_;
+
   /**
    * Statistics on each valid character of the HangmanGame.
    *
@@ -70,24 +155,16 @@ public class StrategyImpl implements GuessingStrategy {
     /**
      * Initialize char statistics based on the info from the game.
      *
-     * Those already guessed are set to -1, others to 0.
+     * Those already guessed are set to -1, others to their count in
+     * letterWordCounts.
+     *
+     * @param guessedMask HangmanGame letter mask of the guessed chars
      */
-    public CharStats(Set<Character> correctChars,
-                     Set<Character> incorrectChars)
+    public CharStats(int guessedMask, int[] letterWordCounts)
     {
-      // Since the inputed chars come from outside StrategyImpl, verify
-      // they're valid values.
-      for( Character charI : correctChars ) {
-        if( charI<A_ASCII_CODE || Z_ASCII_CODE<charI ) {
-          throw new IllegalArgumentException("Expected char in [A-Z] but got "+charI+" instead.");
-        }
-        charWordCounts_[code2Index(charI)] = -1;
-      }
-      for( Character charI : incorrectChars ) {
-        if( charI<A_ASCII_CODE || Z_ASCII_CODE<charI ) {
-          throw new IllegalArgumentException("Expected char in [A-Z] but got "+charI+" instead.");
-        }
-        charWordCounts_[code2Index(charI)] = -1;
+      System.arraycopy(letterWordCounts, 0, charWordCounts_, 0, NUM_LETTERS);
+      for( int mask = guessedMask & WordBucket.ALL_LETTERS_MASK; mask!=0; mask &= mask-1 ) {
+        charWordCounts_[Integer.numberOfTrailingZeros(mask)] = -1;
       }
     }
 
@@ -104,59 +181,480 @@ public class StrategyImpl implements GuessingStrategy {
     }
 
     public int getWordCount(int charCode) { return charWordCounts_[code2Index(charCode)]; }
-    public void incrementWordCount(int charCode) { charWordCounts_[code2Index(charCode)] += 1; }
   }
 
   /**
    * Create strategy, filtering the dictionary InputStream for words
    * of the specified length.
    *
+   * This reads the whole dictionary, so it suits playing a single
+   * game. To play many, load a Dictionary once and create strategies
+   * with a StrategyFactory.
+   *
    * @param wordLen length of the word in play for the HangmanGame
    * @param dictionary InputStream of words constituting the dictionary
    * @throws IOException
    */
   public StrategyImpl(int wordLen, InputStream dictionary) throws IOException {
-    candidateWords_ = new LinkedList<String>();
-    final BufferedReader dictReader = new BufferedReader(new InputStreamReader(dictionary));
-    String line;
-    while( (line = dictReader.readLine())!=null ) {
-      if( line.length()==wordLen ) candidateWords_.add(line.toUpperCase());
-    }
+    this(Dictionary.load(dictionary), wordLen);
   }
 
   /**
-   * Create a new candidateWords_ with a subset of elements of the
-   * former candidateWords_, based on updated information from the
-   * game.
+   * Create strategy over the words of the specified length in a
+   * shared dictionary.
+   *
+   * The dictionary's length bucket becomes the initial candidate
+   * words without being copied.
+   *
+   * @param dictionary dictionary shared between games
+   * @param wordLen length of the word in play for the HangmanGame
    */
-  private void updateCandidateWords(HangmanGame game) {
-    final List<String> newCandidates = new LinkedList<String>();
-    final String gameWord = game.getGuessedSoFar();
-    final Set<Character> incorrectChars = game.getIncorrectlyGuessedLetters();
-    for( String wordI : candidateWords_ ) {
-      assert wordI.length()==gameWord.length();
-      boolean wordMatches = true; // Until proven otherwise
-      // Iterate over each char of the wordI and gameWord
-      for( int charI = 0; charI<gameWord.length(); ++charI ) {
-        if( incorrectChars.contains(wordI.charAt(charI)) ) {
-          wordMatches = false;
-          break;
-        }
+  public StrategyImpl(Dictionary dictionary, int wordLen) {
+    this(dictionary, wordLen, StrategyParameters.DEFAULT);
+  }
+
+  /**
+   * Create strategy over the words of the specified length in a
+   * shared dictionary, sharing decisions with other games through a
+   * DecisionCache.
+   *
+   * @param dictionary dictionary shared between games
+   * @param wordLen length of the word in play for the HangmanGame
+   * @param decisionCache cache for dictionary, or null not to cache
+   */
+  StrategyImpl(Dictionary dictionary, int wordLen, DecisionCache decisionCache) {
+    this(dictionary.getBucket(wordLen), StrategyParameters.DEFAULT, decisionCache);
+  }
+
+  /**
+   * Create strategy over the words of the specified length in a
+   * shared dictionary, deciding with other than the default
+   * parameters.
+   *
+   * @param dictionary dictionary shared between games
+   * @param wordLen length of the word in play for the HangmanGame
+   * @param parameters the constants deciding guesses
+   */
+  public StrategyImpl(Dictionary dictionary, int wordLen, StrategyParameters parameters) {
+    this(dictionary.getBucket(wordLen), parameters, null);
+  }
+
+  StrategyImpl(WordBucket bucket, DecisionCache decisionCache) {
+    this(bucket, StrategyParameters.DEFAULT, decisionCache);
+  }
 
-        if( gameWord.charAt(charI)==HangmanGame.MYSTERY_LETTER ) {
-          continue;
+  StrategyImpl(WordBucket bucket, StrategyParameters parameters, DecisionCache decisionCache) {
+    if( parameters==null ) throw new IllegalArgumentException("parameters must not be null");
+    decisionCache_ = decisionCache;
+    parameters_ = parameters;
+    // A proportion estimated from n independent words has a standard
+    // error of at most 1/(2*sqrt(n)), so 1/bound^2 words put it within
+    // the bound with 95% confidence. The sample takes one word of each
+    // run of stride candidates in dictionary order, which stratifies
+    // it and so makes it no less precise than independent words.
+    // Words next to each other in dictionary order share letters, so
+    // the sample mustn't take runs of them, as whole blocks would.
+    final double countErrorBound = parameters_.getCountErrorBound();
+    countSampleWords_ = (countErrorBound==0.0) ? 0
+      : (int)Math.min(Integer.MAX_VALUE/2, Math.ceil(1.0/(countErrorBound*countErrorBound)));
+    bucket_ = bucket;
+    numCandidates_ = bucket_.size();
+    filteredPattern_ = new char[bucket_.getWordLength()];
+    Arrays.fill(filteredPattern_, HangmanGame.MYSTERY_LETTER);
+    revealedPositions_ = new int[bucket_.getWordLength()];
+    revealedChars_ = new char[bucket_.getWordLength()];
+    revealedBits_ = new long[bucket_.getWordLength()][];
+  }
+
+  /**
+   * Copy this strategy, as if the copy had made the same guesses in a
+   * game of its own.
+   *
+   * This lets a strategy's decisions be explored for every outcome of
+   * a guess without replaying the game from the start. Candidates are
+   * shared until either strategy filters them.
+   */
+  StrategyImpl copy() {
+    return copyTo(new StrategyImpl(bucket_, parameters_, decisionCache_));
+  }
+
+  /**
+   * Give copy this strategy's candidates and filtered state, for
+   * copy() of subclasses.
+   *
+   * @param copy new strategy over the same bucket
+   * @return copy
+   */
+  StrategyImpl copyTo(StrategyImpl copy) {
+    copy.candidateBits_ = candidateBits_;
+    copy.candidateIds_ = candidateIds_;
+    copy.numCandidates_ = numCandidates_;
+    System.arraycopy(filteredPattern_, 0, copy.filteredPattern_, 0, filteredPattern_.length);
+    copy.filteredIncorrectMask_ = filteredIncorrectMask_;
+    copy.candidatesShared_ = true;
+    candidatesShared_ = true;
+    return copy;
+  }
+
+  WordBucket getBucket() {
+    return bucket_;
+  }
+
+  /**
+   * @return what, besides the StrategyParameters, decides this
+   * strategy's guesses, telling its cached decisions from those of
+   * other strategies sharing the DecisionCache. Subclasses guessing
+   * otherwise must return their own.
+   */
+  String getDecisionKind() {
+    return "impl";
+  }
+
+  /**
+   * @return whether the guess just chosen may be cached, for
+   * subclasses whose guesses depend on more than the game state
+   */
+  boolean isGuessCacheable() {
+    return true;
+  }
+
+  DecisionCache getDecisionCache() {
+    return decisionCache_;
+  }
+
+  public StrategyParameters getParameters() {
+    return parameters_;
+  }
+
+  /** @return number of candidate words, as of the last update */
+  int getNumCandidates() {
+    return numCandidates_;
+  }
+
+  /**
+   * Copy the candidate word ids, in dictionary order, whether they're
+   * held as a bitset or as ids.
+   *
+   * @param ids receives getNumCandidates() ids
+   */
+  void copyCandidateIds(int[] ids) {
+    if( candidateIds_!=null ) {
+      System.arraycopy(candidateIds_, 0, ids, 0, numCandidates_);
+    } else if( candidateBits_!=null ) {
+      int numIds = 0;
+      for( int blockI = 0; blockI<candidateBits_.length; ++blockI ) {
+        for( long bits = candidateBits_[blockI]; bits!=0; bits &= bits-1 ) {
+          ids[numIds++] = (blockI<<6)+Long.numberOfTrailingZeros(bits);
         }
+      }
+    } else {
+      for( int wordI = 0; wordI<numCandidates_; ++wordI ) ids[wordI] = wordI;
+    }
+  }
+
+  /** @return how the last guess was decided */
+  StrategyMetrics.Branch getBranch() {
+    return branch_;
+  }
+
+  /** For subclasses deciding differently from chooseChar */
+  void setBranch(StrategyMetrics.Branch branch) {
+    branch_ = branch;
+  }
+
+  /**
+   * Narrow the candidate words based on updated information from the
+   * game, and count the remaining candidates containing each letter.
+   *
+   * A candidate remains if it has none of the incorrectly guessed
+   * chars and matches the game's word at the revealed positions.
+   *
+   * The candidates already passed that test for the game state of the
+   * last update, so only what changed since is checked: the positions
+   * revealed since and the incorrect chars guessed since. If the game
+   * contradicts the last state, for instance a revealed position was
+   * hidden again, the candidates are reset to the whole bucket and
+   * checked against the full state.
+   *
+   * With a countErrorBound, while the candidates are bits and at least
+   * MIN_COUNT_STRIDE times the words needed for a sample, letters are
+   * counted on every stride-th candidate word only, and the counts
+   * scaled up to all candidates. chooseChar counts exactly after all
+   * if the estimates can't tell its choice from the next best.
+   *
+   * Package-private so that benchmarks can time it alone.
+   */
+  void updateCandidateWords(HangmanGame game) {
+    final CharSequence gameWord = game.getPattern();
+    final int wordLen = bucket_.getWordLength();
+    if( gameWord.length()!=wordLen ) {
+      throw new IllegalArgumentException("Expected game word of length "+wordLen+" but got "+gameWord);
+    }
+    final int incorrectMask = game.getIncorrectLetterMask();
+    final int unguessedMask = WordBucket.ALL_LETTERS_MASK & ~(incorrectMask | game.getCorrectLetterMask());
+
+    if( !isFilteredStateOf(gameWord, incorrectMask) ) resetCandidates();
+
+    /// Gather what the game revealed since the last update
+    int numRevealed = 0;
+    int revealedMask = 0;
+    for( int charI = 0; charI<wordLen; ++charI ) {
+      final char gameChar = gameWord.charAt(charI);
+      if( gameChar!=HangmanGame.MYSTERY_LETTER && filteredPattern_[charI]==HangmanGame.MYSTERY_LETTER ) {
+        revealedPositions_[numRevealed] = charI;
+        revealedChars_[numRevealed] = gameChar;
+        revealedMask |= WordBucket.letterBit(gameChar);
+        ++numRevealed;
+        filteredPattern_[charI] = gameChar;
+      }
+    }
+    // Incorrect chars outside [A-Z] share OTHER_CHAR_BIT, so a new one
+    // can't be told from an old one. Those are checked every time.
+    final int newIncorrectMask = (incorrectMask & ~filteredIncorrectMask_) | (incorrectMask & WordBucket.OTHER_CHAR_BIT);
+    filteredIncorrectMask_ = incorrectMask;
 
-        if( wordI.charAt(charI)!=gameWord.charAt(charI) )
-        {
-          wordMatches = false;
-          break;
+    Arrays.fill(letterWordCounts_, 0);
+    countsEstimated_ = false;
+    // The PositionIndex only knows of [A-Z]
+    if( candidateIds_==null && ((revealedMask|newIncorrectMask) & WordBucket.OTHER_CHAR_BIT)==0 ) {
+      final PositionIndex index = bucket_.getIndex();
+      final long[] newBits = (candidateBits_==null || candidatesShared_) ? new long[index.getNumBlocks()] : candidateBits_;
+      if( countSampleWords_==0 || numCandidates_<MIN_COUNT_STRIDE*countSampleWords_ ) {
+        numCandidates_ = index.filterAndCount(candidateBits_, newBits,
+                                              revealedPositions_, revealedChars_, numRevealed,
+                                              newIncorrectMask, unguessedMask, letterWordCounts_,
+                                              revealedBits_);
+        candidateBits_ = newBits;
+      } else {
+        numCandidates_ = index.filter(candidateBits_, newBits,
+                                      revealedPositions_, revealedChars_, numRevealed,
+                                      newIncorrectMask, revealedBits_);
+        candidateBits_ = newBits;
+        // Filtering may have left too few candidates to sample
+        final int stride = numCandidates_/countSampleWords_;
+        countLetters(unguessedMask, (MIN_COUNT_STRIDE<=stride) ? stride : 1);
+      }
+      candidatesShared_ = false;
+      if( numCandidates_<index.getNumBlocks()*IDS_PER_BLOCK_THRESHOLD ) {
+        candidateIds_ = index.toIds(candidateBits_, numCandidates_);
+        candidateBits_ = null;
+      }
+      return;
+    }
+
+    if( candidateIds_==null ) {
+      candidateIds_ = bucket_.getIndex().toIds(candidateBits_, numCandidates_);
+      candidateBits_ = null;
+    } else if( candidatesShared_ ) {
+      candidateIds_ = Arrays.copyOf(candidateIds_, numCandidates_);
+    }
+    candidatesShared_ = false;
+    // Only needed for incorrect chars outside [A-Z], which the letter
+    // masks don't tell apart.
+    final Set<Character> incorrectChars
+      = ((newIncorrectMask & WordBucket.OTHER_CHAR_BIT)==0) ? null : game.getIncorrectlyGuessedLetters();
+    filterCandidateIds(numRevealed, incorrectChars, newIncorrectMask, unguessedMask);
+  }
+
+  /**
+   * @return whether the game state follows from the one the
+   * candidates were last filtered against: every position revealed
+   * then still has its char, and every incorrect letter then is still
+   * incorrect
+   */
+  private boolean isFilteredStateOf(CharSequence gameWord, int incorrectMask) {
+    if( (filteredIncorrectMask_ & ~incorrectMask)!=0 ) return false;
+    for( int charI = 0; charI<filteredPattern_.length; ++charI ) {
+      if( filteredPattern_[charI]!=HangmanGame.MYSTERY_LETTER && filteredPattern_[charI]!=gameWord.charAt(charI) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Make every word of the bucket a candidate again. */
+  private void resetCandidates() {
+    candidateBits_ = null;
+    candidateIds_ = null;
+    numCandidates_ = bucket_.size();
+    candidatesShared_ = false;
+    Arrays.fill(filteredPattern_, HangmanGame.MYSTERY_LETTER);
+    filteredIncorrectMask_ = 0;
+  }
+
+  /**
+   * Filter candidateIds_ and count letters in one pass, compacting
+   * candidateIds_ in place.
+   *
+   * @param numRevealed number of elements used in revealedPositions_
+   * and revealedChars_
+   * @param incorrectChars incorrectly guessed chars, or null if
+   * incorrectMask doesn't have OTHER_CHAR_BIT
+   * @param incorrectMask letter mask of the incorrect chars to filter
+   * by. If it has OTHER_CHAR_BIT, words are checked for all of
+   * incorrectChars outside [A-Z].
+   * @param unguessedMask letter mask of the letters to count
+   */
+  private void filterCandidateIds(int numRevealed, Set<Character> incorrectChars,
+                                  int incorrectMask, int unguessedMask)
+  {
+    int newCount = 0;
+    for( int candI = 0; candI<numCandidates_; ++candI ) {
+      final int wordId = candidateIds_[candI];
+      final int letterMask = bucket_.getLetterMask(wordId);
+      if( (letterMask & incorrectMask)!=0
+          && ((letterMask & incorrectMask & WordBucket.ALL_LETTERS_MASK)!=0
+              || containsAny(wordId, incorrectChars)) )
+      {
+        continue;
+      }
+      if( !bucket_.matches(wordId, revealedPositions_, revealedChars_, numRevealed) ) continue;
+
+      candidateIds_[newCount++] = wordId;
+      for( int countMask = letterMask & unguessedMask; countMask!=0; countMask &= countMask-1 ) {
+        ++letterWordCounts_[Integer.numberOfTrailingZeros(countMask)];
+      }
+    }
+    numCandidates_ = newCount;
+  }
+
+  /**
+   * Count the candidates containing each letter of countMask into
+   * letterWordCounts_, from every stride-th candidate word in
+   * dictionary order, whether they're held as a bitset or as ids,
+   * scaled up to all candidates. Counts exactly if stride is 1.
+   */
+  private void countLetters(int countMask, int stride) {
+    Arrays.fill(letterWordCounts_, 0);
+    int numCounted = 0;
+    if( candidateIds_==null && stride==1 ) {
+      // Filtering by nothing counts with the kernel, which may use SIMD
+      final PositionIndex index = bucket_.getIndex();
+      final long[] newBits = (candidateBits_==null || candidatesShared_) ? new long[index.getNumBlocks()] : candidateBits_;
+      numCounted = index.filterAndCount(candidateBits_, newBits, revealedPositions_, revealedChars_, 0,
+                                        0, countMask, letterWordCounts_, revealedBits_);
+      candidateBits_ = newBits;
+      candidatesShared_ = false;
+    } else if( candidateIds_==null ) {
+      // Candidates in the blocks before blockI, and the next to count
+      int numBefore = 0;
+      int nextCandI = 0;
+      for( int blockI = 0; blockI<candidateBits_.length; ++blockI ) {
+        final long blockBits = candidateBits_[blockI];
+        final int numInBlock = Long.bitCount(blockBits);
+        for( ; nextCandI<numBefore+numInBlock; nextCandI += stride ) {
+          long bits = blockBits;
+          for( int skipI = nextCandI-numBefore; 0<skipI; --skipI ) bits &= bits-1;
+          final int wordId = (blockI<<6)+Long.numberOfTrailingZeros(bits);
+          for( int mask = bucket_.getLetterMask(wordId) & countMask; mask!=0; mask &= mask-1 ) {
+            ++letterWordCounts_[Integer.numberOfTrailingZeros(mask)];
+          }
+          ++numCounted;
         }
+        numBefore += numInBlock;
       }
-      if(wordMatches) newCandidates.add(wordI);
+    } else {
+      for( int candI = 0; candI<numCandidates_; candI += stride ) {
+        for( int mask = bucket_.getLetterMask(candidateIds_[candI]) & countMask; mask!=0; mask &= mask-1 ) {
+          ++letterWordCounts_[Integer.numberOfTrailingZeros(mask)];
+        }
+        ++numCounted;
+      }
+    }
+    countsEstimated_ = numCounted!=numCandidates_;
+    if( !countsEstimated_ ) return;
+    final double scale = (double)numCandidates_/(double)numCounted;
+    for( int letterI = 0; letterI<NUM_LETTERS; ++letterI ) {
+      letterWordCounts_[letterI] = (int)Math.round(letterWordCounts_[letterI]*scale);
+    }
+  }
+
+  /**
+   * @return whether estimated letter word counts within the
+   * countErrorBound would still have chooseChar choose chosenChar, by
+   * the branch_ it chose it by
+   */
+  private boolean isSeparated(HangmanGame game, char chosenChar) {
+    // Both of two counts compared may be off by the bound
+    final double margin = 2.0*parameters_.getCountErrorBound()*numCandidates_;
+    final double reductionPoint = parameters_.getReductionProportion()*numCandidates_;
+    final int chosenCount = letterWordCounts_[chosenChar-A_ASCII_CODE];
+    final int unguessedMask = WordBucket.ALL_LETTERS_MASK & ~(game.getCorrectLetterMask() | game.getIncorrectLetterMask());
+    for( int mask = unguessedMask & ~WordBucket.letterBit(chosenChar); mask!=0; mask &= mask-1 ) {
+      final int count = letterWordCounts_[Integer.numberOfTrailingZeros(mask)];
+      final double gap = (branch_==StrategyMetrics.Branch.REDUCTION_CHAR)
+        ? Math.abs(reductionPoint-count)-Math.abs(reductionPoint-chosenCount)
+        : chosenCount-count;
+      if( gap<=margin ) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Whether the word has any of the chars, checked char by char. Only
+   * needed for chars outside [A-Z], which letter masks don't
+   * distinguish.
+   */
+  private boolean containsAny(int wordId, Set<Character> chars) {
+    for( int charI = 0; charI<bucket_.getWordLength(); ++charI ) {
+      if( chars.contains(bucket_.getChar(wordId, charI)) ) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Remove the first candidate word, taking the candidates as ids if
+   * they're bits or shared.
+   *
+   * @return the removed word
+   */
+  private String removeFirstCandidate() {
+    takeCandidateIds();
+    return removeCandidateAt(0);
+  }
+
+  /**
+   * Remove a candidate word, for subclasses guessing it.
+   *
+   * @param wordId id of a candidate
+   * @return the removed word
+   */
+  String removeCandidate(int wordId) {
+    takeCandidateIds();
+    int candI = 0;
+    while( candidateIds_[candI]!=wordId ) ++candI;
+    return removeCandidateAt(candI);
+  }
+
+  /** Hold the candidates as ids of this strategy's own. */
+  private void takeCandidateIds() {
+    if( candidateIds_==null ) {
+      candidateIds_ = bucket_.getIndex().toIds(candidateBits_, numCandidates_);
+      candidateBits_ = null;
+    } else if( candidatesShared_ ) {
+      candidateIds_ = Arrays.copyOf(candidateIds_, numCandidates_);
     }
+    candidatesShared_ = false;
+  }
+
+  private String removeCandidateAt(int candI) {
+    final String word = bucket_.getWord(candidateIds_[candI]);
+    System.arraycopy(candidateIds_, candI+1, candidateIds_, candI, numCandidates_-candI-1);
+    --numCandidates_;
+    return word;
+  }
 
-    candidateWords_ = newCandidates;
+  /**
+   * Decide the guess otherwise than by the word guess threshold and
+   * chooseChar, for subclasses. Called with the candidates filtered,
+   * and at least one left. A word guessed must be removed from the
+   * candidates with removeCandidate, and branch_ set with setBranch.
+   *
+   * @param hasDeadline whether to decide by deadlineNanos
+   * @return the guess, or null to decide as StrategyImpl does
+   */
+  Guess searchGuess(HangmanGame game, boolean hasDeadline, long deadlineNanos) {
+    return null;
   }
 
   /**
@@ -195,11 +693,12 @@ public class StrategyImpl implements GuessingStrategy {
    * additional words based on the revealed positions of the
    * characters. IOW, more useful information is revealed. So a
    * proportion a bit above 50% would be better. reductionProportion
-   * is precisely this value and was tuned
-   * experimentally using:
+   * is precisely this value, taken from the StrategyParameters. The
+   * default was tuned experimentally using:
    *   rake brute STEP_SIZE=100
-   * which computes average scores on 1% of the dictionary. (The Rakefile
-   * documents the Rake build target further.)
+   * which computes average scores on 1% of the dictionary, and 'rake
+   * tune' sweeps it. (The Rakefile documents the Rake build targets
+   * further.)
    *
    * The final matter is quantifying when the wrong guesses remaining
    * are sufficient to choose reductionChar over highestChar. Since
@@ -207,15 +706,11 @@ public class StrategyImpl implements GuessingStrategy {
    * half on average, we compare the log base 2 of the remaining
    * candidate words to the wrong guesses remaining.
    */
-  private char chooseChar(HangmanGame game, CharStats charStats)
+  private char chooseChar(HangmanGame game, CharStats charStats, int numCandidates)
   {
-    // See method documentation for details about this variable.
-    //
-    // Selected score measurements (rake brute STEP_SIZE=100):
-    //   reductionProportion = 0.61: 7.23963133640553
-    //   reductionProportion = 0.62: 7.222350230414746
-    //   reductionProportion = 0.63: 7.235023041474655
-    final double reductionProportion = 0.62;
+    // See method documentation for details about this variable, and
+    // StrategyParameters.DEFAULT for measurements.
+    final double reductionProportion = parameters_.getReductionProportion();
     int reductionChar = Z_ASCII_CODE;
     int highestChar = Z_ASCII_CODE;
     // Measured better average scores when breaking ties in favor of
@@ -226,7 +721,7 @@ public class StrategyImpl implements GuessingStrategy {
         highestChar = charI;
       }
 
-      final double reductionPoint = reductionProportion*(double)candidateWords_.size();
+      final double reductionPoint = reductionProportion*(double)numCandidates;
       final double charI_fromReductionPoint = Math.abs(reductionPoint-charStats.getWordCount(charI));
       final double reductionChar_fromReductionPoint = Math.abs(reductionPoint-charStats.getWordCount(reductionChar));
       // Choose the one closest to reductionPoint
@@ -251,60 +746,364 @@ public class StrategyImpl implements GuessingStrategy {
     // Floor of log base 2 of the number of candidate words estimates
     // guesses left if candidates could be halved for all subsequent
     // guesses.
-    final int wordsLg = 31 - Integer.numberOfLeadingZeros(candidateWords_.size());
+    final int wordsLg = 31 - Integer.numberOfLeadingZeros(numCandidates);
     if( wordsLg<=game.numWrongGuessesRemaining() )
     {
+      branch_ = StrategyMetrics.Branch.REDUCTION_CHAR;
       return (char)reductionChar;
     }
+    branch_ = StrategyMetrics.Branch.HIGHEST_CHAR;
     return (char)highestChar;
   }
 
+  /**
+   * Choose the char (letter) to use given the game status and the
+   * letter frequencies counted by the last updateCandidateWords.
+   *
+   * Package-private so that benchmarks can time it alone, and
+   * subclasses can choose differently.
+   */
+  char chooseChar(HangmanGame game) {
+    final char chosenChar = chooseChar(game, numCandidates_);
+    if( !countsEstimated_ || isSeparated(game, chosenChar) ) return chosenChar;
+    countLetters(WordBucket.ALL_LETTERS_MASK & ~(game.getCorrectLetterMask() | game.getIncorrectLetterMask()), 1);
+    return chooseChar(game, numCandidates_);
+  }
+
+  /**
+   * Choose the char as chooseChar(HangmanGame) does, for numCandidates
+   * candidates with the letter word counts in letterWordCounts_.
+   */
+  private char chooseChar(HangmanGame game, int numCandidates) {
+    final int guessedMask = game.getCorrectLetterMask() | game.getIncorrectLetterMask();
+    // Since the guessed chars come from outside StrategyImpl, verify
+    // they're valid values.
+    if( (guessedMask & HangmanGame.OTHER_LETTERS_BIT)!=0 ) {
+      throw new IllegalArgumentException("Expected chars in [A-Z] but got "+game.getAllGuessedLetters()+" instead.");
+    }
+    final CharStats charStats = new CharStats(guessedMask, letterWordCounts_);
+    final char chosenChar = chooseChar(game, charStats, numCandidates);
+
+    // Useful for debugging, so keeping it around
+    // System.out.println("chosenChar="+chosenChar
+    //                    +" number candidates: "+numCandidates_
+    //                    +" wrongs left: "+game.numWrongGuessesRemaining()
+    //                    +" charStats="+charStats.toString());
+
+    return chosenChar;
+  }
+
   /**
    * Determine the next guess of this strategy implementation of the
    * HangmanGame.
    *
+   * The decision is recorded as a GuessEvent if JDK Flight Recorder
+   * is recording those, and in StrategyMetrics if it's ENABLED. If
+   * neither, nothing is recorded and the clock isn't read.
+   *
    * @param game
    */
   public Guess nextGuess(HangmanGame game) {
+    return nextGuess(game, false, 0);
+  }
+
+  /**
+   * Determine the next guess, within a latency budget.
+   *
+   * The guess is decided by the first of these tiers that applies:
+   *   - CACHED: the decision cached for the game state, if the
+   *     strategy has a DecisionCache
+   *   - FULL: filtering the candidates and counting letters, as
+   *     nextGuess(HangmanGame) does, if its estimated cost fits
+   *     before the deadline
+   *   - SAMPLED: counting letters on SAMPLE_WORDS of the candidates,
+   *     without filtering them, and choosing a letter from the counts
+   *     scaled up. The cost is about that of filtering SAMPLE_WORDS
+   *     candidates. The next full tier filters by what the game
+   *     revealed meanwhile, so nothing is lost but the guess's
+   *     quality.
+   * The sampled tier doesn't apply to fewer than 2*SAMPLE_WORDS
+   * candidates, nor when no sampled candidate fits the game, so those
+   * take the full tier whatever the deadline. Word guesses are only
+   * made by the full tier.
+   *
+   * The full tier's cost is estimated from its measured cost per
+   * block or candidate id filtered. Where the bucket's PositionIndex
+   * isn't built yet, building it is estimated too, and if that
+   * doesn't fit, the index is built in the background for later
+   * guesses. That way the first game of a word length doesn't pay
+   * for the index's build.
+   *
+   * The tiers used are counted in StrategyMetrics, whether or not
+   * it's ENABLED.
+   *
+   * @param deadlineNanos System.nanoTime() by which to have decided
+   */
+  public Guess nextGuess(HangmanGame game, long deadlineNanos) {
+    return nextGuess(game, true, deadlineNanos);
+  }
+
+  /** Decide the next guess, by deadlineNanos if hasDeadline, and record it. */
+  private Guess nextGuess(HangmanGame game, boolean hasDeadline, long deadlineNanos) {
+    final GuessEvent event = new GuessEvent();
+    if( !StrategyMetrics.ENABLED && !event.isEnabled() ) {
+      return hasDeadline ? decideGuessBy(game, deadlineNanos) : decideGuess(game);
+    }
+
+    final int candidatesBefore = numCandidates_;
+    event.begin();
+    final long startNanos = System.nanoTime();
+    final Guess guess = hasDeadline ? decideGuessBy(game, deadlineNanos) : decideGuess(game);
+    final long nanos = System.nanoTime()-startNanos;
+    event.end();
+    if( event.shouldCommit() ) {
+      event.wordLength = bucket_.getWordLength();
+      event.guessesMade = Integer.bitCount(game.getCorrectLetterMask() | game.getIncorrectLetterMask())
+        +game.numIncorrectlyGuessedWords();
+      event.wrongGuessesRemaining = game.numWrongGuessesRemaining();
+      event.candidatesBefore = candidatesBefore;
+      event.candidatesAfter = numFilteredCandidates_;
+      event.branch = branch_.name();
+      event.guess = String.valueOf(guess);
+      event.commit();
+    }
+    if( StrategyMetrics.ENABLED ) {
+      StrategyMetrics.get().recordGuess(bucket_.getWordLength(), nanos, candidatesBefore, numFilteredCandidates_, branch_);
+    }
+    return guess;
+  }
+
+  /**
+   * Decide the next guess, noting how in branch_.
+   *
+   * A decision cached by a strategy with other parameters, or of
+   * another kind, still spares filtering: its candidates and letter
+   * word counts are the same for any strategy, only the guess made
+   * from them differs.
+   */
+  private Guess decideGuess(HangmanGame game) {
+    final GameStateKey stateKey = (decisionCache_==null) ? null : GameStateKey.of(game);
+    if( stateKey!=null ) {
+      final Guess guess = decideCached(game, stateKey, false, 0);
+      if( guess!=null ) return guess;
+    }
+
     updateCandidateWords(game);
+    numFilteredCandidates_ = numCandidates_;
+    return chooseGuess(game, stateKey, false, 0);
+  }
+
+  /** Decide the next guess by tiers, noting how in branch_. */
+  private Guess decideGuessBy(HangmanGame game, long deadlineNanos) {
+    final GameStateKey stateKey = (decisionCache_==null) ? null : GameStateKey.of(game);
+    if( stateKey!=null ) {
+      final Guess guess = decideCached(game, stateKey, true, deadlineNanos);
+      if( guess!=null ) {
+        StrategyMetrics.get().recordTier(StrategyMetrics.Tier.CACHED);
+        return guess;
+      }
+    }
+
+    /// Estimate the full tier's cost, with its work in blocks or ids
+    final long startNanos = System.nanoTime();
+    final boolean indexBuilt = bucket_.isIndexBuilt();
+    final boolean filtersIds = candidateIds_!=null;
+    final int work = filtersIds ? numCandidates_ : (bucket_.size()+63)>>>6;
+    double fullNanos = work*(filtersIds ? idNanos_ : blockNanos_);
+    if( !filtersIds && !indexBuilt ) fullNanos += INDEX_NANOS_PER_CHAR*bucket_.size()*bucket_.getWordLength();
+    if( deadlineNanos-startNanos<fullNanos ) {
+      final Guess guess = chooseSampledGuess(game);
+      if( guess!=null ) {
+        if( !indexBuilt ) bucket_.buildIndexInBackground();
+        StrategyMetrics.get().recordTier(StrategyMetrics.Tier.SAMPLED);
+        return guess;
+      }
+    }
+
+    updateCandidateWords(game);
+    numFilteredCandidates_ = numCandidates_;
+    if( (filtersIds || indexBuilt) && 0<work ) {
+      final double nanos = Math.min(System.nanoTime()-startNanos,
+                                    MAX_COST_FACTOR*work*(filtersIds ? INITIAL_ID_NANOS : INITIAL_BLOCK_NANOS));
+      if( filtersIds ) {
+        idNanos_ += (nanos/work-idNanos_)*COST_WEIGHT;
+      } else {
+        blockNanos_ += (nanos/work-blockNanos_)*COST_WEIGHT;
+      }
+    }
+    StrategyMetrics.get().recordTier(StrategyMetrics.Tier.FULL);
+    return chooseGuess(game, stateKey, true, deadlineNanos);
+  }
+
+  /**
+   * Take the decision cached for the game state, if any.
+   *
+   * A decision cached by a strategy with other parameters, or of
+   * another kind, still spares filtering: its candidates and letter
+   * word counts are the same for any strategy, only the guess made
+   * from them differs.
+   *
+   * @param hasDeadline whether to decide by deadlineNanos
+   * @return the guess, or null if none is cached
+   */
+  private Guess decideCached(HangmanGame game, GameStateKey stateKey, boolean hasDeadline, long deadlineNanos) {
+    final DecisionCache.Decision decision = decisionCache_.get(stateKey);
+    if( decision!=null ) {
+      candidateBits_ = decision.getCandidateBits();
+      candidateIds_ = decision.getCandidateIds();
+      numCandidates_ = decision.getNumCandidates();
+      candidatesShared_ = true;
+      // The cached candidates were filtered against this state
+      for( int charI = 0; charI<filteredPattern_.length; ++charI ) filteredPattern_[charI] = game.getPattern().charAt(charI);
+      filteredIncorrectMask_ = stateKey.getIncorrectMask();
+      numFilteredCandidates_ = numCandidates_;
+      if( decision.getParameters().equals(parameters_) && decision.getKind().equals(getDecisionKind()) ) {
+        branch_ = StrategyMetrics.Branch.CACHED;
+        return decision.getGuess();
+      }
+      countsEstimated_ = false;
+      if( decision.getLetterWordCounts()!=null ) {
+        System.arraycopy(decision.getLetterWordCounts(), 0, letterWordCounts_, 0, NUM_LETTERS);
+      } else {
+        countLetters(WordBucket.ALL_LETTERS_MASK & ~(game.getCorrectLetterMask() | game.getIncorrectLetterMask()), 1);
+      }
+      return chooseGuess(game, stateKey, hasDeadline, deadlineNanos);
+    }
+    return null;
+  }
+
+  /**
+   * Choose a letter from letter word counts estimated on a sample of
+   * the candidates, leaving the candidates as they are.
+   *
+   * The sample is every stride-th candidate, in dictionary order.
+   * Sampled words not fitting the game's state are left out, and the
+   * counts of the others, and their number, are scaled by the
+   * candidates per sampled word.
+   *
+   * @return the guess, or null if the sample can't stand for the
+   * candidates
+   */
+  private Guess chooseSampledGuess(HangmanGame game) {
+    if( numCandidates_<2*SAMPLE_WORDS ) return null;
+    final int incorrectMask = game.getIncorrectLetterMask();
+    final int guessedMask = incorrectMask | game.getCorrectLetterMask();
+    if( (guessedMask & WordBucket.OTHER_CHAR_BIT)!=0 ) return null;
+    final CharSequence gameWord = game.getPattern();
+    int numRevealed = 0;
+    for( int charI = 0; charI<gameWord.length(); ++charI ) {
+      if( gameWord.charAt(charI)==HangmanGame.MYSTERY_LETTER ) continue;
+      revealedPositions_[numRevealed] = charI;
+      revealedChars_[numRevealed] = gameWord.charAt(charI);
+      ++numRevealed;
+    }
+
+    if( sampleIds_==null ) sampleIds_ = new int[SAMPLE_WORDS];
+    final int numSampled = sampleCandidateIds(sampleIds_, numCandidates_/SAMPLE_WORDS);
+    final int unguessedMask = WordBucket.ALL_LETTERS_MASK & ~guessedMask;
+    Arrays.fill(letterWordCounts_, 0);
+    int numFitting = 0;
+    for( int sampleI = 0; sampleI<numSampled; ++sampleI ) {
+      final int wordId = sampleIds_[sampleI];
+      final int letterMask = bucket_.getLetterMask(wordId);
+      if( (letterMask & incorrectMask)!=0 ) continue;
+      if( !bucket_.matches(wordId, revealedPositions_, revealedChars_, numRevealed) ) continue;
+      ++numFitting;
+      for( int countMask = letterMask & unguessedMask; countMask!=0; countMask &= countMask-1 ) {
+        ++letterWordCounts_[Integer.numberOfTrailingZeros(countMask)];
+      }
+    }
+    if( numFitting==0 ) return null;
+
+    final double scale = (double)numCandidates_/(double)numSampled;
+    for( int letterI = 0; letterI<NUM_LETTERS; ++letterI ) {
+      letterWordCounts_[letterI] = (int)Math.round(letterWordCounts_[letterI]*scale);
+    }
+    numFilteredCandidates_ = (int)Math.round(numFitting*scale);
+    final char chosenChar = chooseChar(game, numFilteredCandidates_);
+    branch_ = StrategyMetrics.Branch.SAMPLED_CHAR;
+    return new GuessLetter(chosenChar);
+  }
+
+  /**
+   * Copy every stride-th candidate word id, in dictionary order,
+   * whether they're held as a bitset or as ids.
+   *
+   * @return number of ids copied, at most ids.length
+   */
+  private int sampleCandidateIds(int[] ids, int stride) {
+    int numIds = 0;
+    if( candidateIds_!=null ) {
+      for( int candI = 0; candI<numCandidates_ && numIds<ids.length; candI += stride ) ids[numIds++] = candidateIds_[candI];
+    } else if( candidateBits_==null ) {
+      for( int wordI = 0; wordI<numCandidates_ && numIds<ids.length; wordI += stride ) ids[numIds++] = wordI;
+    } else {
+      // Candidates in the blocks before blockI, and the next to sample
+      int numBefore = 0;
+      int nextCandI = 0;
+      for( int blockI = 0; blockI<candidateBits_.length && numIds<ids.length; ++blockI ) {
+        final long blockBits = candidateBits_[blockI];
+        final int numInBlock = Long.bitCount(blockBits);
+        for( ; nextCandI<numBefore+numInBlock && numIds<ids.length; nextCandI += stride ) {
+          long bits = blockBits;
+          for( int skipI = nextCandI-numBefore; 0<skipI; --skipI ) bits &= bits-1;
+          ids[numIds++] = (blockI<<6)+Long.numberOfTrailingZeros(bits);
+        }
+        numBefore += numInBlock;
+      }
+    }
+    return numIds;
+  }
+
+  /**
+   * Decide the next guess from the filtered candidates, and cache a
+   * letter guess under stateKey if not null.
+   *
+   * @param hasDeadline whether to decide by deadlineNanos
+   */
+  private Guess chooseGuess(HangmanGame game, GameStateKey stateKey, boolean hasDeadline, long deadlineNanos) {
+    if( numCandidates_==0 ) {
+      branch_ = StrategyMetrics.Branch.NO_CANDIDATES;
+      return null;
+    }
+    final Guess searchedGuess = searchGuess(game, hasDeadline, deadlineNanos);
+    if( searchedGuess!=null ) return cache(searchedGuess, stateKey);
 
     /// Once candidates get low, start guessing by words
-    if( candidateWords_.size()==0 ) return null;
     // When there's a small number of words left, the potential for
     // lower score is greater, since guessing a correct word doesn't
     // count for a point but guessing a correct letter does.
     //
     // It's clear that guessing a word when there are 1 or 2 left is
     // best, but 3 was less certain, so I measured it. I used 'rake
-    // brute STEP_SIZE=100'.
-    //   candidateWords_.size()<2: 7.808755760368664
-    //   candidateWords_.size()<3: 7.61671469740634
-    //   candidateWords_.size()<4: 7.774193548387097
-    // NB: Because of tweaks elsewhere in the strategy, these
-    // measurements are not reproducible exactly.
-    if( candidateWords_.size()<3 ) return new GuessWord(candidateWords_.remove(0));
-
-    /// Calculate letter frequencies
-    final CharStats charStats = new CharStats(game.getCorrectlyGuessedLetters(),
-                                              game.getIncorrectlyGuessedLetters());
-    for( int charI = A_ASCII_CODE; charI<=Z_ASCII_CODE; ++charI ) {
-      if( charStats.getWordCount(charI)<0 ) continue;
-      for( String wordI : candidateWords_ ) {
-        if( -1!=wordI.indexOf(charI) )
-        {
-          charStats.incrementWordCount(charI);
-        }
-      }
+    // brute STEP_SIZE=100', see StrategyParameters.DEFAULT. NB:
+    // Because of tweaks elsewhere in the strategy, those measurements
+    // are not reproducible exactly.
+    if( numCandidates_<parameters_.getWordGuessThreshold() ) {
+      branch_ = StrategyMetrics.Branch.WORD;
+      return new GuessWord(removeFirstCandidate());
     }
-    final char chosenChar = chooseChar(game, charStats);
 
-    // Useful for debugging, so keeping it around
-    // System.out.println("chosenChar="+chosenChar
-    //                    +" number candidates: "+candidateWords_.size()
-    //                    +" wrongs left: "+game.numWrongGuessesRemaining()
-    //                    +" charStats="+charStats.toString());
+    return cache(new GuessLetter(chooseChar(game)), stateKey);
+  }
 
-    return new GuessLetter(chosenChar);
+  /**
+   * Cache a letter guess decided from the filtered candidates under
+   * stateKey, if not null and isGuessCacheable().
+   *
+   * @return guess
+   */
+  private Guess cache(Guess guess, GameStateKey stateKey) {
+    // Word guesses aren't cached, since they remove a candidate. They
+    // are made with few candidates anyway, when deciding is cheap.
+    if( stateKey!=null && guess instanceof GuessLetter && isGuessCacheable() ) {
+      // Other parameters only take over exact counts
+      decisionCache_.put(stateKey, new DecisionCache.Decision(guess, candidateBits_, candidateIds_, numCandidates_,
+                                                              countsEstimated_ ? null : letterWordCounts_,
+                                                              parameters_, getDecisionKind()));
+      candidatesShared_ = true;
+    }
+    return guess;
   }
 }
 
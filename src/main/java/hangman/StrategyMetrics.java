@@ -0,0 +1,186 @@
+package hangman;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Registry of counters on the strategy's guesses and the games
+ * played, exposed through JMX as hangman:type=StrategyMetrics.
+ *
+ * Recording is off unless the JVM is started with
+ * -Dhangman.metrics=true. ENABLED is a static final, so when it's off
+ * the JIT drops the recording code, and StrategyImpl doesn't even
+ * read the clock. When on, each guess adds to a few LongAdders, which
+ * threads update without contending.
+ *
+ * Guess time is kept by word length, to tell which lengths cost the
+ * most. The tiers of StrategyImpl's deadline guesses are counted
+ * whether or not ENABLED, since they're few and callers tune their
+ * budgets by them. For the phase of each game, record GuessEvents with JDK
+ * Flight Recorder, which is independent of ENABLED.
+ */
+public class StrategyMetrics implements StrategyMetricsMXBean {
+  /** Whether metrics are recorded, from -Dhangman.metrics */
+  public static final boolean ENABLED = Boolean.getBoolean("hangman.metrics");
+  public static final String OBJECT_NAME = "hangman:type=StrategyMetrics";
+  // Words of this length or longer share the last word length counters
+  static final int MAX_WORD_LENGTH = 32;
+
+  /** How a strategy decided its guess. */
+  public enum Branch {
+    /** Taken from the DecisionCache */
+    CACHED,
+    /** A word, since few candidates were left */
+    WORD,
+    /** chooseChar's char closest to the reduction point */
+    REDUCTION_CHAR,
+    /** chooseChar's char in the most candidates */
+    HIGHEST_CHAR,
+    /** PartitionStrategy's char leaving the fewest candidates expected */
+    PARTITION_CHAR,
+    /** chooseChar's char from a sample of the candidates */
+    SAMPLED_CHAR,
+    /** SearchStrategy's letter or word of least expected score */
+    SEARCH,
+    /** None, since no candidates were left */
+    NO_CANDIDATES
+  }
+
+  /** Tier a strategy decided its guess within a deadline by. */
+  public enum Tier {
+    /** Taken from the DecisionCache */
+    CACHED,
+    /** From a sample of the candidates */
+    SAMPLED,
+    /** From all the candidates */
+    FULL
+  }
+
+  private static final StrategyMetrics INSTANCE = new StrategyMetrics();
+  static {
+    if( ENABLED ) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+      } catch( JMException exc ) {
+        System.err.println("StrategyMetrics not registered with JMX: "+exc);
+      }
+    }
+  }
+
+  private final LongAdder[] guessCounts_ = newAdders(MAX_WORD_LENGTH+1);
+  private final LongAdder[] guessNanos_ = newAdders(MAX_WORD_LENGTH+1);
+  private final LongAdder candidatesBefore_ = new LongAdder();
+  private final LongAdder candidatesAfter_ = new LongAdder();
+  private final LongAdder[] branchCounts_ = newAdders(Branch.values().length);
+  private final LongAdder[] tierCounts_ = newAdders(Tier.values().length);
+  private final LongAdder gamesWon_ = new LongAdder();
+  private final LongAdder gamesLost_ = new LongAdder();
+  private final LongAdder scoreSum_ = new LongAdder();
+
+  private static LongAdder[] newAdders(int num) {
+    final LongAdder[] adders = new LongAdder[num];
+    for( int adderI = 0; adderI<num; ++adderI ) adders[adderI] = new LongAdder();
+    return adders;
+  }
+
+  StrategyMetrics() {}
+
+  /** @return the registry all recording goes to */
+  public static StrategyMetrics get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Record a guess decided by a strategy.
+   *
+   * @param nanos time taken to decide
+   * @param candidatesBefore candidate words before filtering
+   * @param candidatesAfter candidate words after filtering
+   */
+  void recordGuess(int wordLen, long nanos, int candidatesBefore, int candidatesAfter, Branch branch) {
+    final int lenI = Math.min(wordLen, MAX_WORD_LENGTH);
+    guessCounts_[lenI].increment();
+    guessNanos_[lenI].add(nanos);
+    candidatesBefore_.add(candidatesBefore);
+    candidatesAfter_.add(candidatesAfter);
+    branchCounts_[branch.ordinal()].increment();
+  }
+
+  /** Record the tier of a guess decided within a deadline. */
+  void recordTier(Tier tier) {
+    tierCounts_[tier.ordinal()].increment();
+  }
+
+  /**
+   * Record a game ending, both as a GameEvent and, if ENABLED, in the
+   * registry.
+   *
+   * @param game a game that is over
+   */
+  public static void recordGame(HangmanGame game) {
+    final GameEvent event = new GameEvent();
+    if( event.shouldCommit() ) {
+      event.wordLength = game.getSecretWordLength();
+      event.status = game.gameStatus().name();
+      event.score = game.currentScore();
+      event.wrongGuesses = game.numWrongGuessesMade();
+      event.commit();
+    }
+    if( ENABLED ) {
+      final LongAdder outcome = (game.gameStatus()==HangmanGame.Status.GAME_WON) ? INSTANCE.gamesWon_ : INSTANCE.gamesLost_;
+      outcome.increment();
+      INSTANCE.scoreSum_.add(game.currentScore());
+    }
+  }
+
+  private static long[] sums(LongAdder[] adders) {
+    final long[] sums = new long[adders.length];
+    for( int adderI = 0; adderI<adders.length; ++adderI ) sums[adderI] = adders[adderI].sum();
+    return sums;
+  }
+
+  private static long total(LongAdder[] adders) {
+    long total = 0;
+    for( LongAdder adderI : adders ) total += adderI.sum();
+    return total;
+  }
+
+  public long getGuessCount() { return total(guessCounts_); }
+  public long getGuessNanos() { return total(guessNanos_); }
+  public long[] getGuessCountByWordLength() { return sums(guessCounts_); }
+  public long[] getGuessNanosByWordLength() { return sums(guessNanos_); }
+  public long getCandidatesBefore() { return candidatesBefore_.sum(); }
+  public long getCandidatesAfter() { return candidatesAfter_.sum(); }
+  public long getCachedGuessCount() { return branchCounts_[Branch.CACHED.ordinal()].sum(); }
+  public long getWordGuessCount() { return branchCounts_[Branch.WORD.ordinal()].sum(); }
+  public long getReductionCharCount() { return branchCounts_[Branch.REDUCTION_CHAR.ordinal()].sum(); }
+  public long getHighestCharCount() { return branchCounts_[Branch.HIGHEST_CHAR.ordinal()].sum(); }
+  public long getPartitionCharCount() { return branchCounts_[Branch.PARTITION_CHAR.ordinal()].sum(); }
+  public long getSampledCharCount() { return branchCounts_[Branch.SAMPLED_CHAR.ordinal()].sum(); }
+  public long getSearchGuessCount() { return branchCounts_[Branch.SEARCH.ordinal()].sum(); }
+  public long getCachedTierCount() { return tierCounts_[Tier.CACHED.ordinal()].sum(); }
+  public long getSampledTierCount() { return tierCounts_[Tier.SAMPLED.ordinal()].sum(); }
+  public long getFullTierCount() { return tierCounts_[Tier.FULL.ordinal()].sum(); }
+  public long getGameCount() { return gamesWon_.sum()+gamesLost_.sum(); }
+  public long getGamesWon() { return gamesWon_.sum(); }
+  public long getGamesLost() { return gamesLost_.sum(); }
+
+  public double getAverageScore() {
+    final long gameCount = getGameCount();
+    return (gameCount==0) ? 0 : (double)scoreSum_.sum()/(double)gameCount;
+  }
+
+  public void reset() {
+    for( LongAdder adderI : guessCounts_ ) adderI.reset();
+    for( LongAdder adderI : guessNanos_ ) adderI.reset();
+    for( LongAdder adderI : branchCounts_ ) adderI.reset();
+    for( LongAdder adderI : tierCounts_ ) adderI.reset();
+    candidatesBefore_.reset();
+    candidatesAfter_.reset();
+    gamesWon_.reset();
+    gamesLost_.reset();
+    scoreSum_.reset();
+  }
+}
@@ -0,0 +1,48 @@
+package hangman;
+
+/**
+ * JMX view of StrategyMetrics. Counts are since the JVM started or
+ * the last reset.
+ */
+public interface StrategyMetricsMXBean {
+  /** @return guesses decided by strategies */
+  long getGuessCount();
+  /** @return nanoseconds spent deciding guesses */
+  long getGuessNanos();
+  /** @return guesses decided, indexed by word length */
+  long[] getGuessCountByWordLength();
+  /** @return nanoseconds spent deciding guesses, indexed by word length */
+  long[] getGuessNanosByWordLength();
+  /** @return sum over guesses of the candidate words before filtering */
+  long getCandidatesBefore();
+  /** @return sum over guesses of the candidate words after filtering */
+  long getCandidatesAfter();
+  /** @return guesses taken from the DecisionCache */
+  long getCachedGuessCount();
+  /** @return word guesses */
+  long getWordGuessCount();
+  /** @return letter guesses that were chooseChar's reductionChar */
+  long getReductionCharCount();
+  /** @return letter guesses that were chooseChar's highestChar */
+  long getHighestCharCount();
+  /** @return letter guesses chosen by PartitionStrategy's partitions */
+  long getPartitionCharCount();
+  /** @return letter guesses chosen from a sample of the candidates */
+  long getSampledCharCount();
+  /** @return guesses chosen by SearchStrategy's search */
+  long getSearchGuessCount();
+  /** @return deadline guesses taken from the DecisionCache */
+  long getCachedTierCount();
+  /** @return deadline guesses decided from a sample of the candidates */
+  long getSampledTierCount();
+  /** @return deadline guesses decided from all the candidates */
+  long getFullTierCount();
+  /** @return games played to their end */
+  long getGameCount();
+  long getGamesWon();
+  long getGamesLost();
+  /** @return average score of the games played, or 0 if none */
+  double getAverageScore();
+  /** Zero all counts. */
+  void reset();
+}
@@ -0,0 +1,98 @@
+package hangman;
+
+/**
+ * The tunable constants of StrategyImpl's decisions.
+ *
+ *   - reductionProportion: share of the candidate words the
+ *     reductionChar should be in. See StrategyImpl.chooseChar.
+ *   - wordGuessThreshold: words are guessed once there are fewer
+ *     candidates than this, rather than letters.
+ *   - countErrorBound: error allowed in estimating letter word counts
+ *     from a sample of the candidate words, as a proportion of the
+ *     candidates, with 95% confidence, or 0 to always count exactly.
+ *     See StrategyImpl.updateCandidateWords.
+ *
+ * DEFAULT holds the values tuned by hand with 'rake brute
+ * STEP_SIZE=100'. StrategyTuner scores others. Instances are
+ * immutable.
+ */
+public final class StrategyParameters {
+  /**
+   * Selected score measurements (rake brute STEP_SIZE=100):
+   *   reductionProportion = 0.61: 7.23963133640553
+   *   reductionProportion = 0.62: 7.222350230414746
+   *   reductionProportion = 0.63: 7.235023041474655
+   * and, at the time:
+   *   wordGuessThreshold = 2: 7.808755760368664
+   *   wordGuessThreshold = 3: 7.61671469740634
+   *   wordGuessThreshold = 4: 7.774193548387097
+   * countErrorBound, with the others at their defaults (rake exact
+   * COUNT_ERROR=...):
+   *   0, 0.01, 0.02, 0.05, 0.1, 0.2: 7.454730909530972
+   * Estimates are checked against the bound before being trusted, and
+   * the bound holds with 95% confidence for each estimate, so scores
+   * rarely change. Sampling whole blocks of dictionary order instead,
+   * whose words share letters, had scored 7.4865469172299735 at 0.1.
+   * Counting exactly is the default, since with the SIMD kernel the
+   * savings are small.
+   */
+  public static final StrategyParameters DEFAULT = new StrategyParameters(0.62, 3);
+
+  private final double reductionProportion_;
+  private final int wordGuessThreshold_;
+  private final double countErrorBound_;
+
+  /**
+   * Parameters counting letters exactly.
+   *
+   * @param reductionProportion in (0, 1]
+   * @param wordGuessThreshold at least 1. 1 never guesses words.
+   */
+  public StrategyParameters(double reductionProportion, int wordGuessThreshold) {
+    this(reductionProportion, wordGuessThreshold, 0.0);
+  }
+
+  /**
+   * @param reductionProportion in (0, 1]
+   * @param wordGuessThreshold at least 1. 1 never guesses words.
+   * @param countErrorBound in [0, 1). 0 counts exactly.
+   */
+  public StrategyParameters(double reductionProportion, int wordGuessThreshold, double countErrorBound) {
+    if( !(0.0<reductionProportion && reductionProportion<=1.0) ) {
+      throw new IllegalArgumentException("reductionProportion must be in (0, 1] but got "+reductionProportion);
+    }
+    if( wordGuessThreshold<1 ) {
+      throw new IllegalArgumentException("wordGuessThreshold must be positive but got "+wordGuessThreshold);
+    }
+    if( !(0.0<=countErrorBound && countErrorBound<1.0) ) {
+      throw new IllegalArgumentException("countErrorBound must be in [0, 1) but got "+countErrorBound);
+    }
+    reductionProportion_ = reductionProportion;
+    wordGuessThreshold_ = wordGuessThreshold;
+    countErrorBound_ = countErrorBound;
+  }
+
+  public double getReductionProportion() { return reductionProportion_; }
+  public int getWordGuessThreshold() { return wordGuessThreshold_; }
+  public double getCountErrorBound() { return countErrorBound_; }
+
+  @Override
+  public boolean equals(Object other) {
+    if( !(other instanceof StrategyParameters) ) return false;
+    final StrategyParameters otherParameters = (StrategyParameters)other;
+    return reductionProportion_==otherParameters.reductionProportion_
+      && wordGuessThreshold_==otherParameters.wordGuessThreshold_
+      && countErrorBound_==otherParameters.countErrorBound_;
+  }
+
+  @Override
+  public int hashCode() {
+    return (Double.hashCode(reductionProportion_)*31+wordGuessThreshold_)*31+Double.hashCode(countErrorBound_);
+  }
+
+  @Override
+  public String toString() {
+    return "reductionProportion="+reductionProportion_+", wordGuessThreshold="+wordGuessThreshold_
+      +((countErrorBound_==0.0) ? "" : ", countErrorBound="+countErrorBound_);
+  }
+}
@@ -0,0 +1,214 @@
+package hangman;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Scores grids of StrategyParameters on the same words, in parallel.
+ *
+ * Each configuration plays the words with a BatchEvaluator, so that
+ * games in identical states are decided once per configuration. The
+ * configurations share the Dictionary and a DecisionCache: a game
+ * state reached under several configurations has its candidates
+ * filtered once, and only its guess decided per configuration. The
+ * opening states, with the most candidates to filter, are typically
+ * reached under all of them.
+ *
+ * Every configuration and word length is a task on a ForkJoinPool.
+ * Scores are integers summed per task, so results don't depend on the
+ * parallelism or on what was cached.
+ */
+public class StrategyTuner {
+  /** Default most decisions kept in the shared DecisionCache. */
+  public static final int DEFAULT_DECISION_CACHE_SIZE = 1<<20;
+
+  private final Dictionary dictionary_;
+  private final int maxWrongGuesses_;
+  private final int parallelism_;
+  private final DecisionCache decisionCache_;
+
+  /**
+   * Score of one configuration.
+   */
+  public static class Result {
+    private final StrategyParameters parameters_;
+    private final int numGames_;
+    private final long scoreSum_;
+
+    Result(StrategyParameters parameters, int numGames, long scoreSum) {
+      parameters_ = parameters;
+      numGames_ = numGames;
+      scoreSum_ = scoreSum;
+    }
+
+    public StrategyParameters getParameters() { return parameters_; }
+    public int getNumGames() { return numGames_; }
+    public long getScoreSum() { return scoreSum_; }
+    public double getAverageScore() { return (double)scoreSum_/(double)numGames_; }
+  }
+
+  /**
+   * @param dictionary dictionary the words are played with
+   * @param maxWrongGuesses wrong guesses allowed in each game
+   * @param parallelism number of worker threads
+   * @param decisionCacheSize most decisions for all configurations to
+   * share
+   */
+  public StrategyTuner(Dictionary dictionary, int maxWrongGuesses, int parallelism, int decisionCacheSize) {
+    if( parallelism<1 ) throw new IllegalArgumentException("parallelism must be positive but got "+parallelism);
+    dictionary_ = dictionary;
+    maxWrongGuesses_ = maxWrongGuesses;
+    parallelism_ = parallelism;
+    decisionCache_ = new DecisionCache(decisionCacheSize);
+  }
+
+  /** @return the cache shared by the configurations, for its statistics */
+  public DecisionCache getDecisionCache() {
+    return decisionCache_;
+  }
+
+  /**
+   * Play every word with every configuration.
+   *
+   * @param grid configurations to score
+   * @param words secret words to play
+   * @return results, in the order of grid
+   * @throws NullGuessException if a strategy made a null guess in any
+   * game
+   */
+  public List<Result> tune(List<StrategyParameters> grid, List<String> words) throws NullGuessException {
+    /// Split the words by length, so that lengths are played in parallel
+    final List<List<String>> wordsByLength = new ArrayList<List<String>>();
+    for( String wordI : words ) {
+      while( wordsByLength.size()<=wordI.length() ) wordsByLength.add(new ArrayList<String>());
+      wordsByLength.get(wordI.length()).add(wordI);
+    }
+    final List<PlayLength> tasks = new ArrayList<PlayLength>();
+    for( int configI = 0; configI<grid.size(); ++configI ) {
+      final StrategyFactory factory = new StrategyFactory(dictionary_, grid.get(configI), decisionCache_);
+      for( List<String> lengthWordsI : wordsByLength ) {
+        if( !lengthWordsI.isEmpty() ) tasks.add(new PlayLength(configI, factory, lengthWordsI));
+      }
+    }
+
+    final ForkJoinPool pool = new ForkJoinPool(parallelism_);
+    try {
+      pool.invoke(new RecursiveAction() {
+          protected void compute() {
+            invokeAll(tasks);
+          }
+        });
+    } catch( RuntimeException exc ) {
+      // ForkJoinPool may wrap the exception PlayLength threw once more
+      for( Throwable causeI = exc.getCause(); causeI!=null; causeI = causeI.getCause() ) {
+        if( causeI instanceof NullGuessException ) throw (NullGuessException)causeI;
+      }
+      throw exc;
+    } finally {
+      pool.shutdown();
+    }
+
+    final long[] scoreSums = new long[grid.size()];
+    for( PlayLength taskI : tasks ) scoreSums[taskI.configI_] += taskI.scoreSum_;
+    final List<Result> results = new ArrayList<Result>(grid.size());
+    for( int configI = 0; configI<grid.size(); ++configI ) {
+      results.add(new Result(grid.get(configI), words.size(), scoreSums[configI]));
+    }
+    return results;
+  }
+
+  /** Plays the words of one length with one configuration. */
+  private class PlayLength extends RecursiveAction {
+    private final int configI_;
+    private final StrategyFactory factory_;
+    private final List<String> words_;
+    private long scoreSum_;
+
+    PlayLength(int configI, StrategyFactory factory, List<String> words) {
+      configI_ = configI;
+      factory_ = factory;
+      words_ = words;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        scoreSum_ = new BatchEvaluator(factory_, maxWrongGuesses_).evaluate(words_).getScoreSum();
+      } catch( NullGuessException exc ) {
+        throw new RuntimeException("Strategy failed with "+factory_.getParameters(), exc);
+      }
+    }
+  }
+
+  /**
+   * @param spec "from:to:step", or a single value
+   * @return the values from from to to, both included, by step
+   */
+  static List<Double> parseRange(String spec) {
+    final String[] parts = spec.split(":");
+    final double from = Double.parseDouble(parts[0]);
+    final double to = (parts.length>1) ? Double.parseDouble(parts[1]) : from;
+    final double step = (parts.length>2) ? Double.parseDouble(parts[2]) : 1.0;
+    if( !(0.0<step) ) throw new IllegalArgumentException("Expected positive step in "+spec);
+    final List<Double> values = new ArrayList<Double>();
+    // Round to the step's decimals, and allow for rounding at the end
+    for( int stepI = 0; from+stepI*step<=to+step*1e-9; ++stepI ) {
+      values.add(Math.round((from+stepI*step)*1e9)/1e9);
+    }
+    return values;
+  }
+
+  /**
+   * Tune over every STEP_SIZE-th word of words.txt, the same words
+   * as 'rake brute', printing the average score of each
+   * configuration, then the best.
+   *
+   * @param args STEP_SIZE (default: 1), GUESSES (default:
+   * Play.DEFAULT_NUM_GUESSES), reductionProportion range as in
+   * parseRange (default: 0.56:0.68:0.01), wordGuessThreshold range
+   * (default: 2:4) and THREADS (default: number of processors)
+   */
+  public static void main(String[] args) throws Exception {
+    final int stepSize = (args.length>0) ? Integer.parseInt(args[0]) : 1;
+    final int numGuesses = (args.length>1) ? Integer.parseInt(args[1]) : Play.DEFAULT_NUM_GUESSES;
+    final List<Double> proportions = parseRange((args.length>2) ? args[2] : "0.56:0.68:0.01");
+    final List<Double> thresholds = parseRange((args.length>3) ? args[3] : "2:4");
+    final int parallelism = (args.length>4) ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+    final Dictionary dictionary = Dictionary.loadDefault();
+    final List<String> words = new ArrayList<String>();
+    final InputStream resource = StrategyTuner.class.getClassLoader().getResourceAsStream(Dictionary.DEFAULT_RESOURCE);
+    if( resource==null ) throw new IOException("Resource not found on class path: "+Dictionary.DEFAULT_RESOURCE);
+    try {
+      final BufferedReader dictReader = new BufferedReader(new InputStreamReader(resource));
+      String line;
+      for( int lineCount = 0; (line = dictReader.readLine())!=null; ++lineCount ) {
+        if( 0==(lineCount%stepSize) ) words.add(line.toUpperCase());
+      }
+    } finally {
+      resource.close();
+    }
+    final List<StrategyParameters> grid = new ArrayList<StrategyParameters>();
+    for( double thresholdI : thresholds ) {
+      for( double proportionI : proportions ) grid.add(new StrategyParameters(proportionI, (int)thresholdI));
+    }
+
+    final StrategyTuner tuner = new StrategyTuner(dictionary, numGuesses, parallelism, DEFAULT_DECISION_CACHE_SIZE);
+    final long startNanos = System.nanoTime();
+    final List<Result> results = tuner.tune(grid, words);
+    Result best = null;
+    for( Result resultI : results ) {
+      System.out.println(resultI.getParameters()+", average score: "+resultI.getAverageScore());
+      if( best==null || resultI.getScoreSum()<best.getScoreSum() ) best = resultI;
+    }
+    System.out.println("Played "+words.size()+" words with "+grid.size()+" configurations on "+parallelism+" threads"
+                       +" in "+(System.nanoTime()-startNanos)/1000000+" ms, "+tuner.getDecisionCache());
+    if( best!=null ) System.out.println("Best: "+best.getParameters()+", average score: "+best.getAverageScore());
+  }
+}
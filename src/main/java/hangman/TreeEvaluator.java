@@ -0,0 +1,275 @@
+package hangman;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Scores every word of a Dictionary exactly, walking the strategy's
+ * decision tree once per word length.
+ *
+ * For each length, the walk starts from a game standing for all the
+ * words of the length and asks the strategy for its guess. It splits
+ * the words by the outcome the guess would have for them: the
+ * positions a letter would be revealed at, or whether a word is
+ * right. Each split whose game ends scores all its words at once, with
+ * its game's score. Each split still playing is walked in the same
+ * way, with a copy of the strategy. So each game state is decided
+ * once, however many words pass through it, and each word's score is
+ * the score Play.run would give it.
+ *
+ * Where BatchEvaluator plays a list of words breadth first, this
+ * walks depth first over whole buckets. It only holds the states on
+ * the path being walked, and it forks subtrees of at least
+ * FORK_WORDS words to a ForkJoinPool. Words longer than
+ * MAX_WORD_LENGTH are played one at a time with Play.run, since
+ * outcomes are int position masks.
+ */
+public class TreeEvaluator {
+  static final int MAX_WORD_LENGTH = GuessOutcomes.MAX_WORD_LENGTH;
+  // Subtrees of fewer words are walked by the task that found them
+  private static final int FORK_WORDS = 64;
+
+  private final StrategyFactory strategyFactory_;
+  private final int maxWrongGuesses_;
+  private final int parallelism_;
+
+  /**
+   * @param strategyFactory creates the strategies, over the dictionary
+   * to score
+   * @param maxWrongGuesses wrong guesses allowed in each game
+   * @param parallelism number of worker threads
+   */
+  public TreeEvaluator(StrategyFactory strategyFactory, int maxWrongGuesses, int parallelism) {
+    if( parallelism<1 ) throw new IllegalArgumentException("parallelism must be positive but got "+parallelism);
+    strategyFactory_ = strategyFactory;
+    maxWrongGuesses_ = maxWrongGuesses;
+    parallelism_ = parallelism;
+  }
+
+  /**
+   * Score every word of the factory's dictionary.
+   *
+   * @return scores, in order of word length, then of the words in
+   * Dictionary.getWords
+   * @throws NullGuessException if the strategy made a null guess in
+   * any game
+   */
+  public ParallelEvaluator.Result evaluate() throws NullGuessException {
+    final Dictionary dictionary = strategyFactory_.getDictionary();
+    final long startNanos = System.nanoTime();
+    final int[] scores = new int[dictionary.size()];
+    final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+    int lengthOffset = 0;
+    for( int lenI = 0; lenI<=dictionary.getMaxWordLength(); ++lenI ) {
+      final WordBucket bucket = dictionary.getBucket(lenI);
+      addTasks(bucket, scores, lengthOffset, tasks);
+      lengthOffset += bucket.size();
+    }
+    invoke(tasks);
+    return new ParallelEvaluator.Result(scores, System.nanoTime()-startNanos);
+  }
+
+  /**
+   * Score every word of one length of the factory's dictionary.
+   *
+   * @return scores, in the order of Dictionary.getWords(wordLength)
+   * @throws NullGuessException if the strategy made a null guess in
+   * any game
+   */
+  public ParallelEvaluator.Result evaluate(int wordLength) throws NullGuessException {
+    final WordBucket bucket = strategyFactory_.getDictionary().getBucket(wordLength);
+    final long startNanos = System.nanoTime();
+    final int[] scores = new int[bucket.size()];
+    final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+    addTasks(bucket, scores, 0, tasks);
+    invoke(tasks);
+    return new ParallelEvaluator.Result(scores, System.nanoTime()-startNanos);
+  }
+
+  /**
+   * Add the tasks scoring the words of a bucket, or score them if no
+   * guess is needed.
+   *
+   * @param scores receives the score of word id i of bucket at
+   * scoresOffset+i
+   */
+  private void addTasks(WordBucket bucket, int[] scores, int scoresOffset, List<RecursiveAction> tasks) {
+    if( bucket.size()==0 ) return;
+    final int wordLength = bucket.getWordLength();
+    if( MAX_WORD_LENGTH<wordLength ) {
+      tasks.add(new PlayWords(bucket, scores, scoresOffset));
+      return;
+    }
+    final int[] wordIds = new int[bucket.size()];
+    for( int wordI = 0; wordI<wordIds.length; ++wordI ) wordIds[wordI] = wordI;
+    final HangmanGame game = new HangmanGame(bucket.getWord(0), maxWrongGuesses_);
+    final Guess[] path = new Guess[0];
+    if( game.gameStatus()==HangmanGame.Status.KEEP_GUESSING ) {
+      tasks.add(new WalkNode(bucket, scores, scoresOffset, strategyFactory_.newStrategy(wordLength), game, path, wordIds));
+    } else {
+      // Words of no letters to reveal, ie of length 0, are won
+      // before any guess
+      for( int wordI = 0; wordI<wordIds.length; ++wordI ) scores[scoresOffset+wordI] = game.currentScore();
+    }
+  }
+
+  private void invoke(final List<RecursiveAction> tasks) throws NullGuessException {
+    final ForkJoinPool pool = new ForkJoinPool(parallelism_);
+    try {
+      pool.invoke(new RecursiveAction() {
+          protected void compute() {
+            invokeAll(tasks);
+          }
+        });
+    } catch( RuntimeException exc ) {
+      // ForkJoinPool may wrap the exception a task threw once more
+      for( Throwable causeI = exc.getCause(); causeI!=null; causeI = causeI.getCause() ) {
+        if( causeI instanceof NullGuessException ) throw (NullGuessException)causeI;
+      }
+      throw exc;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Walks the subtree of a game state, scoring the words leading to
+   * it.
+   */
+  private class WalkNode extends RecursiveAction {
+    private final WordBucket bucket_;
+    private final int[] scores_;
+    private final int scoresOffset_;
+    private final StrategyImpl strategy_;
+    private final HangmanGame game_;
+    private final Guess[] path_;
+    private final int[] wordIds_;
+
+    /**
+     * @param scores receives the score of word id i of bucket at
+     * scoresOffset+i
+     * @param strategy strategy having made the guesses of path
+     * @param game game for one of wordIds, having had the guesses of
+     * path and still going
+     * @param wordIds ids of the secret words leading to the state
+     */
+    WalkNode(WordBucket bucket, int[] scores, int scoresOffset,
+             StrategyImpl strategy, HangmanGame game, Guess[] path, int[] wordIds)
+    {
+      bucket_ = bucket;
+      scores_ = scores;
+      scoresOffset_ = scoresOffset;
+      strategy_ = strategy;
+      game_ = game;
+      path_ = path;
+      wordIds_ = wordIds;
+    }
+
+    @Override
+    protected void compute() {
+      final Guess guess = strategy_.nextGuess(game_);
+      if( guess==null ) {
+        throw new RuntimeException(new NullGuessException("Strategy made a null guess for word "
+                                                          +bucket_.getWord(wordIds_[0])));
+      }
+
+      /// Split the words by the guess's outcome
+      final long[] outcomeIds = GuessOutcomes.sort(bucket_, wordIds_, guess);
+
+      /// Score the splits whose game ends, walk the others
+      final Guess[] path = Arrays.copyOf(path_, path_.length+1);
+      path[path_.length] = guess;
+      final List<WalkNode> forks = new ArrayList<WalkNode>();
+      final List<WalkNode> walks = new ArrayList<WalkNode>();
+      for( int splitBegin = 0, splitEnd; splitBegin<outcomeIds.length; splitBegin = splitEnd ) {
+        splitEnd = GuessOutcomes.splitEnd(outcomeIds, splitBegin);
+
+        final HangmanGame splitGame
+          = new HangmanGame(bucket_.getWord(GuessOutcomes.id(outcomeIds[splitBegin])), maxWrongGuesses_);
+        for( Guess guessI : path ) guessI.makeGuess(splitGame);
+        if( splitGame.gameStatus()!=HangmanGame.Status.KEEP_GUESSING ) {
+          final int score = splitGame.currentScore();
+          for( int wordI = splitBegin; wordI<splitEnd; ++wordI ) {
+            scores_[scoresOffset_+GuessOutcomes.id(outcomeIds[wordI])] = score;
+          }
+          continue;
+        }
+        final int[] splitIds = GuessOutcomes.ids(outcomeIds, splitBegin, splitEnd);
+        // The strategy is copied before any split's walk moves it on
+        final WalkNode child = new WalkNode(bucket_, scores_, scoresOffset_, strategy_.copy(), splitGame, path, splitIds);
+        if( FORK_WORDS<=splitIds.length ) {
+          forks.add(child);
+        } else {
+          walks.add(child);
+        }
+      }
+      for( WalkNode forkI : forks ) forkI.fork();
+      for( WalkNode walkI : walks ) walkI.compute();
+      for( WalkNode forkI : forks ) forkI.join();
+    }
+  }
+
+  /** Plays the words of a bucket one at a time. */
+  private class PlayWords extends RecursiveAction {
+    private final WordBucket bucket_;
+    private final int[] scores_;
+    private final int scoresOffset_;
+
+    PlayWords(WordBucket bucket, int[] scores, int scoresOffset) {
+      bucket_ = bucket;
+      scores_ = scores;
+      scoresOffset_ = scoresOffset;
+    }
+
+    @Override
+    protected void compute() {
+      for( int wordI = 0; wordI<bucket_.size(); ++wordI ) {
+        try {
+          scores_[scoresOffset_+wordI] = Play.run(new HangmanGame(bucket_.getWord(wordI), maxWrongGuesses_),
+                                                  strategyFactory_.newStrategy(bucket_.getWordLength()),
+                                                  false);
+        } catch( NullGuessException exc ) {
+          throw new RuntimeException("Strategy failed on word "+bucket_.getWord(wordI), exc);
+        }
+      }
+    }
+  }
+
+  /**
+   * Score every word of words.txt, displaying the average score per
+   * word length and overall.
+   *
+   * @param args optionally GUESSES (default: Play.DEFAULT_NUM_GUESSES),
+   * THREADS (default: number of processors), COUNT_ERROR, the
+   * StrategyParameters countErrorBound (default: 0, exact) and SEARCH,
+   * the most candidates SearchStrategy searches with (default: 0, not
+   * searching)
+   */
+  public static void main(String[] args) throws Exception {
+    final int numGuesses = (args.length>0) ? Integer.parseInt(args[0]) : Play.DEFAULT_NUM_GUESSES;
+    final int parallelism = (args.length>1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    final double countErrorBound = (args.length>2) ? Double.parseDouble(args[2]) : 0.0;
+    final int searchCandidates = (args.length>3) ? Integer.parseInt(args[3]) : 0;
+    final StrategyParameters parameters
+      = new StrategyParameters(StrategyParameters.DEFAULT.getReductionProportion(),
+                               StrategyParameters.DEFAULT.getWordGuessThreshold(), countErrorBound);
+    final Dictionary dictionary = Dictionary.loadDefault();
+    final ParallelEvaluator.Result result
+      = new TreeEvaluator(new StrategyFactory(dictionary, parameters, null, searchCandidates, null), numGuesses, parallelism)
+      .evaluate();
+    int gameI = 0;
+    for( int lenI = 0; lenI<=dictionary.getMaxWordLength(); ++lenI ) {
+      final int numWords = dictionary.getWords(lenI).size();
+      if( numWords==0 ) continue;
+      long scoreSum = 0;
+      for( int wordI = 0; wordI<numWords; ++wordI ) scoreSum += result.getScore(gameI++);
+      System.out.println("Length "+lenI+": "+numWords+" words, average score: "+(double)scoreSum/(double)numWords);
+    }
+    System.out.println("Scored "+result.getNumGames()+" words on "+parallelism+" threads"
+                       +" in "+result.getElapsedNanos()/1000000+" ms"
+                       +", average score: "+result.getAverageScore());
+  }
+}
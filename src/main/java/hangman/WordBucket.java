@@ -0,0 +1,124 @@
+package hangman;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The words of one length from a Dictionary, in a form suited to fast
+ * candidate filtering.
+ *
+ * A word is referred to by its id, which is its index in the bucket,
+ * so ids follow dictionary order. For each word, the bucket gives:
+ *   - its chars, by position
+ *   - a letter mask, with bit i set if the word contains the letter
+ *     'A'+i
+ *   - the word as a String, for guessing it
+ *
+ * ArrayWordBucket holds the words in heap arrays, PackedWordBucket
+ * reads them from a memory-mapped PackedDictionary file.
+ *
+ * Chars outside [A-Z] may be in an ArrayWordBucket's words, but only
+ * OTHER_CHAR_BIT in the letter mask records their presence.
+ *
+ * Instances are immutable, apart from building their PositionIndex
+ * on first use, and safe to share between threads.
+ */
+abstract class WordBucket {
+  static final int NUM_LETTERS = 26;
+  /** Bits for the letters [A-Z] in a letter mask. */
+  static final int ALL_LETTERS_MASK = (1<<NUM_LETTERS)-1;
+  /**
+   * Letter mask bit set when the word has a char outside [A-Z]. The
+   * same as in HangmanGame's letter masks.
+   */
+  static final int OTHER_CHAR_BIT = HangmanGame.OTHER_LETTERS_BIT;
+
+  // Built by getIndex on first use, so that loading a Dictionary
+  // doesn't pay for indexing lengths no game is played with.
+  private volatile PositionIndex index_;
+  private final AtomicBoolean indexBuildStarted_ = new AtomicBoolean();
+
+  /**
+   * @return bit for the char in a letter mask, or OTHER_CHAR_BIT if
+   * the char is not in [A-Z]
+   */
+  static int letterBit(char ch) {
+    if( ch<'A' || 'Z'<ch ) return OTHER_CHAR_BIT;
+    return 1<<(ch-'A');
+  }
+
+  /** @return letter mask of the chars in word */
+  static int letterMask(CharSequence word) {
+    int mask = 0;
+    for( int charI = 0; charI<word.length(); ++charI ) {
+      mask |= letterBit(word.charAt(charI));
+    }
+    return mask;
+  }
+
+  abstract int getWordLength();
+  abstract int size();
+  /** @return the word with id wordId */
+  abstract String getWord(int wordId);
+  abstract int getLetterMask(int wordId);
+  abstract char getChar(int wordId, int pos);
+  /** @return unmodifiable list of the words, in id order */
+  abstract List<String> getWords();
+
+  /**
+   * @return whether the word has revealedChars[i] at
+   * revealedPositions[i] for each i below numRevealed
+   */
+  boolean matches(int wordId, int[] revealedPositions, char[] revealedChars, int numRevealed) {
+    for( int revealedI = 0; revealedI<numRevealed; ++revealedI ) {
+      if( getChar(wordId, revealedPositions[revealedI])!=revealedChars[revealedI] ) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Add the word's positions of each letter to letterPositions: bit
+   * pos of letterPositions[letter-'A'] for each pos with a letter of
+   * [A-Z]. The word's length must be at most 32.
+   */
+  void addLetterPositions(int wordId, int[] letterPositions) {
+    for( int posI = 0; posI<getWordLength(); ++posI ) {
+      final int letterI = getChar(wordId, posI)-'A';
+      if( 0<=letterI && letterI<NUM_LETTERS ) letterPositions[letterI] |= 1<<posI;
+    }
+  }
+
+  /** @return the bucket's PositionIndex, building it if needed */
+  PositionIndex getIndex() {
+    PositionIndex index = index_;
+    if( index==null ) {
+      synchronized( this ) {
+        index = index_;
+        if( index==null ) {
+          index = new PositionIndex(this);
+          index_ = index;
+        }
+      }
+    }
+    return index;
+  }
+
+  /** @return whether getIndex would return without building */
+  boolean isIndexBuilt() {
+    return index_!=null;
+  }
+
+  /**
+   * Build the bucket's PositionIndex on the common ForkJoinPool, once,
+   * unless it's built already. getIndex meanwhile waits for the build.
+   */
+  void buildIndexInBackground() {
+    if( index_!=null || !indexBuildStarted_.compareAndSet(false, true) ) return;
+    ForkJoinPool.commonPool().execute(new Runnable() {
+        public void run() {
+          getIndex();
+        }
+      });
+  }
+}
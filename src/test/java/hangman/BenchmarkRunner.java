@@ -0,0 +1,137 @@
+package hangman;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal microbenchmark harness, in the manner of JMH.
+ *
+ * Each benchmark runs a number of warmup iterations, whose results
+ * are discarded so the JIT can settle, then measurement iterations.
+ * An iteration calls the benchmark's operation in batches until a
+ * fixed time has passed. The report gives the mean time per
+ * operation with its standard deviation across iterations, and the
+ * bytes allocated per operation, like JMH's gc profiler reports as
+ * gc.alloc.rate.norm.
+ *
+ * Operation results are kept in a field so the JIT cannot eliminate
+ * the work producing them.
+ */
+class BenchmarkRunner {
+  /** The code timed by a benchmark. */
+  interface Operation {
+    /**
+     * @param opIndex number of times the operation ran before in the
+     * benchmark, for cycling through fixed inputs
+     * @return anything computed, to keep the work from being
+     * eliminated
+     */
+    Object run(int opIndex) throws Exception;
+  }
+
+  // Grow batches until one takes this long, so that reading the
+  // clock is a negligible part of an iteration.
+  private static final long MIN_BATCH_NANOS = 100000L;
+
+  private final int warmupIterations_;
+  private final int measurementIterations_;
+  private final long iterationNanos_;
+  private final List<String> names_ = new ArrayList<String>();
+  private final List<Operation> operations_ = new ArrayList<Operation>();
+  // Sink for operation results
+  private Object lastResult_;
+  private int opIndex_;
+
+  /**
+   * @param warmupIterations iterations to run before measuring
+   * @param measurementIterations iterations to measure
+   * @param iterationMillis duration of each iteration
+   */
+  BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationMillis) {
+    warmupIterations_ = warmupIterations;
+    measurementIterations_ = measurementIterations;
+    iterationNanos_ = iterationMillis*1000000L;
+  }
+
+  void add(String name, Operation operation) {
+    names_.add(name);
+    operations_.add(operation);
+  }
+
+  /**
+   * Run the benchmarks whose names contain a match of filter, and
+   * print a line of results for each.
+   */
+  void run(Pattern filter) throws Exception {
+    System.out.println(String.format(Locale.ROOT, "%-40s %14s %12s %14s",
+                                     "Benchmark", "ns/op", "+- stddev", "alloc B/op"));
+    for( int benchI = 0; benchI<names_.size(); ++benchI ) {
+      if( !filter.matcher(names_.get(benchI)).find() ) continue;
+      runOne(names_.get(benchI), operations_.get(benchI));
+    }
+    // Read the sink, so it's live
+    if( lastResult_==this ) System.out.println();
+  }
+
+  private void runOne(String name, Operation operation) throws Exception {
+    opIndex_ = 0;
+    int opsPerBatch = 1;
+    for( int iterI = 0; iterI<warmupIterations_; ++iterI ) {
+      final long endNanos = System.nanoTime()+iterationNanos_;
+      while( System.nanoTime()<endNanos ) {
+        final long batchNanos = runBatch(operation, opsPerBatch);
+        if( batchNanos<MIN_BATCH_NANOS && opsPerBatch<(1<<30) ) opsPerBatch *= 2;
+      }
+    }
+
+    final double[] nanosPerOp = new double[measurementIterations_];
+    long totalOps = 0;
+    long totalAllocatedBytes = 0;
+    for( int iterI = 0; iterI<measurementIterations_; ++iterI ) {
+      final long startAllocatedBytes = allocatedBytes();
+      final long startNanos = System.nanoTime();
+      long numOps = 0;
+      long elapsedNanos = 0;
+      while( elapsedNanos<iterationNanos_ ) {
+        elapsedNanos += runBatch(operation, opsPerBatch);
+        numOps += opsPerBatch;
+      }
+      elapsedNanos = System.nanoTime()-startNanos;
+      totalAllocatedBytes += allocatedBytes()-startAllocatedBytes;
+      totalOps += numOps;
+      nanosPerOp[iterI] = (double)elapsedNanos/numOps;
+    }
+
+    double mean = 0;
+    for( double nanosI : nanosPerOp ) mean += nanosI;
+    mean /= nanosPerOp.length;
+    double variance = 0;
+    for( double nanosI : nanosPerOp ) variance += (nanosI-mean)*(nanosI-mean);
+    final double stddev = Math.sqrt(variance/Math.max(1, nanosPerOp.length-1));
+    final double bytesPerOp = (allocatedBytes()<0) ? Double.NaN : (double)totalAllocatedBytes/totalOps;
+    System.out.println(String.format(Locale.ROOT, "%-40s %14.1f %12.1f %14.1f",
+                                     name, mean, stddev, bytesPerOp));
+  }
+
+  /** @return nanoseconds taken to run the operation numOps times */
+  private long runBatch(Operation operation, int numOps) throws Exception {
+    final long startNanos = System.nanoTime();
+    for( int opI = 0; opI<numOps; ++opI ) {
+      lastResult_ = operation.run(opIndex_++ & Integer.MAX_VALUE);
+    }
+    return System.nanoTime()-startNanos;
+  }
+
+  /**
+   * @return bytes allocated by the current thread so far, or -1 if
+   * the JVM can't tell
+   */
+  private static long allocatedBytes() {
+    final java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    if( !(threadBean instanceof com.sun.management.ThreadMXBean) ) return -1;
+    return ((com.sun.management.ThreadMXBean)threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
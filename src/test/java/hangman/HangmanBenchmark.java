@@ -0,0 +1,239 @@
+package hangman;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks of the strategy and game hot paths.
+ *
+ * Not part of the automated test suite. Rather, it is invoked from
+ * the 'rake bench' task. It lives in the hangman package to time
+ * package-private steps of StrategyImpl alone.
+ *
+ * The words played are fixed, so that results are comparable between
+ * runs. Benchmarks cycle through a set of words, one per operation.
+ * Word sets are grouped by length, since strategy cost grows with the
+ * size of the dictionary's length bucket and the word length:
+ *   - short: 2 to 4 letters, small buckets
+ *   - medium: 6 to 8 letters, the biggest buckets
+ *   - long: 10 letters and more
+ *
+ * The letter counting that nextGuess once did in its own loop is now
+ * part of updateCandidateWords, so the update benchmarks cover it.
+ *
+ * The medium.packed word set plays the medium words over a
+ * memory-mapped PackedDictionary instead of the heap Dictionary.
+ */
+public class HangmanBenchmark {
+  static final String[] SHORT_WORDS = { "MUS", "OSES", "CANT", "DUAL", "GO", "PEC", "FAGS", "SAGE" };
+  static final String[] MEDIUM_WORDS = { "FACTUAL", "COMAKER", "NAGGING", "TOXICS",
+                                         "TRIOSE", "CUMULATE", "ERUPTIVE", "MONADISM" };
+  static final String[] LONG_WORDS = { "STEREOISOMERS", "REMEMBERED", "SPODUMENES", "TRICHROMATS",
+                                       "COUNTERCURRENTLY", "PERFUNCTORILY", "SUPERINTENDENTS", "DISTASTEFULNESS" };
+
+  /**
+   * Run the benchmarks.
+   *
+   * @param args optionally: a regular expression selecting
+   * benchmarks by name (default: all), warmup iterations (default:
+   * 5), measurement iterations (default: 5), and milliseconds per
+   * iteration (default: 1000)
+   */
+  public static void main(String[] args) throws Exception {
+    final Pattern filter = Pattern.compile(args.length>0 ? args[0] : "");
+    final int warmupIterations = args.length>1 ? Integer.parseInt(args[1]) : 5;
+    final int measurementIterations = args.length>2 ? Integer.parseInt(args[2]) : 5;
+    final long iterationMillis = args.length>3 ? Long.parseLong(args[3]) : 1000;
+
+    final BenchmarkRunner runner = new BenchmarkRunner(warmupIterations, measurementIterations, iterationMillis);
+    addBenchmarks(runner, Dictionary.loadDefault());
+    System.out.println("PositionIndex kernel: "+IndexKernel.INSTANCE.getName());
+    runner.run(filter);
+  }
+
+  static void addBenchmarks(BenchmarkRunner runner, Dictionary dictionary) throws Exception {
+    final StrategyFactory strategyFactory = new StrategyFactory(dictionary);
+
+    /// Strategy construction
+    final byte[] dictionaryBytes = readDefaultDictionary();
+    runner.add("strategy.construct.stream", new BenchmarkRunner.Operation() {
+        public Object run(int opIndex) throws Exception {
+          return new StrategyImpl(7, new ByteArrayInputStream(dictionaryBytes));
+        }
+      });
+    runner.add("strategy.construct.factory", new BenchmarkRunner.Operation() {
+        public Object run(int opIndex) {
+          return strategyFactory.newStrategy(7);
+        }
+      });
+
+    /// Dictionary loading
+    runner.add("dictionary.load.text", new BenchmarkRunner.Operation() {
+        public Object run(int opIndex) throws Exception {
+          return Dictionary.load(new ByteArrayInputStream(dictionaryBytes));
+        }
+      });
+    final File packedFile = File.createTempFile("words", ".hpd");
+    packedFile.deleteOnExit();
+    final FileOutputStream packedOut = new FileOutputStream(packedFile);
+    try {
+      PackedDictionary.write(dictionary, packedOut);
+    } finally {
+      packedOut.close();
+    }
+    runner.add("dictionary.map.packed", new BenchmarkRunner.Operation() {
+        public Object run(int opIndex) throws Exception {
+          return Dictionary.map(packedFile);
+        }
+      });
+
+    /// Strategy steps and whole games, per word length
+    addWordSetBenchmarks(runner, strategyFactory, "short", SHORT_WORDS);
+    addWordSetBenchmarks(runner, strategyFactory, "medium", MEDIUM_WORDS);
+    addWordSetBenchmarks(runner, strategyFactory, "long", LONG_WORDS);
+    addWordSetBenchmarks(runner, new StrategyFactory(Dictionary.map(packedFile)), "medium.packed", MEDIUM_WORDS);
+
+    /// Evaluating every 100th dictionary word, one game at a time and
+    /// in lockstep
+    final List<String> evaluationWords = new ArrayList<String>();
+    for( int lenI = 0; lenI<=dictionary.getMaxWordLength(); ++lenI ) {
+      final List<String> bucket = dictionary.getWords(lenI);
+      for( int wordI = 0; wordI<bucket.size(); wordI += 100 ) evaluationWords.add(bucket.get(wordI));
+    }
+    runner.add("evaluate.serial", new BenchmarkRunner.Operation() {
+        public Object run(int opIndex) throws Exception {
+          return new ParallelEvaluator(strategyFactory, Play.DEFAULT_NUM_GUESSES, 1).evaluate(evaluationWords);
+        }
+      });
+    runner.add("evaluate.batch", new BenchmarkRunner.Operation() {
+        public Object run(int opIndex) throws Exception {
+          return new BatchEvaluator(strategyFactory, Play.DEFAULT_NUM_GUESSES).evaluate(evaluationWords);
+        }
+      });
+
+    /// HangmanGame
+    runner.add("game.guessLetter", new BenchmarkRunner.Operation() {
+        public Object run(int opIndex) {
+          final HangmanGame game = new HangmanGame("FACTUAL", Play.DEFAULT_NUM_GUESSES);
+          game.guessLetter('A');
+          game.guessLetter('X');
+          game.guessLetter('U');
+          return game.guessLetter('L');
+        }
+      });
+    runner.add("game.guessLetterQuietly", new BenchmarkRunner.Operation() {
+        public Object run(int opIndex) {
+          final HangmanGame game = new HangmanGame("FACTUAL", Play.DEFAULT_NUM_GUESSES);
+          game.guessLetterQuietly('A');
+          game.guessLetterQuietly('X');
+          game.guessLetterQuietly('U');
+          game.guessLetterQuietly('L');
+          return game;
+        }
+      });
+    final HangmanGame midGame = new HangmanGame("FACTUAL", Play.DEFAULT_NUM_GUESSES);
+    midGame.guessLetter('A');
+    midGame.guessLetter('X');
+    runner.add("game.gameStatus", new BenchmarkRunner.Operation() {
+        public Object run(int opIndex) {
+          return midGame.gameStatus();
+        }
+      });
+  }
+
+  private static void addWordSetBenchmarks(BenchmarkRunner runner,
+                                           final StrategyFactory strategyFactory,
+                                           String setName,
+                                           final String[] words)
+    throws Exception
+  {
+    // Games before any guess, and after the strategy's first two
+    // guesses, one per word.
+    final HangmanGame[] openingGames = new HangmanGame[words.length];
+    final HangmanGame[] midGames = new HangmanGame[words.length];
+    // Strategies updated for openingGames, ready to choose a char
+    final StrategyImpl[] updatedStrategies = new StrategyImpl[words.length];
+    // Strategies having made the guesses of midGames, so last updated
+    // for the state before the second guess
+    final StrategyImpl[] midStrategies = new StrategyImpl[words.length];
+    for( int wordI = 0; wordI<words.length; ++wordI ) {
+      openingGames[wordI] = new HangmanGame(words[wordI], Play.DEFAULT_NUM_GUESSES);
+      midGames[wordI] = new HangmanGame(words[wordI], Play.DEFAULT_NUM_GUESSES);
+      final StrategyImpl strategy = strategyFactory.newStrategy(words[wordI].length());
+      for( int guessI = 0; guessI<2 && midGames[wordI].gameStatus()==HangmanGame.Status.KEEP_GUESSING; ++guessI ) {
+        strategy.nextGuess(midGames[wordI]).makeGuess(midGames[wordI]);
+      }
+      midStrategies[wordI] = strategy;
+      updatedStrategies[wordI] = strategyFactory.newStrategy(words[wordI].length());
+      updatedStrategies[wordI].updateCandidateWords(openingGames[wordI]);
+    }
+
+    runner.add("strategy.update.opening."+setName, new BenchmarkRunner.Operation() {
+        public Object run(int opIndex) {
+          final HangmanGame game = openingGames[opIndex%words.length];
+          final StrategyImpl strategy = strategyFactory.newStrategy(game.getSecretWordLength());
+          strategy.updateCandidateWords(game);
+          return strategy;
+        }
+      });
+    runner.add("strategy.update.midgame."+setName, new BenchmarkRunner.Operation() {
+        public Object run(int opIndex) {
+          final HangmanGame game = midGames[opIndex%words.length];
+          final StrategyImpl strategy = strategyFactory.newStrategy(game.getSecretWordLength());
+          strategy.updateCandidateWords(game);
+          return strategy;
+        }
+      });
+    // Narrowing by the second guess alone. Includes copying the
+    // candidates, which the copy shares until it filters them.
+    runner.add("strategy.update.delta."+setName, new BenchmarkRunner.Operation() {
+        public Object run(int opIndex) {
+          final int wordI = opIndex%words.length;
+          final StrategyImpl strategy = midStrategies[wordI].copy();
+          strategy.updateCandidateWords(midGames[wordI]);
+          return strategy;
+        }
+      });
+    runner.add("strategy.chooseChar."+setName, new BenchmarkRunner.Operation() {
+        public Object run(int opIndex) {
+          final int wordI = opIndex%words.length;
+          return updatedStrategies[wordI].chooseChar(openingGames[wordI]);
+        }
+      });
+    runner.add("play."+setName, new BenchmarkRunner.Operation() {
+        public Object run(int opIndex) throws Exception {
+          final String word = words[opIndex%words.length];
+          return Play.run(new HangmanGame(word, Play.DEFAULT_NUM_GUESSES),
+                          strategyFactory.newStrategy(word.length()),
+                          false);
+        }
+      });
+    runner.add("play.partition."+setName, new BenchmarkRunner.Operation() {
+        public Object run(int opIndex) throws Exception {
+          final String word = words[opIndex%words.length];
+          return Play.run(new HangmanGame(word, Play.DEFAULT_NUM_GUESSES),
+                          new PartitionStrategy(strategyFactory.getDictionary(), word.length()),
+                          false);
+        }
+      });
+  }
+
+  private static byte[] readDefaultDictionary() throws Exception {
+    final InputStream resource = HangmanBenchmark.class.getClassLoader().getResourceAsStream(Dictionary.DEFAULT_RESOURCE);
+    try {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[1<<16];
+      int numRead;
+      while( (numRead = resource.read(buffer))>=0 ) bytes.write(buffer, 0, numRead);
+      return bytes.toByteArray();
+    } finally {
+      resource.close();
+    }
+  }
+}
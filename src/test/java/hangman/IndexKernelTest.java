@@ -0,0 +1,124 @@
+package hangman;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests of VectorIndexKernel against the scalar IndexKernel.
+ *
+ * A JVM loads only one kernel as IndexKernel.INSTANCE, so the rest of
+ * the suite exercises whichever it loaded. This test lives in the
+ * hangman package to run both side by side.
+ */
+@RunWith(JUnit4.class)
+public class IndexKernelTest {
+  private static final int NUM_LETTERS = WordBucket.NUM_LETTERS;
+
+  /**
+   * Test the vector kernel filters and counts as the scalar kernel
+   * does, over dictionary buckets with a partial last block and with
+   * more blocks than are counted between folds, and over blocks of
+   * every word containing every letter, which fill the byte counts.
+   */
+  @Test
+  public void testVectorKernel() throws Exception {
+    final IndexKernel vectorKernel = newVectorKernel();
+    Assume.assumeNotNull(vectorKernel);
+    final IndexKernel scalarKernel = new IndexKernel();
+    final Dictionary dictionary = Dictionary.loadDefault();
+    final Random random = new Random(17);
+
+    // 2 letter words are two blocks, 5 and 8 letter words hundreds,
+    // each with a partial last block
+    for( int wordLen : new int[]{ 2, 5, 8 } ) {
+      final List<String> words = dictionary.getWords(wordLen);
+      final int numBlocks = (words.size()+63) >>> 6;
+      assertTrue(words.size()%64!=0);
+      final long[] containsBits = new long[numBlocks*IndexKernel.LETTER_STRIDE];
+      for( int wordI = 0; wordI<words.size(); ++wordI ) {
+        for( char charI : words.get(wordI).toCharArray() ) {
+          if( 'A'<=charI && charI<='Z' ) containsBits[(wordI>>>6)*IndexKernel.LETTER_STRIDE+(charI-'A')] |= 1L<<wordI;
+        }
+      }
+      final long[][] revealedBits = { positionBits(words, 0, 'S'), positionBits(words, wordLen-1, 'E') };
+
+      assertSameResults(wordLen+" letters, every word",
+                        scalarKernel, vectorKernel, containsBits, numBlocks, lastBlockBits(words.size()),
+                        null, revealedBits, 0, 0, WordBucket.ALL_LETTERS_MASK);
+      assertSameResults(wordLen+" letters, revealed and incorrect letters",
+                        scalarKernel, vectorKernel, containsBits, numBlocks, lastBlockBits(words.size()),
+                        null, revealedBits, 1, WordBucket.letterBit('A')|WordBucket.letterBit('O'),
+                        WordBucket.ALL_LETTERS_MASK & ~(WordBucket.letterBit('A')|WordBucket.letterBit('O')));
+      final long[] src = new long[numBlocks];
+      for( int blockI = 0; blockI<numBlocks; ++blockI ) src[blockI] = random.nextLong() & random.nextLong();
+      src[numBlocks-1] &= lastBlockBits(words.size());
+      assertSameResults(wordLen+" letters, a quarter of the words",
+                        scalarKernel, vectorKernel, containsBits, numBlocks, lastBlockBits(words.size()),
+                        src, revealedBits, 1, WordBucket.letterBit('Q'), random.nextInt(1<<NUM_LETTERS));
+    }
+
+    // Every word has every letter, which fills the byte counts the
+    // fastest, over fewer and more blocks than are counted per fold
+    for( int numBlocks : new int[]{ 1, 31, 32, 62, 100 } ) {
+      final long[] containsBits = new long[numBlocks*IndexKernel.LETTER_STRIDE];
+      Arrays.fill(containsBits, -1L);
+      assertSameResults(numBlocks+" full blocks",
+                        scalarKernel, vectorKernel, containsBits, numBlocks, -1L,
+                        null, new long[0][], 0, 0, WordBucket.ALL_LETTERS_MASK);
+    }
+  }
+
+  /** @return the vector kernel, or null if it isn't compiled or loadable */
+  private static IndexKernel newVectorKernel() {
+    try {
+      return (IndexKernel)Class.forName("hangman.VectorIndexKernel").getDeclaredConstructor().newInstance();
+    } catch( ReflectiveOperationException exc ) {
+      return null;
+    } catch( LinkageError exc ) {
+      return null;
+    }
+  }
+
+  private static void assertSameResults(String message, IndexKernel scalarKernel, IndexKernel vectorKernel,
+                                        long[] containsBits, int numBlocks, long lastBlockBits,
+                                        long[] src, long[][] revealedBits, int numRevealed,
+                                        int incorrectMask, int countMask)
+  {
+    final long[] scalarDst = new long[numBlocks];
+    final int[] scalarCounts = new int[NUM_LETTERS];
+    final int scalarSurvivors
+      = scalarKernel.filterAndCount(containsBits, numBlocks, lastBlockBits, src, scalarDst, revealedBits, numRevealed,
+                                    incorrectMask, countMask, scalarCounts);
+    final long[] vectorDst = new long[numBlocks];
+    final int[] vectorCounts = new int[NUM_LETTERS];
+    final int vectorSurvivors
+      = vectorKernel.filterAndCount(containsBits, numBlocks, lastBlockBits, src, vectorDst, revealedBits, numRevealed,
+                                    incorrectMask, countMask, vectorCounts);
+    assertTrue(message, 0<scalarSurvivors);
+    assertEquals(message, scalarSurvivors, vectorSurvivors);
+    assertArrayEquals(message, scalarDst, vectorDst);
+    assertArrayEquals(message, scalarCounts, vectorCounts);
+  }
+
+  /** @return bitset of the words having ch at pos */
+  private static long[] positionBits(List<String> words, int pos, char ch) {
+    final long[] bits = new long[(words.size()+63) >>> 6];
+    for( int wordI = 0; wordI<words.size(); ++wordI ) {
+      if( words.get(wordI).charAt(pos)==ch ) bits[wordI>>>6] |= 1L<<wordI;
+    }
+    return bits;
+  }
+
+  /** @return bits of the last block for every one of numWords words */
+  private static long lastBlockBits(int numWords) {
+    final int numInBlock = numWords-(((numWords+63) >>> 6)-1)*64;
+    return (numInBlock>=64) ? -1L : (1L<<numInBlock)-1;
+  }
+}
@@ -1,24 +1,68 @@
 package hangman.test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.LinkedList;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import static org.junit.Assert.*;
+import org.junit.Assume;
 import org.junit.Test;
 import org.junit.Ignore;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import hangman.BatchEvaluator;
+import hangman.BatchRunner;
+import hangman.CompiledStrategy;
+import hangman.DecisionCache;
+import hangman.DecisionTree;
+import hangman.DecisionTreeCompiler;
+import hangman.GameClient;
+import hangman.GameServer;
+import hangman.Guess;
+import hangman.Dictionary;
+import hangman.DictionaryBuilder;
+import hangman.GameJournal;
+import hangman.GuessingStrategy;
 import hangman.HangmanGame;
+import hangman.JournalReplay;
+import hangman.LoadGenerator;
 import hangman.GuessLetter;
 import hangman.GuessWord;
 import hangman.NullGuessException;
+import hangman.PackedDictionary;
+import hangman.ParallelEvaluator;
+import hangman.PartitionStrategy;
+import hangman.SearchStrategy;
+import hangman.ShardCoordinator;
+import hangman.ShardWorker;
 import hangman.Play;
+import hangman.StrategyFactory;
 import hangman.StrategyImpl;
+import hangman.StrategyMetrics;
+import hangman.StrategyParameters;
+import hangman.StrategyTuner;
+import hangman.TreeEvaluator;
 
 /**
  * Test Hangman.
@@ -33,15 +77,20 @@ public class HangmanTest {
    * This is not a part of the automated test suite, because of its
    * long runtime. Rather, it is invoked from the 'rake brute' task.
    *
+   * The games are played in parallel by a ParallelEvaluator. The
+   * scores and averages displayed are the same whatever the
+   * parallelism.
+   *
    * @param stepSize step through the dictionary, playing the
    * HangmanGame for every stepSize-th word. For instance,
    * stepSize==50 plays the game with 2% of the dictionary words.
    * @param numGuesses is the number of wrong guesses allowed.
+   * @param parallelism is the number of threads to play games on.
    */
-  public static void runBrute(int stepSize, int numGuesses) throws Exception
+  public static void runBrute(int stepSize, int numGuesses, int parallelism) throws Exception
   {
     /// Take a subset of the words.txt dictionary as dictL based on stepSize
-    List<String> dictL = new LinkedList<String>();
+    List<String> dictL = new ArrayList<String>();
     final BufferedReader dictReader
       = new BufferedReader(new InputStreamReader(HangmanTest.class.getClassLoader().getResourceAsStream("words.txt")));
     String line;
@@ -52,18 +101,56 @@ public class HangmanTest {
     }
 
     /// Play the game for each element of dictL, display info
-    int scoreSum = 0;
-    int gamesPlayed = 0;
-    for( String wordI : dictL ) {
-      final int curScore = Play.run(new HangmanGame(wordI, numGuesses),
-                                    new StrategyImpl(wordI.length(),
-                                                     HangmanTest.class.getClassLoader().getResourceAsStream("words.txt")),
-                                    false);
+    final ParallelEvaluator evaluator
+      = new ParallelEvaluator(new StrategyFactory(Dictionary.loadDefault()), numGuesses, parallelism);
+    final ParallelEvaluator.Result result = evaluator.evaluate(dictL);
+    long scoreSum = 0;
+    for( int wordI = 0; wordI<result.getNumGames(); ++wordI ) {
+      final int curScore = result.getScore(wordI);
       scoreSum += curScore;
-      ++gamesPlayed;
-      final double averageScore = (double)scoreSum/(double)gamesPlayed;
-      System.out.println("Played word: "+wordI+", score: "+curScore+", cumulative average score: "+averageScore);
+      final double averageScore = (double)scoreSum/(double)(wordI+1);
+      System.out.println("Played word: "+dictL.get(wordI)+", score: "+curScore+", cumulative average score: "+averageScore);
     }
+    System.out.println("Played "+result.getNumGames()+" games on "+parallelism+" threads"
+                       +" in "+result.getElapsedNanos()/1000000+" ms"
+                       +" ("+result.getGamesPerSecond()+" games/s)"
+                       +", average score: "+result.getAverageScore());
+  }
+
+  /** Play the HangmanGame over the dictionary on all processors. */
+  public static void runBrute(int stepSize, int numGuesses) throws Exception
+  {
+    runBrute(stepSize, numGuesses, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @return every stride-th word of each length of the dictionary,
+   * from the first, by increasing length
+   */
+  private static List<String> sampleWords(Dictionary dictionary, int stride) {
+    final List<String> words = new ArrayList<String>();
+    for( int lenI = 0; lenI<=dictionary.getMaxWordLength(); ++lenI ) {
+      final List<String> lengthWords = dictionary.getWords(lenI);
+      for( int wordI = 0; wordI<lengthWords.size(); wordI += stride ) words.add(lengthWords.get(wordI));
+    }
+    return words;
+  }
+
+  /**
+   * Write a dictionary packed to a temporary file, deleted on exit.
+   *
+   * @return the file, to map with Dictionary.map
+   */
+  private static File writePackedDictionary(Dictionary dictionary) throws IOException {
+    final File packedFile = File.createTempFile("words", ".hpd");
+    packedFile.deleteOnExit();
+    final FileOutputStream packedOut = new FileOutputStream(packedFile);
+    try {
+      PackedDictionary.write(dictionary, packedOut);
+    } finally {
+      packedOut.close();
+    }
+    return packedFile;
   }
 
   private int countMysteryLetters(String word) {
@@ -105,6 +192,17 @@ public class HangmanTest {
                      game.getAllGuessedLetters().size());
         assertEquals(expectedIncorrectWords, game.getIncorrectlyGuessedWords().size());
         assertEquals(secretWord.length(), game.getSecretWordLength());
+        // The primitive state agrees with the String and Set getters
+        assertEquals(game.getGuessedSoFar(), game.getPattern().toString());
+        assertEquals(expectedMysteryLetters, game.numUnrevealed());
+        assertEquals(expectedCorrectLetters, Integer.bitCount(game.getCorrectLetterMask()));
+        assertEquals(expectedIncorrectLetters, Integer.bitCount(game.getIncorrectLetterMask()));
+        assertEquals(expectedIncorrectWords, game.numIncorrectlyGuessedWords());
+        for( Character charI : game.getAllGuessedLetters() ) {
+          final int letterBit = 1<<(charI-'A');
+          assertEquals(game.getCorrectlyGuessedLetters().contains(charI), (game.getCorrectLetterMask() & letterBit)!=0);
+          assertEquals(game.getIncorrectlyGuessedLetters().contains(charI), (game.getIncorrectLetterMask() & letterBit)!=0);
+        }
       }
     }
     GameVerifier verifier = new GameVerifier();
@@ -122,6 +220,143 @@ public class HangmanTest {
     verifier.verify(5, HangmanGame.Status.KEEP_GUESSING, 2, 3, 3, 1, 1);
     new GuessWord("factual").makeGuess(game);
     verifier.verify(5, HangmanGame.Status.GAME_WON,      2, 0, 3, 1, 1);
+
+    // Letters outside [A-Z] are kept apart from the letter masks
+    final HangmanGame otherGame = new HangmanGame("$@", maxWrongGuesses);
+    otherGame.guessLetter('$');
+    otherGame.guessLetter('%');
+    assertEquals(HangmanGame.OTHER_LETTERS_BIT, otherGame.getCorrectLetterMask());
+    assertEquals(HangmanGame.OTHER_LETTERS_BIT, otherGame.getIncorrectLetterMask());
+    assertTrue(otherGame.getCorrectlyGuessedLetters().contains('$'));
+    assertTrue(otherGame.getIncorrectlyGuessedLetters().contains('%'));
+    assertEquals(1, otherGame.numUnrevealed());
+    assertEquals(2, otherGame.currentScore());
+  }
+
+  /**
+   * Test the Dictionary partitions words by length, upper cased, even
+   * where upper casing changes the length, and that strategies from a
+   * StrategyFactory play the same as ones reading the dictionary
+   * themselves.
+   */
+  @Test
+  public void testDictionary() throws Exception {
+    final Dictionary dictionary = Dictionary.loadDefault();
+    int numWords = 0;
+    for( int lenI = 0; lenI<=dictionary.getMaxWordLength(); ++lenI ) {
+      for( String wordI : dictionary.getWords(lenI) ) {
+        assertEquals(lenI, wordI.length());
+        assertEquals(wordI.toUpperCase(), wordI);
+      }
+      numWords += dictionary.getWords(lenI).size();
+    }
+    assertEquals(dictionary.size(), numWords);
+    assertTrue(dictionary.getWords(dictionary.getMaxWordLength()+1).isEmpty());
+    assertTrue(dictionary.getWords(7).contains("FACTUAL"));
+
+    final StrategyFactory strategyFactory = new StrategyFactory(dictionary);
+    for( String wordI : new String[]{ "FACTUAL", "MUS", "STEREOISOMERS" } ) {
+      final int sharedScore = Play.run(new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES),
+                                       strategyFactory.newStrategy(wordI.length()),
+                                       false);
+      final int streamScore = Play.run(new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES),
+                                       new StrategyImpl(wordI.length(),
+                                                        HangmanTest.class.getClassLoader().getResourceAsStream("words.txt")),
+                                       false);
+      assertEquals(wordI, streamScore, sharedScore);
+    }
+
+    // The sharp s upper cases to SS
+    Assume.assumeTrue(Charset.defaultCharset().newEncoder().canEncode('\u00df'));
+    final Dictionary sharpDictionary = Dictionary.load(new ByteArrayInputStream("stra\u00dfe\n".getBytes()));
+    assertEquals(Arrays.asList("STRASSE"), sharpDictionary.getWords(7));
+  }
+
+  /**
+   * Test a mapped PackedDictionary has the same words as the text
+   * dictionary it was converted from, and that strategies play the
+   * same over it. Words outside [A-Z] can't be packed.
+   */
+  @Test
+  public void testPackedDictionary() throws Exception {
+    final Dictionary textDictionary = Dictionary.loadDefault();
+    final Dictionary packedDictionary = Dictionary.map(writePackedDictionary(textDictionary));
+    assertEquals(textDictionary.size(), packedDictionary.size());
+    assertEquals(textDictionary.getMaxWordLength(), packedDictionary.getMaxWordLength());
+    for( int lenI = 0; lenI<=textDictionary.getMaxWordLength(); ++lenI ) {
+      assertEquals(textDictionary.getWords(lenI), packedDictionary.getWords(lenI));
+    }
+
+    final StrategyFactory textFactory = new StrategyFactory(textDictionary);
+    final StrategyFactory packedFactory = new StrategyFactory(packedDictionary);
+    for( String wordI : new String[]{ "FACTUAL", "MUS", "STEREOISOMERS", "COUNTERCURRENTLY" } ) {
+      final int textScore = Play.run(new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES),
+                                     textFactory.newStrategy(wordI.length()),
+                                     false);
+      final int packedScore = Play.run(new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES),
+                                       packedFactory.newStrategy(wordI.length()),
+                                       false);
+      assertEquals(wordI, textScore, packedScore);
+    }
+
+    IllegalArgumentException packExc = null;
+    try {
+      PackedDictionary.write(Dictionary.load(new ByteArrayInputStream("$@\n".getBytes("UTF-8"))),
+                             new ByteArrayOutputStream());
+    }
+    catch( IllegalArgumentException exc ) {
+      packExc = exc;
+    }
+    assertNotNull(packExc);
+  }
+
+  /**
+   * Test a DictionaryBuilder spilling often builds the words of the
+   * text dictionary, though they're read more than once, gzip
+   * compressed or not, and rejects words it can't pack.
+   */
+  @Test
+  public void testDictionaryBuilder() throws Exception {
+    final Dictionary textDictionary = Dictionary.loadDefault();
+    final File gzipFile = File.createTempFile("words", ".txt.gz");
+    gzipFile.deleteOnExit();
+    final OutputStream gzipOut = new GZIPOutputStream(new FileOutputStream(gzipFile));
+    try {
+      for( String wordI : textDictionary.getWords(7) ) gzipOut.write((wordI.toLowerCase()+"\r\n").getBytes("UTF-8"));
+      gzipOut.write("it's\n".getBytes("UTF-8"));
+    } finally {
+      gzipOut.close();
+    }
+
+    final File packedFile = File.createTempFile("words", ".hpd");
+    packedFile.deleteOnExit();
+    final DictionaryBuilder builder = new DictionaryBuilder(null, 1<<13);
+    try {
+      final InputStream resource = HangmanTest.class.getClassLoader().getResourceAsStream("words.txt");
+      try {
+        builder.addLines(resource);
+      } finally {
+        resource.close();
+      }
+      builder.addFile(gzipFile);
+      assertFalse(builder.add("$@"));
+      assertTrue(builder.add("Factual"));
+      builder.build(packedFile);
+    } finally {
+      builder.close();
+    }
+    // More spills than runs merged at once
+    assertTrue(64<builder.getNumSpills());
+    assertEquals(2, builder.getNumRejected());
+
+    final Dictionary builtDictionary = Dictionary.map(packedFile);
+    assertEquals(textDictionary.size()-textDictionary.getWords(0).size(), builtDictionary.size());
+    assertEquals(builtDictionary.size(), builder.getNumWords());
+    assertEquals(textDictionary.getMaxWordLength(), builtDictionary.getMaxWordLength());
+    assertTrue(builtDictionary.getWords(0).isEmpty());
+    for( int lenI = 1; lenI<=textDictionary.getMaxWordLength(); ++lenI ) {
+      assertEquals(textDictionary.getWords(lenI), builtDictionary.getWords(lenI));
+    }
   }
 
   /**
@@ -153,17 +388,871 @@ public class HangmanTest {
     final double factualAverage = 130.0/15.0;
     final int numGuesses = 5;
 
+    final StrategyFactory strategyFactory = new StrategyFactory(Dictionary.loadDefault());
     int scoreSum = 0;
     for( String wordI : words ) {
       scoreSum += Play.run(new HangmanGame(wordI, numGuesses),
-                           new StrategyImpl(wordI.length(),
-                                            HangmanTest.class.getClassLoader().getResourceAsStream("words.txt")),
+                           strategyFactory.newStrategy(wordI.length()),
                            false);
     }
     final double averageScore = (double)scoreSum/(double)words.length;
     assertTrue("averageScore="+averageScore+" factualAverage="+factualAverage, averageScore<factualAverage);
   }
 
+  /**
+   * Test a StrategyImpl narrowing candidates by what changed since its
+   * last guess still guesses as a new strategy would when the game
+   * changes unexpectedly: here, when it's switched to a new game.
+   */
+  @Test
+  public void testStrategyRevalidates() throws Exception {
+    final StrategyFactory strategyFactory = new StrategyFactory(Dictionary.loadDefault());
+    final StrategyImpl reusedStrategy = strategyFactory.newStrategy(7);
+    final HangmanGame firstGame = new HangmanGame("FACTUAL", Play.DEFAULT_NUM_GUESSES);
+    for( int guessI = 0; guessI<4; ++guessI ) reusedStrategy.nextGuess(firstGame).makeGuess(firstGame);
+    assertFalse(firstGame.getIncorrectlyGuessedLetters().isEmpty());
+    assertFalse(firstGame.getCorrectlyGuessedLetters().isEmpty());
+
+    final HangmanGame secondGame = new HangmanGame("COMAKER", Play.DEFAULT_NUM_GUESSES);
+    final StrategyImpl newStrategy = strategyFactory.newStrategy(7);
+    while( secondGame.gameStatus()==HangmanGame.Status.KEEP_GUESSING ) {
+      final String reusedGuess = reusedStrategy.nextGuess(secondGame).toString();
+      final Guess newGuess = newStrategy.nextGuess(secondGame);
+      assertEquals(newGuess.toString(), reusedGuess);
+      newGuess.makeGuess(secondGame);
+    }
+  }
+
+  /**
+   * Test StrategyImpl's total score over every 200th dictionary word
+   * is unchanged.
+   *
+   * Optimizations of the strategy are meant to leave its guesses
+   * alone. This catches ones that don't, which testStrategy is too
+   * lenient to. If the strategy is changed on purpose, update the
+   * expected total.
+   */
+  @Test
+  public void testStrategyScoresUnchanged() throws Exception {
+    final int stepSize = 200;
+    final Dictionary dictionary = Dictionary.loadDefault();
+    final StrategyFactory strategyFactory = new StrategyFactory(dictionary);
+    final BufferedReader dictReader
+      = new BufferedReader(new InputStreamReader(HangmanTest.class.getClassLoader().getResourceAsStream("words.txt")));
+    int scoreSum = 0;
+    int lineCount = 0;
+    String line;
+    while( (line = dictReader.readLine())!=null ) {
+      if( 0==(lineCount++%stepSize) ) {
+        scoreSum += Play.run(new HangmanGame(line, Play.DEFAULT_NUM_GUESSES),
+                             strategyFactory.newStrategy(line.length()),
+                             false);
+      }
+    }
+    assertEquals(6230, scoreSum);
+  }
+
+  /**
+   * Test ParallelEvaluator gives the same scores whatever the
+   * parallelism, and the same as playing the games one by one.
+   */
+  @Test
+  public void testParallelEvaluator() throws Exception {
+    final StrategyFactory strategyFactory = new StrategyFactory(Dictionary.loadDefault());
+    final List<String> words = new ArrayList<String>();
+    for( int lenI = 2; lenI<=16; ++lenI ) {
+      final List<String> bucket = strategyFactory.getDictionary().getWords(lenI);
+      for( int wordI = 0; wordI<bucket.size(); wordI += 1+bucket.size()/20 ) words.add(bucket.get(wordI));
+    }
+
+    final ParallelEvaluator.Result serialResult
+      = new ParallelEvaluator(strategyFactory, Play.DEFAULT_NUM_GUESSES, 1).evaluate(words);
+    final ParallelEvaluator.Result parallelResult
+      = new ParallelEvaluator(strategyFactory, Play.DEFAULT_NUM_GUESSES, 4).evaluate(words);
+    assertEquals(words.size(), parallelResult.getNumGames());
+    assertEquals(serialResult.getScoreSum(), parallelResult.getScoreSum());
+    for( int wordI = 0; wordI<words.size(); ++wordI ) {
+      final int playScore = Play.run(new HangmanGame(words.get(wordI), Play.DEFAULT_NUM_GUESSES),
+                                     strategyFactory.newStrategy(words.get(wordI).length()),
+                                     false);
+      assertEquals(words.get(wordI), playScore, serialResult.getScore(wordI));
+      assertEquals(words.get(wordI), playScore, parallelResult.getScore(wordI));
+    }
+  }
+
+  /**
+   * Test BatchEvaluator gives the same scores as playing the games one
+   * by one, including for repeated words and mixed case.
+   */
+  @Test
+  public void testBatchEvaluator() throws Exception {
+    final StrategyFactory strategyFactory = new StrategyFactory(Dictionary.loadDefault());
+    final List<String> words = new ArrayList<String>();
+    for( int lenI = 1; lenI<=strategyFactory.getDictionary().getMaxWordLength(); ++lenI ) {
+      final List<String> bucket = strategyFactory.getDictionary().getWords(lenI);
+      for( int wordI = 0; wordI<bucket.size(); wordI += 1+bucket.size()/50 ) words.add(bucket.get(wordI));
+    }
+    words.add("factual");
+    words.add("FACTUAL");
+
+    final ParallelEvaluator.Result batchResult
+      = new BatchEvaluator(strategyFactory, Play.DEFAULT_NUM_GUESSES).evaluate(words);
+    assertEquals(words.size(), batchResult.getNumGames());
+    for( int wordI = 0; wordI<words.size(); ++wordI ) {
+      final int playScore = Play.run(new HangmanGame(words.get(wordI), Play.DEFAULT_NUM_GUESSES),
+                                     strategyFactory.newStrategy(words.get(wordI).length()),
+                                     false);
+      assertEquals(words.get(wordI), playScore, batchResult.getScore(wordI));
+    }
+  }
+
+  /**
+   * Test PartitionStrategy guesses the letter telling apart the most
+   * candidates where StrategyImpl doesn't, and scores sampled words
+   * better than StrategyImpl, the same over a packed dictionary.
+   */
+  @Test
+  public void testPartitionStrategy() throws Exception {
+    // E and Y are each in half the words, closest to chooseChar's
+    // reduction point, but guessing T tells apart all the words.
+    final Dictionary smallDictionary
+      = Dictionary.load(new ByteArrayInputStream("TEX\nQET\nQTY\nQYZ\n".getBytes("US-ASCII")));
+    final HangmanGame game = new HangmanGame("TEX", Play.DEFAULT_NUM_GUESSES);
+    assertEquals('Y', ((GuessLetter)new StrategyImpl(smallDictionary, 3).nextGuess(game)).getLetter());
+    assertEquals('T', ((GuessLetter)new PartitionStrategy(smallDictionary, 3).nextGuess(game)).getLetter());
+
+    // Scores better than StrategyImpl, and the same over a packed
+    // dictionary
+    final Dictionary textDictionary = Dictionary.loadDefault();
+    final Dictionary packedDictionary = Dictionary.map(writePackedDictionary(textDictionary));
+    int implScoreSum = 0;
+    int partitionScoreSum = 0;
+    for( String wordI : sampleWords(textDictionary, 200) ) {
+      implScoreSum += Play.run(new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES),
+                               new StrategyImpl(textDictionary, wordI.length()),
+                               false);
+      final int partitionScore = Play.run(new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES),
+                                          new PartitionStrategy(textDictionary, wordI.length()),
+                                          false);
+      partitionScoreSum += partitionScore;
+      assertEquals(wordI, partitionScore, Play.run(new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES),
+                                                   new PartitionStrategy(packedDictionary, wordI.length()),
+                                                   false));
+    }
+    assertTrue(partitionScoreSum+" vs "+implScoreSum, partitionScoreSum<implScoreSum);
+  }
+
+  /**
+   * Test SearchStrategy finds guesses of least expected score that
+   * StrategyImpl misses, falling back to it past its deadline, and
+   * scores a dictionary better, the same again with a warm table.
+   */
+  @Test
+  public void testSearchStrategy() throws Exception {
+    // T tells apart all the words, for an expected score of 1
+    final Dictionary smallDictionary
+      = Dictionary.load(new ByteArrayInputStream("TEX\nQET\nQTY\nQYZ\n".getBytes("US-ASCII")));
+    final SearchStrategy.TranspositionTable table = new SearchStrategy.TranspositionTable(1024);
+    HangmanGame game = new HangmanGame("TEX", Play.DEFAULT_NUM_GUESSES);
+    assertEquals('T', ((GuessLetter)new SearchStrategy(smallDictionary, 3, table).nextGuess(game)).getLetter());
+    assertEquals('Y', ((GuessLetter)new SearchStrategy(smallDictionary, 3, table)
+                       .nextGuess(game, System.nanoTime()-1)).getLetter());
+
+    // With one wrong guess left, guessing a word wins more often than
+    // StrategyImpl's letter in one of them
+    final Dictionary dictionary = Dictionary.loadDefault();
+    game = new HangmanGame("HOWS", Play.DEFAULT_NUM_GUESSES);
+    for( char letterI : "EABTOSW".toCharArray() ) new GuessLetter(letterI).makeGuess(game);
+    assertEquals(1, game.numWrongGuessesRemaining());
+    assertTrue(new StrategyImpl(dictionary, 4).nextGuess(game) instanceof GuessLetter);
+    assertTrue(new SearchStrategy(dictionary, 4, table).nextGuess(game) instanceof GuessWord);
+
+    // A letter guessed for lack of time, by a strategy whose
+    // candidates are too few to sample, isn't cached for later searches
+    final StrategyFactory cachingFactory
+      = new StrategyFactory(dictionary, StrategyParameters.DEFAULT, new DecisionCache(1000),
+                            SearchStrategy.DEFAULT_MAX_CANDIDATES, table);
+    final HangmanGame timedGame = new HangmanGame("HOWS", Play.DEFAULT_NUM_GUESSES);
+    final StrategyImpl timedStrategy = cachingFactory.newStrategy(timedGame);
+    for( char letterI : "EABTOSW".toCharArray() ) {
+      timedStrategy.nextGuess(timedGame);
+      new GuessLetter(letterI).makeGuess(timedGame);
+    }
+    assertTrue(timedStrategy.nextGuess(timedGame, System.nanoTime()-1) instanceof GuessLetter);
+    assertTrue(cachingFactory.newStrategy(game).nextGuess(game) instanceof GuessWord);
+
+    // Exactly, over a tenth of the dictionary
+    final StringBuilder words = new StringBuilder();
+    for( String wordI : sampleWords(dictionary, 10) ) words.append(wordI).append('\n');
+    final Dictionary sampleDictionary = Dictionary.load(new ByteArrayInputStream(words.toString().getBytes("US-ASCII")));
+    final double implScore
+      = new TreeEvaluator(new StrategyFactory(sampleDictionary), Play.DEFAULT_NUM_GUESSES, 2).evaluate().getAverageScore();
+    final StrategyFactory searchFactory
+      = new StrategyFactory(sampleDictionary, StrategyParameters.DEFAULT, null, 8, null);
+    final ParallelEvaluator.Result searchResult
+      = new TreeEvaluator(searchFactory, Play.DEFAULT_NUM_GUESSES, 2).evaluate();
+    assertTrue(searchResult.getAverageScore()+" vs "+implScore, searchResult.getAverageScore()<implScore);
+    assertEquals(searchResult.getScoreSum(),
+                 new TreeEvaluator(searchFactory, Play.DEFAULT_NUM_GUESSES, 2).evaluate().getScoreSum());
+    assertTrue(searchFactory.getSearchTable().getHitCount()>0);
+  }
+
+  /**
+   * Test StrategyTuner scores each configuration as its strategies
+   * score alone, though the configurations share cached decisions,
+   * and that the default parameters are StrategyImpl's.
+   */
+  @Test
+  public void testStrategyTuner() throws Exception {
+    final Dictionary dictionary = Dictionary.loadDefault();
+    final List<String> words = sampleWords(dictionary, 50);
+    final List<StrategyParameters> grid = new ArrayList<StrategyParameters>();
+    grid.add(StrategyParameters.DEFAULT);
+    grid.add(new StrategyParameters(0.5, 2));
+    grid.add(new StrategyParameters(0.7, 4));
+    grid.add(new StrategyParameters(0.62, 1));
+    final StrategyTuner tuner = new StrategyTuner(dictionary, Play.DEFAULT_NUM_GUESSES, 2, 1<<16);
+    final List<StrategyTuner.Result> results = tuner.tune(grid, words);
+    assertEquals(grid.size(), results.size());
+    assertTrue(0<tuner.getDecisionCache().getHitCount());
+    for( int configI = 0; configI<grid.size(); ++configI ) {
+      final StrategyParameters parameters = grid.get(configI);
+      assertEquals(parameters, results.get(configI).getParameters());
+      assertEquals(words.size(), results.get(configI).getNumGames());
+      final long expectedSum = new BatchEvaluator(new StrategyFactory(dictionary, parameters, null),
+                                                  Play.DEFAULT_NUM_GUESSES).evaluate(words).getScoreSum();
+      assertEquals(parameters.toString(), expectedSum, results.get(configI).getScoreSum());
+    }
+    final long defaultSum = new BatchEvaluator(new StrategyFactory(dictionary), Play.DEFAULT_NUM_GUESSES)
+      .evaluate(words).getScoreSum();
+    assertEquals(defaultSum, results.get(0).getScoreSum());
+    assertFalse(results.get(0).getScoreSum()==results.get(1).getScoreSum());
+  }
+
+  /**
+   * Test TreeEvaluator scores a sample of words as playing them one
+   * at a time does, and the whole dictionary as 'rake brute
+   * STEP_SIZE=1' did.
+   */
+  @Test
+  public void testTreeEvaluator() throws Exception {
+    final Dictionary dictionary = Dictionary.loadDefault();
+    final StrategyFactory factory = new StrategyFactory(dictionary);
+    final ParallelEvaluator.Result result = new TreeEvaluator(factory, Play.DEFAULT_NUM_GUESSES, 2).evaluate();
+    assertEquals(dictionary.size(), result.getNumGames());
+    assertEquals(7.454730909530972, result.getAverageScore(), 0.0);
+
+    // TreeEvaluator scores the words by increasing length
+    final List<String> words = sampleWords(dictionary, 1);
+    final List<String> sample = new ArrayList<String>();
+    final List<Integer> sampleScores = new ArrayList<Integer>();
+    for( int gameI = 0; gameI<words.size(); gameI += 100 ) {
+      sample.add(words.get(gameI));
+      sampleScores.add(result.getScore(gameI));
+    }
+    final ParallelEvaluator.Result sampleResult
+      = new ParallelEvaluator(factory, Play.DEFAULT_NUM_GUESSES, 2).evaluate(sample);
+    for( int sampleI = 0; sampleI<sample.size(); ++sampleI ) {
+      assertEquals(sample.get(sampleI), (int)sampleScores.get(sampleI), sampleResult.getScore(sampleI));
+    }
+  }
+
+  /**
+   * Test nextGuess with a deadline takes each tier, counting it, and
+   * that games played by sampled guesses still end.
+   */
+  @Test
+  public void testDeadlineTiers() throws Exception {
+    final Dictionary dictionary = Dictionary.loadDefault();
+    final StrategyMetrics metrics = StrategyMetrics.get();
+
+    // A deadline already passed samples, where there are enough
+    // candidates, and games still end
+    final StrategyFactory factory = new StrategyFactory(dictionary);
+    final long sampledBefore = metrics.getSampledTierCount();
+    HangmanGame game = new HangmanGame("FACTUALS", Play.DEFAULT_NUM_GUESSES);
+    StrategyImpl strategy = factory.newStrategy(game);
+    while( game.gameStatus()==HangmanGame.Status.KEEP_GUESSING ) {
+      strategy.nextGuess(game, System.nanoTime()-1).makeGuess(game);
+    }
+    assertTrue(sampledBefore<metrics.getSampledTierCount());
+
+    // A generous deadline decides as without one
+    game = new HangmanGame("FACTUALS", Play.DEFAULT_NUM_GUESSES);
+    strategy = factory.newStrategy(game);
+    final HangmanGame unbudgetedGame = new HangmanGame("FACTUALS", Play.DEFAULT_NUM_GUESSES);
+    final StrategyImpl unbudgetedStrategy = factory.newStrategy(unbudgetedGame);
+    final long fullBefore = metrics.getFullTierCount();
+    while( game.gameStatus()==HangmanGame.Status.KEEP_GUESSING ) {
+      final Guess guess = strategy.nextGuess(game, System.nanoTime()+60000000000L);
+      assertEquals(unbudgetedStrategy.nextGuess(unbudgetedGame).toString(), guess.toString());
+      guess.makeGuess(game);
+      guess.makeGuess(unbudgetedGame);
+    }
+    assertTrue(fullBefore<metrics.getFullTierCount());
+
+    // The second game's opening comes from the cache
+    final StrategyFactory cachingFactory = new StrategyFactory(dictionary, 1000);
+    game = new HangmanGame("FACTUALS", Play.DEFAULT_NUM_GUESSES);
+    cachingFactory.newStrategy(game).nextGuess(game, System.nanoTime()+60000000000L);
+    final long cachedBefore = metrics.getCachedTierCount();
+    game = new HangmanGame("FACTUALS", Play.DEFAULT_NUM_GUESSES);
+    cachingFactory.newStrategy(game).nextGuess(game, System.nanoTime()-1);
+    assertEquals(cachedBefore+1, metrics.getCachedTierCount());
+  }
+
+  /**
+   * Test estimating letter counts within an error bound scores the
+   * dictionary as counting exactly does, and that exact strategies
+   * sharing a DecisionCache with estimating ones decide as without.
+   */
+  @Test
+  public void testEstimatedCounts() throws Exception {
+    final Dictionary dictionary = Dictionary.loadDefault();
+    // Loose enough for the larger buckets of words.txt to be sampled
+    final StrategyParameters estimating = new StrategyParameters(0.62, 3, 0.1);
+    final ParallelEvaluator.Result result
+      = new TreeEvaluator(new StrategyFactory(dictionary, estimating, null), Play.DEFAULT_NUM_GUESSES, 2).evaluate();
+    assertEquals(7.454730909530972, result.getAverageScore(), 0.0);
+
+    final List<String> words = sampleWords(dictionary, 50);
+    final List<StrategyParameters> grid = new ArrayList<StrategyParameters>();
+    grid.add(new StrategyParameters(0.5, 2, 0.05));
+    grid.add(new StrategyParameters(0.5, 2));
+    final List<StrategyTuner.Result> results
+      = new StrategyTuner(dictionary, Play.DEFAULT_NUM_GUESSES, 2, 1<<16).tune(grid, words);
+    final long expectedSum = new BatchEvaluator(new StrategyFactory(dictionary, grid.get(1), null),
+                                                Play.DEFAULT_NUM_GUESSES).evaluate(words).getScoreSum();
+    assertEquals(expectedSum, results.get(1).getScoreSum());
+  }
+
+  /**
+   * Test games journaled by Play.run read back as played, and replay
+   * with the same strategy to the same scores and guesses.
+   */
+  @Test
+  public void testGameJournal() throws Exception {
+    final Dictionary dictionary = Dictionary.loadDefault();
+    final StrategyFactory factory = new StrategyFactory(dictionary);
+    final List<String> words = sampleWords(dictionary, 500);
+    final ByteArrayOutputStream journalBytes = new ByteArrayOutputStream();
+    final GameJournal journal = new GameJournal(journalBytes, words.size());
+    long scoreSum = 0;
+    for( String wordI : words ) {
+      final HangmanGame game = new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES);
+      scoreSum += Play.run(game, factory.newStrategy(game), false, journal);
+    }
+    journal.close();
+    assertEquals(words.size(), journal.getNumRecorded());
+    assertEquals(0, journal.getNumDropped());
+
+    GameJournal.Reader reader = new GameJournal.Reader(new ByteArrayInputStream(journalBytes.toByteArray()));
+    for( String wordI : words ) {
+      final GameJournal.Entry entry = reader.next();
+      assertEquals(wordI, entry.getSecretWord());
+      assertEquals(Play.DEFAULT_NUM_GUESSES, entry.getMaxWrongGuesses());
+      final HangmanGame game = entry.replay();
+      assertTrue(game.gameStatus()!=HangmanGame.Status.KEEP_GUESSING);
+      if( 0<entry.getNumGuesses() ) {
+        assertEquals(game.getPattern().toString(), entry.getPattern(entry.getNumGuesses()-1));
+        assertTrue(0<=entry.getGuessNanos(0));
+      }
+    }
+    assertNull(reader.next());
+
+    reader = new GameJournal.Reader(new ByteArrayInputStream(journalBytes.toByteArray()));
+    final JournalReplay.Report report = new JournalReplay(new JournalReplay.StrategySource() {
+        public GuessingStrategy newStrategy(HangmanGame game) {
+          return factory.newStrategy(game);
+        }
+      }).replay(reader);
+    assertEquals(words.size(), report.getNumGames());
+    assertEquals((double)scoreSum/words.size(), report.getRecordedAverageScore(), 1e-9);
+    assertEquals(report.getRecordedAverageScore(), report.getReplayedAverageScore(), 0.0);
+    assertEquals(0, report.getNumDiverged());
+    assertNull(reader.next());
+
+    // Games finishing while the journal closes are either written or
+    // dropped, never counted as recorded and lost
+    final ByteArrayOutputStream racedBytes = new ByteArrayOutputStream();
+    final GameJournal racedJournal = new GameJournal(racedBytes, 4);
+    final Thread[] players = new Thread[4];
+    for( int threadI = 0; threadI<players.length; ++threadI ) {
+      players[threadI] = new Thread() {
+          public void run() {
+            try {
+              for( String wordI : words ) {
+                final HangmanGame game = new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES);
+                Play.run(game, factory.newStrategy(game), false, racedJournal);
+              }
+            } catch( NullGuessException exc ) {
+              throw new AssertionError(exc);
+            }
+          }
+        };
+      players[threadI].start();
+    }
+    Thread.sleep(20);
+    racedJournal.close();
+    for( Thread playerI : players ) playerI.join();
+    assertEquals(players.length*words.size(), racedJournal.getNumRecorded()+racedJournal.getNumDropped());
+    reader = new GameJournal.Reader(new ByteArrayInputStream(racedBytes.toByteArray()));
+    long numRead = 0;
+    while( reader.next()!=null ) ++numRead;
+    assertEquals(racedJournal.getNumRecorded(), numRead);
+  }
+
+  // Budgets per guess of StrategyImpl.nextGuess, and per game of
+  // Play.run with a new strategy, over every BUDGET_STEP-th word of
+  // each length. JDK 17 measured 676 bytes and 5 us per guess, and
+  // 5.2 KB and 35 us per game. Allocation is steady, so its budgets
+  // are tight. CPU time varies with the machine, the kernel and the
+  // load, so its budgets only catch gross regressions. Raise them only
+  // for a deliberate change in cost.
+  private static final int BUDGET_STEP = 500;
+  private static final long GUESS_BYTES_BUDGET = 1024;
+  private static final long GUESS_NANOS_BUDGET = 50000;
+  private static final long GAME_BYTES_BUDGET = 8192;
+  private static final long GAME_NANOS_BUDGET = 300000;
+
+  /**
+   * Test the bytes allocated and CPU time per guess and per game stay
+   * within their budgets, as the thread's counters measure them after
+   * warming up. Each is the least of several measured rounds, since
+   * JIT compilation and other threads only ever add to them.
+   */
+  @Test
+  public void testAllocationBudgets() throws Exception {
+    final com.sun.management.ThreadMXBean threadBean
+      = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isCurrentThreadCpuTimeSupported());
+    threadBean.setThreadAllocatedMemoryEnabled(true);
+    threadBean.setThreadCpuTimeEnabled(true);
+    final Dictionary dictionary = Dictionary.loadDefault();
+    final StrategyFactory factory = new StrategyFactory(dictionary);
+    final List<String> words = sampleWords(dictionary, BUDGET_STEP);
+
+    long guessBytes = Long.MAX_VALUE;
+    long guessNanos = Long.MAX_VALUE;
+    long gameBytes = Long.MAX_VALUE;
+    long gameNanos = Long.MAX_VALUE;
+    for( int roundI = 0; roundI<8; ++roundI ) {
+      /// Per guess, counting only nextGuess
+      long bytes = 0;
+      long nanos = 0;
+      int numGuesses = 0;
+      for( String wordI : words ) {
+        final HangmanGame game = new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES);
+        final GuessingStrategy strategy = factory.newStrategy(game);
+        while( game.gameStatus()==HangmanGame.Status.KEEP_GUESSING ) {
+          final long startBytes = threadBean.getCurrentThreadAllocatedBytes();
+          final long startNanos = threadBean.getCurrentThreadCpuTime();
+          final Guess guess = strategy.nextGuess(game);
+          nanos += threadBean.getCurrentThreadCpuTime()-startNanos;
+          bytes += threadBean.getCurrentThreadAllocatedBytes()-startBytes;
+          guess.makeGuess(game);
+          ++numGuesses;
+        }
+      }
+      // The first rounds warm up
+      if( 3<=roundI ) {
+        guessBytes = Math.min(guessBytes, bytes/numGuesses);
+        guessNanos = Math.min(guessNanos, nanos/numGuesses);
+      }
+
+      /// Per game, counting the strategy's construction and Play.run
+      final long startBytes = threadBean.getCurrentThreadAllocatedBytes();
+      final long startNanos = threadBean.getCurrentThreadCpuTime();
+      for( String wordI : words ) {
+        final HangmanGame game = new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES);
+        Play.run(game, factory.newStrategy(game), false, null);
+      }
+      if( 3<=roundI ) {
+        gameBytes = Math.min(gameBytes, (threadBean.getCurrentThreadAllocatedBytes()-startBytes)/words.size());
+        gameNanos = Math.min(gameNanos, (threadBean.getCurrentThreadCpuTime()-startNanos)/words.size());
+      }
+    }
+    assertTrue("Allocated "+guessBytes+" bytes per guess, over the budget of "+GUESS_BYTES_BUDGET,
+               guessBytes<=GUESS_BYTES_BUDGET);
+    assertTrue("Took "+guessNanos+" ns of CPU per guess, over the budget of "+GUESS_NANOS_BUDGET,
+               guessNanos<=GUESS_NANOS_BUDGET);
+    assertTrue("Allocated "+gameBytes+" bytes per game, over the budget of "+GAME_BYTES_BUDGET,
+               gameBytes<=GAME_BYTES_BUDGET);
+    assertTrue("Took "+gameNanos+" ns of CPU per game, over the budget of "+GAME_NANOS_BUDGET,
+               gameNanos<=GAME_NANOS_BUDGET);
+  }
+
+  /**
+   * Test the batch runner writes the scores ParallelEvaluator gives,
+   * in order across chunks, and summarizes them.
+   */
+  @Test
+  public void testBatchRunner() throws Exception {
+    final Dictionary dictionary = Dictionary.loadDefault();
+    final StrategyFactory factory = new StrategyFactory(dictionary);
+    // The runner skips blank lines, so the empty word isn't run
+    final List<String> words = sampleWords(dictionary, 200);
+    words.removeAll(Arrays.asList(""));
+    final StringBuilder wordList = new StringBuilder();
+    for( String wordI : words ) wordList.append(wordI.toLowerCase()+"\n\n");
+    final ByteArrayOutputStream resultBytes = new ByteArrayOutputStream();
+    final BatchRunner.Summary summary = new BatchRunner(factory, Play.DEFAULT_NUM_GUESSES, 2, 64)
+      .run(new StringReader(wordList.toString()), resultBytes, BatchRunner.Format.CSV);
+    final ParallelEvaluator.Result expected = new ParallelEvaluator(factory, Play.DEFAULT_NUM_GUESSES, 2).evaluate(words);
+
+    final BufferedReader resultReader
+      = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(resultBytes.toByteArray()), "UTF-8"));
+    assertEquals("word,length,score,won", resultReader.readLine());
+    int numLost = 0;
+    for( int wordI = 0; wordI<words.size(); ++wordI ) {
+      final String[] fields = resultReader.readLine().split(",");
+      assertEquals(words.get(wordI), fields[0]);
+      assertEquals(words.get(wordI).length(), Integer.parseInt(fields[1]));
+      assertEquals(expected.getScore(wordI), Integer.parseInt(fields[2]));
+      if( !Boolean.parseBoolean(fields[3]) ) ++numLost;
+    }
+    assertNull(resultReader.readLine());
+    assertEquals(words.size(), summary.getNumGames());
+    assertEquals(expected.getScoreSum(), summary.getScoreSum());
+    assertEquals(numLost, summary.getNumLost());
+    assertTrue(summary.getScore(50)<=summary.getScore(99));
+    double lengthScoreSum = 0;
+    for( int lenI = 0; lenI<summary.getLengthLimit(); ++lenI ) {
+      lengthScoreSum += summary.getNumGames(lenI)*summary.getAverageScore(lenI);
+    }
+    assertEquals(summary.getScoreSum(), lengthScoreSum, 1e-6);
+    // Lengths without games have no scores, beyond the limit too
+    assertEquals(0, summary.getNumGames(0));
+    assertEquals(0.0, summary.getAverageScore(0), 0.0);
+    assertEquals(0.0, summary.getLossRate(summary.getLengthLimit()), 0.0);
+  }
+
+  /**
+   * Test sharded scoring over loopback workers merges to the scores of
+   * a single TreeEvaluator, with a worker that fails its first shard.
+   */
+  @Test
+  public void testShardCoordinator() throws Exception {
+    final Dictionary fullDictionary = Dictionary.loadDefault();
+    final StringBuilder smallWords = new StringBuilder();
+    for( String wordI : sampleWords(fullDictionary, 20) ) smallWords.append(wordI+"\n");
+    final Dictionary dictionary = Dictionary.load(new ByteArrayInputStream(smallWords.toString().getBytes("US-ASCII")));
+    final StrategyFactory factory = new StrategyFactory(dictionary);
+
+    // Fails the shard it's handed by closing the connection
+    final ServerSocket failingWorker = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    final Thread failingThread = new Thread(new Runnable() {
+        public void run() {
+          try {
+            final Socket socket = failingWorker.accept();
+            socket.getOutputStream().write(("READY "+dictionary.size()+" "+dictionary.getDigest()+"\n").getBytes("US-ASCII"));
+            new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII")).readLine();
+            socket.close();
+          } catch( IOException exc ) {
+            // Closed by the test
+          }
+        }
+      });
+    failingThread.setDaemon(true);
+    failingThread.start();
+    final ShardWorker worker1 = new ShardWorker(factory, 1, 0);
+    final ShardWorker worker2 = new ShardWorker(factory, 1, 0);
+    try {
+      final List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+      addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), failingWorker.getLocalPort()));
+      addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), worker1.getPort()));
+      addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), worker2.getPort()));
+      final int[] maxWrongGuesses = { 4, Play.DEFAULT_NUM_GUESSES };
+      final ShardCoordinator.Result result = new ShardCoordinator(dictionary, addresses).evaluate(maxWrongGuesses);
+      for( int settingI = 0; settingI<maxWrongGuesses.length; ++settingI ) {
+        final ParallelEvaluator.Result expected = new TreeEvaluator(factory, maxWrongGuesses[settingI], 1).evaluate();
+        assertEquals(dictionary.size(), result.getNumWords(settingI));
+        assertEquals(expected.getScoreSum(), result.getScoreSum(settingI));
+      }
+      int numLengths = 0;
+      for( int lenI = 0; lenI<=dictionary.getMaxWordLength(); ++lenI ) {
+        if( !dictionary.getWords(lenI).isEmpty() ) ++numLengths;
+      }
+      assertEquals(maxWrongGuesses.length*numLengths, worker1.getShardCount()+worker2.getShardCount());
+      assertTrue(result.getNumRetried()<=1);
+    } finally {
+      worker1.close();
+      worker2.close();
+      failingWorker.close();
+    }
+  }
+
+  /**
+   * Test a worker that stops answering has its shard scored by
+   * another once the shard timeout passes, and that a worker of a
+   * different dictionary of the same size is given no shards.
+   */
+  @Test
+  public void testShardCoordinatorStalledWorker() throws Exception {
+    final StringBuilder smallWords = new StringBuilder();
+    for( String wordI : sampleWords(Dictionary.loadDefault(), 50) ) smallWords.append(wordI+"\n");
+    final Dictionary dictionary
+      = Dictionary.load(new ByteArrayInputStream((smallWords+"QUIZ\n").getBytes("US-ASCII")));
+    final Dictionary otherDictionary
+      = Dictionary.load(new ByteArrayInputStream((smallWords+"JAZZ\n").getBytes("US-ASCII")));
+    assertEquals(dictionary.size(), otherDictionary.size());
+    assertFalse(dictionary.getDigest().equals(otherDictionary.getDigest()));
+    final StrategyFactory factory = new StrategyFactory(dictionary);
+
+    // Takes the shard it's handed and never answers
+    final ServerSocket stalledWorker = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    final Thread stalledThread = new Thread(new Runnable() {
+        public void run() {
+          try {
+            final Socket socket = stalledWorker.accept();
+            socket.getOutputStream().write(("READY "+dictionary.size()+" "+dictionary.getDigest()+"\n").getBytes("US-ASCII"));
+            final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            while( in.readLine()!=null ) {}
+            socket.close();
+          } catch( IOException exc ) {
+            // Closed by the test
+          }
+        }
+      });
+    stalledThread.setDaemon(true);
+    stalledThread.start();
+    final ShardWorker worker = new ShardWorker(factory, 1, 0);
+    final ShardWorker otherWorker = new ShardWorker(new StrategyFactory(otherDictionary), 1, 0);
+    try {
+      final List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+      addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), stalledWorker.getLocalPort()));
+      addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), worker.getPort()));
+      final int[] maxWrongGuesses = { Play.DEFAULT_NUM_GUESSES };
+      final ShardCoordinator.Result result
+        = new ShardCoordinator(dictionary, addresses, 2000).evaluate(maxWrongGuesses);
+      assertEquals(new TreeEvaluator(factory, Play.DEFAULT_NUM_GUESSES, 1).evaluate().getScoreSum(),
+                   result.getScoreSum(0));
+      assertEquals(1, result.getNumRetried());
+
+      final List<InetSocketAddress> otherAddresses = new ArrayList<InetSocketAddress>();
+      otherAddresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), otherWorker.getPort()));
+      try {
+        new ShardCoordinator(dictionary, otherAddresses, 2000).evaluate(maxWrongGuesses);
+        fail("Expected no worker left to score the shards");
+      } catch( IOException exc ) {
+        // Expected
+      }
+      assertEquals(0, otherWorker.getShardCount());
+    } finally {
+      worker.close();
+      otherWorker.close();
+      stalledWorker.close();
+    }
+  }
+
+  /**
+   * Test GameServer replies to a client's games with their patterns,
+   * statuses and scores, that its GUESS plays the shared
+   * StrategyFactory's strategy as Play.run does, that a guess after
+   * the game is over gets an ERROR, and that a LoadGenerator's
+   * sessions run without errors.
+   */
+  @Test
+  public void testGameServer() throws Exception {
+    final StrategyFactory strategyFactory = new StrategyFactory(Dictionary.loadDefault());
+    final GameServer server = new GameServer(strategyFactory, Play.DEFAULT_NUM_GUESSES, 0);
+    try {
+      final GameClient client = new GameClient("127.0.0.1", server.getPort());
+      try {
+        // The client guesses
+        GameClient.State state = client.newGame("FACTUAL");
+        assertEquals("-------", state.getPattern());
+        assertEquals(HangmanGame.Status.KEEP_GUESSING, state.getStatus());
+        state = client.guessLetter('a');
+        assertEquals("-A---A-", state.getPattern());
+        assertEquals(1, state.getScore());
+        state = client.guessWord("FACTUAL");
+        assertEquals(HangmanGame.Status.GAME_WON, state.getStatus());
+        try {
+          client.guessLetter('B');
+          fail("Expected an error guessing after the game is over");
+        } catch( IOException exc ) {
+          // Expected
+        }
+
+        // The server's strategy guesses, scoring as with Play.run
+        state = client.newGame("FACTUAL");
+        while( state.getStatus()==HangmanGame.Status.KEEP_GUESSING ) state = client.guess();
+        assertEquals(Play.run(new HangmanGame("FACTUAL", Play.DEFAULT_NUM_GUESSES),
+                              strategyFactory.newStrategy("FACTUAL".length()),
+                              false),
+                     state.getScore());
+      } finally {
+        client.close();
+      }
+
+      final LoadGenerator.Result result = new LoadGenerator("127.0.0.1", server.getPort(), 8, 3).run();
+      assertEquals(24, result.getNumSessions());
+      assertEquals(0, result.getNumErrors());
+      assertTrue(0<result.getNumGuesses());
+      assertTrue(result.getGuessLatencyNanos(50)<=result.getGuessLatencyNanos(99));
+    } finally {
+      server.close();
+    }
+  }
+
+  /**
+   * Test a recorded game emits one Guess event per guess, from the
+   * first on, with its word length, candidates and branch, and one
+   * Game event with the game's score and status.
+   */
+  @Test
+  public void testFlightRecorderEvents() throws Exception {
+    final File recordingFile = File.createTempFile("hangman", ".jfr");
+    try {
+      final Recording recording = new Recording();
+      recording.enable("hangman.Guess");
+      recording.enable("hangman.Game");
+      recording.start();
+      final int score = Play.run(new HangmanGame("FACTUAL", Play.DEFAULT_NUM_GUESSES),
+                                 new StrategyImpl(Dictionary.loadDefault(), "FACTUAL".length()),
+                                 false);
+      recording.stop();
+      recording.dump(recordingFile.toPath());
+      recording.close();
+
+      final List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile.toPath());
+      final boolean[] guessesMadeSeen = new boolean[events.size()];
+      int numGuesses = 0;
+      int numGames = 0;
+      for( RecordedEvent eventI : events ) {
+        if( eventI.getEventType().getName().equals("hangman.Guess") ) {
+          ++numGuesses;
+          assertEquals(7, eventI.getInt("wordLength"));
+          assertTrue(eventI.getInt("candidatesAfter")<=eventI.getInt("candidatesBefore"));
+          assertNotNull(StrategyMetrics.Branch.valueOf(eventI.getString("branch")));
+          guessesMadeSeen[eventI.getInt("guessesMade")] = true;
+        } else if( eventI.getEventType().getName().equals("hangman.Game") ) {
+          ++numGames;
+          assertEquals(score, eventI.getInt("score"));
+          assertEquals("GAME_WON", eventI.getString("status"));
+        }
+      }
+      assertEquals(1, numGames);
+      assertTrue(0<numGuesses);
+      // One event per guess, from the first on
+      for( int guessI = 0; guessI<numGuesses; ++guessI ) assertTrue(guessesMadeSeen[guessI]);
+    } finally {
+      recordingFile.delete();
+    }
+  }
+
+  /**
+   * Test strategies sharing a DecisionCache score the same as ones
+   * not, and that the cache stays within its bounds. Strategies of
+   * other kinds sharing the cache decide as alone.
+   */
+  @Test
+  public void testDecisionCache() throws Exception {
+    final Dictionary dictionary = Dictionary.loadDefault();
+    final StrategyFactory plainFactory = new StrategyFactory(dictionary);
+    final int cacheSize = 256;
+    final StrategyFactory cachingFactory = new StrategyFactory(dictionary, cacheSize);
+    final DecisionCache cache = cachingFactory.getDecisionCache();
+    final List<String> words = dictionary.getWords(5).subList(0, 300);
+    // Twice, so that the second round finds the first round's decisions
+    for( int roundI = 0; roundI<2; ++roundI ) {
+      for( String wordI : words ) {
+        final int plainScore = Play.run(new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES),
+                                        plainFactory.newStrategy(wordI.length()),
+                                        false);
+        final int cachedScore = Play.run(new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES),
+                                         cachingFactory.newStrategy(wordI.length()),
+                                         false);
+        assertEquals(wordI, plainScore, cachedScore);
+      }
+    }
+    assertTrue(cache.toString(), cache.getHitCount()>0);
+    assertTrue(cache.toString(), cache.getEvictionCount()>0);
+    assertTrue(cache.toString(), cache.size()<=cacheSize);
+
+    // SearchStrategies sharing a cache with StrategyImpls, each playing
+    // states the others cached, decide as alone
+    final DecisionCache sharedCache = new DecisionCache(1<<16);
+    final StrategyFactory sharedFactory = new StrategyFactory(dictionary, StrategyParameters.DEFAULT, sharedCache);
+    final StrategyFactory searchFactory = new StrategyFactory(dictionary, StrategyParameters.DEFAULT, null, 8, null);
+    final StrategyFactory sharedSearchFactory
+      = new StrategyFactory(dictionary, StrategyParameters.DEFAULT, sharedCache, 8, searchFactory.getSearchTable());
+    for( String wordI : words.subList(0, 100) ) {
+      assertEquals(wordI,
+                   Play.run(new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES), plainFactory.newStrategy(wordI.length()), false),
+                   Play.run(new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES), sharedFactory.newStrategy(wordI.length()), false));
+      assertEquals(wordI,
+                   Play.run(new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES), searchFactory.newStrategy(wordI.length()), false),
+                   Play.run(new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES), sharedSearchFactory.newStrategy(wordI.length()),
+                            false));
+    }
+    assertTrue(sharedCache.toString(), sharedCache.getHitCount()>0);
+  }
+
+  /**
+   * Test a CompiledStrategy scores the same as the StrategyImpl its
+   * DecisionTree was compiled from, for every word of a small
+   * dictionary, and falls back for a word outside it.
+   */
+  @Test
+  public void testDecisionTree() throws Exception {
+    final StringBuilder smallWords = new StringBuilder();
+    for( int lenI = 3; lenI<=4; ++lenI ) {
+      for( String wordI : Dictionary.loadDefault().getWords(lenI) ) smallWords.append(wordI).append('\n');
+    }
+    final Dictionary dictionary = Dictionary.load(new ByteArrayInputStream(smallWords.toString().getBytes("US-ASCII")));
+    final StrategyFactory strategyFactory = new StrategyFactory(dictionary);
+
+    final File treeFile = File.createTempFile("decision-tree", ".bin");
+    treeFile.deleteOnExit();
+    final FileOutputStream treeOut = new FileOutputStream(treeFile);
+    try {
+      new DecisionTreeCompiler(dictionary, Play.DEFAULT_NUM_GUESSES).compile(treeOut);
+    } finally {
+      treeOut.close();
+    }
+    final DecisionTree tree = DecisionTree.map(treeFile);
+    assertEquals(Play.DEFAULT_NUM_GUESSES, tree.getMaxWrongGuesses());
+
+    for( int lenI = 3; lenI<=4; ++lenI ) {
+      for( String wordI : dictionary.getWords(lenI) ) {
+        final int strategyScore = Play.run(new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES),
+                                           strategyFactory.newStrategy(lenI),
+                                           false);
+        final int compiledScore = Play.run(new HangmanGame(wordI, Play.DEFAULT_NUM_GUESSES),
+                                           new CompiledStrategy(tree),
+                                           false);
+        assertEquals(wordI, strategyScore, compiledScore);
+      }
+    }
+
+    // A guess made by someone else, a right or wrong letter or a wrong
+    // word, takes the game off the tree
+    final Guess[] outsideGuesses = { null, new GuessLetter('Q'), new GuessWord("ZZZ"), null };
+    for( int guessI = 0; guessI<outsideGuesses.length; ++guessI ) {
+      final HangmanGame game = new HangmanGame("CAT", Play.DEFAULT_NUM_GUESSES);
+      final CompiledStrategy compiled = new CompiledStrategy(tree);
+      compiled.nextGuess(game).makeGuess(game);
+      Guess outsideGuess = outsideGuesses[guessI];
+      if( guessI==outsideGuesses.length-1 ) {
+        // A letter of CAT not guessed yet
+        for( char letterI : "CAT".toCharArray() ) {
+          if( !game.getAllGuessedLetters().contains(letterI) ) outsideGuess = new GuessLetter(letterI);
+        }
+      }
+      if( outsideGuess!=null ) outsideGuess.makeGuess(game);
+      assertEquals(String.valueOf(outsideGuess), outsideGuess==null, compiled.nextGuess(game)!=null);
+    }
+
+    // FACTUAL is too long for the small dictionary
+    final int fallbackScore = Play.run(new HangmanGame("FACTUAL", Play.DEFAULT_NUM_GUESSES),
+                                       new CompiledStrategy(tree,
+                                                            new StrategyFactory(Dictionary.loadDefault()).newStrategy(7)),
+                                       false);
+    assertTrue(fallbackScore>0);
+  }
+
   /**
    * Test behavior when there are unexpected chars. We try a
    * punctuation character and a multibyte Unicode character.
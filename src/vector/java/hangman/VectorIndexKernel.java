@@ -0,0 +1,109 @@
+package hangman;
+
+import java.util.Arrays;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * IndexKernel counting letters with the Vector API.
+ *
+ * Filtering a block is scalar, as a block has few revealed and
+ * incorrect letters to apply. Counting is where the time goes: the
+ * survivors of each block are ANDed with the contains bitset of
+ * every letter. The LETTER_STRIDE bitsets of a block are adjacent, so
+ * they load as whole vectors, and each lane is ANDed with the block's
+ * survivors broadcast.
+ *
+ * The Vector API of JDK 17 has no lanewise popcount, so lanes are
+ * popcounted by SWAR steps, leaving each byte of a lane with the
+ * count of its 8 bits, at most 8. Those byte counts are summed over
+ * up to 31 blocks before they could overflow, and only then reduced to
+ * a count per lane: bytes are added pairwise into 16 bit fields,
+ * which a multiply sums into the top 16 bits.
+ *
+ * Only compiled and loaded with jdk.incubator.vector, see
+ * IndexKernel.
+ */
+final class VectorIndexKernel extends IndexKernel {
+  private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+  private static final int LANES = SPECIES.length();
+  // Byte counts reach at most 8 per block
+  private static final int MAX_BLOCKS_PER_FOLD = 255/8;
+
+  // Per letter, byte counts since the last fold, then folded counts.
+  // Zero between calls.
+  private static final ThreadLocal<long[]> SCRATCH = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[2*LETTER_STRIDE];
+    }
+  };
+
+  VectorIndexKernel() {
+    if( LETTER_STRIDE%LANES!=0 ) {
+      throw new UnsupportedOperationException(LANES+" lanes don't divide LETTER_STRIDE");
+    }
+  }
+
+  @Override
+  String getName() {
+    return "vector"+SPECIES.vectorBitSize();
+  }
+
+  @Override
+  int filterAndCount(long[] containsBits, int numBlocks, long lastBlockBits,
+                     long[] src, long[] dst, long[][] revealedBits, int numRevealed,
+                     int incorrectMask, int countMask, int[] letterWordCounts)
+  {
+    final long[] scratch = SCRATCH.get();
+    int numSurvivors = 0;
+    int blocksSinceFold = 0;
+    for( int blockI = 0; blockI<numBlocks; ++blockI ) {
+      final long bits = filterBlock(containsBits, numBlocks, lastBlockBits, src, dst, revealedBits, numRevealed,
+                                    incorrectMask, blockI);
+      if( bits==0 ) continue;
+
+      numSurvivors += Long.bitCount(bits);
+      final LongVector survivors = LongVector.broadcast(SPECIES, bits);
+      final int letterBase = blockI*LETTER_STRIDE;
+      for( int letterI = 0; letterI<LETTER_STRIDE; letterI += LANES ) {
+        LongVector x = LongVector.fromArray(SPECIES, containsBits, letterBase+letterI).and(survivors);
+        x = x.sub(x.lanewise(VectorOperators.LSHR, 1).and(0x5555555555555555L));
+        x = x.and(0x3333333333333333L).add(x.lanewise(VectorOperators.LSHR, 2).and(0x3333333333333333L));
+        x = x.add(x.lanewise(VectorOperators.LSHR, 4)).and(0x0f0f0f0f0f0f0f0fL);
+        LongVector.fromArray(SPECIES, scratch, letterI).add(x).intoArray(scratch, letterI);
+      }
+      if( ++blocksSinceFold==MAX_BLOCKS_PER_FOLD ) {
+        fold(scratch);
+        blocksSinceFold = 0;
+      }
+    }
+    fold(scratch);
+
+    for( int mask = countMask; mask!=0; mask &= mask-1 ) {
+      final int letterI = Integer.numberOfTrailingZeros(mask);
+      letterWordCounts[letterI] += (int)scratch[LETTER_STRIDE+letterI];
+    }
+    Arrays.fill(scratch, LETTER_STRIDE, 2*LETTER_STRIDE, 0);
+    return numSurvivors;
+  }
+
+  /**
+   * Add the sum of each lane's byte counts to its folded count, and
+   * zero the byte counts.
+   */
+  private static void fold(long[] scratch) {
+    for( int letterI = 0; letterI<LETTER_STRIDE; letterI += LANES ) {
+      final LongVector byteCounts = LongVector.fromArray(SPECIES, scratch, letterI);
+      // Pairs of bytes into 16 bits first, as a lane's total may not
+      // fit a byte
+      final LongVector shortCounts = byteCounts.and(0x00ff00ff00ff00ffL)
+        .add(byteCounts.lanewise(VectorOperators.LSHR, 8).and(0x00ff00ff00ff00ffL));
+      final LongVector laneCounts = shortCounts.mul(0x0001000100010001L).lanewise(VectorOperators.LSHR, 48);
+      LongVector.fromArray(SPECIES, scratch, LETTER_STRIDE+letterI).add(laneCounts)
+        .intoArray(scratch, LETTER_STRIDE+letterI);
+      LongVector.zero(SPECIES).intoArray(scratch, letterI);
+    }
+  }
+}